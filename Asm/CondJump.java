@@ -89,6 +89,14 @@ public class CondJump extends Instruction {
     }
 
     
+    /**
+     * Découpe en mots
+     * @return String[] mots de l'instruction
+     */
+    public String[] getWords() {
+        return withLabel(this.name, "R" + sr1, "R" + sr2, address);
+    }
+
     /** 
      * Conversion en String
      * @return String texte de l'instruction
@@ -40,6 +40,14 @@ public class IO extends Instruction {
         this.reg = reg;
     }
 
+    /**
+     * Découpe en mots
+     * @return String[] mots de l'instruction
+     */
+    public String[] getWords() {
+        return withLabel(this.name, "R" + reg);
+    }
+
     /** 
      * Conversion en String
      * @return String texte de l'instruction
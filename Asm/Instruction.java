@@ -45,4 +45,23 @@ public abstract class Instruction {
     public void setName(String name) {
         this.name = name;
     }
+
+    /**
+     * Découpe l'instruction en mots, tels qu'ils apparaissent dans toString()
+     * @return String[] label éventuel (suivi de ':'), opération puis opérandes
+     */
+    public abstract String[] getWords();
+
+    /**
+     * Préfixe les mots de l'instruction par son label s'il existe
+     * @param words opération puis opérandes
+     * @return String[] mots de l'instruction
+     */
+    protected String[] withLabel(String... words) {
+        if (this.label.isEmpty()) return words;
+        String[] res = new String[words.length + 1];
+        res[0] = this.label + ":";
+        System.arraycopy(words, 0, res, 1, words.length);
+        return res;
+    }
 }
@@ -42,6 +42,14 @@ public class JumpCall extends Instruction{
     
     }
 
+    /**
+     * Découpe en mots
+     * @return String[] mots de l'instruction
+     */
+    public String[] getWords() {
+        return withLabel(this.name, address);
+    }
+
     /** 
      * Conversion en String
      * @return String texte de l'instruction
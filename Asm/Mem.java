@@ -62,6 +62,14 @@ public class Mem extends Instruction{
         this.address = address;
     }
 
+    /**
+     * Découpe en mots
+     * @return String[] mots de l'instruction
+     */
+    public String[] getWords() {
+        return withLabel(this.name, "R" + dest, "R" + address);
+    }
+
     /** 
      * Conversion en String
      * @return String texte de l'instruction
@@ -1,4 +1,5 @@
 package Asm;
+import java.io.IOException;
 import java.util.ArrayList;
 /**
  * Ceci est une classe permettant de représenter un programme.
@@ -38,11 +39,22 @@ public class Program {
      * @return String contenant les instructions du programme
      */
     public String toString() {
-        String result = "";
+        StringBuilder result = new StringBuilder();
         for (Instruction instr : instructions) {
-            result += instr.toString();
+            result.append(instr.toString());
+        }
+        return result.toString();
+    }
+
+    /**
+     * Écrit les instructions du programme au fur et à mesure, sans construire la chaîne complète
+     * @param out destination (Writer, StringBuilder, ...)
+     * @throws IOException en cas d'erreur d'écriture
+     */
+    public void write(Appendable out) throws IOException {
+        for (Instruction instr : instructions) {
+            out.append(instr.toString());
         }
-        return result;
     }
 
     /**
@@ -14,6 +14,14 @@ public class Ret extends Instruction{
     public Ret() {
         super("","RET");
     }
+    /**
+     * Découpe en mots
+     * @return String[] mots de l'instruction
+     */
+    public String[] getWords() {
+        return withLabel(this.name);
+    }
+
     /** 
      * Conversion en String
      * @return String texte de l'instruction
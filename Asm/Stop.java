@@ -17,6 +17,14 @@ public class Stop extends Instruction{
     
     }
 
+    /**
+     * Découpe en mots
+     * @return String[] mots de l'instruction
+     */
+    public String[] getWords() {
+        return withLabel(this.name);
+    }
+
     /** 
      * Conversion en String
      * @return String texte de l'instruction
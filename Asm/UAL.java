@@ -83,6 +83,14 @@ public class UAL extends Instruction{
         this.sr2 = sr2;
     }
 
+    /**
+     * Découpe en mots
+     * @return String[] mots de l'instruction
+     */
+    public String[] getWords() {
+        return withLabel(this.name, "R" + dest, "R" + sr1, "R" + sr2);
+    }
+
     /** 
      * Conversion en String
      * @return String texte de l'instruction
@@ -82,6 +82,14 @@ public class UALi extends Instruction{
         this.imm = imm;
     }
 
+    /**
+     * Découpe en mots
+     * @return String[] mots de l'instruction
+     */
+    public String[] getWords() {
+        return withLabel(this.name + "i", "R" + dest, "R" + sr, String.valueOf(imm));
+    }
+
     /** 
      * Conversion en String
      * @return String texte de l'instruction
@@ -0,0 +1,438 @@
+package Ast;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Arbre de syntaxe abstraite compact, construit une seule fois à partir des tokens (voir AstParser,
+ * ou AstBuilder depuis l'arbre d'ANTLR) puis parcouru par le typage et la génération de code.
+ *
+ * Un nœud est un entier : son numéro dans un unique tableau d'int où chaque nœud occupe
+ * TAILLE_NOEUD cases (sorte, ligne, puis quatre champs A, B, C, D dont le sens dépend de la sorte).
+ * Les listes de fils sont rangées dans un second tableau (longueur puis éléments), et les
+ * identifiants sont internés : un champ identifiant contient le numéro du nom, et nom(n)
+ * renvoie toujours la même String pour un même identifiant. Les numéros sont denses (0, 1, 2...),
+ * le typage et la génération de code s'en servent comme indices de tableaux.
+ *
+ * Champs de chaque sorte de nœud (n : nœud, -1 si absent ; l : liste ; i : identifiant ; v : valeur) :
+ * <pre>
+ * INTEGER            A=v valeur, B=i texte si le littéral ne tient pas dans un int (sinon -1)
+ * BOOLEAN            A=v 1 pour true, 0 pour false
+ * VARIABLE           A=i nom
+ * NEGATION, OPPOSITE A=n opérande
+ * MULTIPLICATION, ADDITION, COMPARISON, EQUALITY, AND, OR
+ *                    A=n gauche, B=n droite, C=v opérateur (OP_...)
+ * TAB_ACCESS         A=n tableau, B=n indice
+ * TAB_INITIALIZATION A=l éléments
+ * CALL               A=i fonction, B=l arguments
+ * BASE_TYPE          A=v BASE_INT, BASE_BOOL ou BASE_AUTO
+ * TAB_TYPE           A=n type des éléments
+ * DECLARATION        A=n type, B=i nom, C=n valeur initiale (-1 si absente)
+ * PRINT              A=i variable
+ * ASSIGNMENT         A=i variable, B=l indices, C=n valeur
+ * BLOCK              A=l instructions
+ * IF                 A=n condition, B=n alors, C=n sinon (-1 si absent)
+ * WHILE              A=n condition, B=n corps
+ * FOR                A=n initialisation, B=n condition, C=n incrément, D=n corps
+ * RETURN             A=n valeur
+ * CORE_FCT           A=l instructions, B=n valeur retournée
+ * DECL_FCT           A=n type de retour, B=i nom, C=l paramètres (type, nom, type, nom...), D=n corps
+ * MAIN               A=l fonctions, B=n corps de main
+ * </pre>
+ * Les parenthèses n'apparaissent pas dans l'arbre : (e) est le nœud de e.
+ */
+public class Ast {
+    // Sortes de nœuds
+    public static final int INTEGER = 0;
+    public static final int BOOLEAN = 1;
+    public static final int VARIABLE = 2;
+    public static final int NEGATION = 3;
+    public static final int OPPOSITE = 4;
+    public static final int MULTIPLICATION = 5;
+    public static final int ADDITION = 6;
+    public static final int COMPARISON = 7;
+    public static final int EQUALITY = 8;
+    public static final int AND = 9;
+    public static final int OR = 10;
+    public static final int TAB_ACCESS = 11;
+    public static final int TAB_INITIALIZATION = 12;
+    public static final int CALL = 13;
+    public static final int BASE_TYPE = 14;
+    public static final int TAB_TYPE = 15;
+    public static final int DECLARATION = 16;
+    public static final int PRINT = 17;
+    public static final int ASSIGNMENT = 18;
+    public static final int BLOCK = 19;
+    public static final int IF = 20;
+    public static final int WHILE = 21;
+    public static final int FOR = 22;
+    public static final int RETURN = 23;
+    public static final int CORE_FCT = 24;
+    public static final int DECL_FCT = 25;
+    public static final int MAIN = 26;
+
+    // Opérateurs des nœuds binaires
+    public static final int OP_MUL = 0;
+    public static final int OP_DIV = 1;
+    public static final int OP_MOD = 2;
+    public static final int OP_ADD = 3;
+    public static final int OP_SUB = 4;
+    public static final int OP_SUP = 5;
+    public static final int OP_INF = 6;
+    public static final int OP_SUPEQ = 7;
+    public static final int OP_INFEQ = 8;
+    public static final int OP_EQUALS = 9;
+    public static final int OP_DIFF = 10;
+    public static final int OP_AND = 11;
+    public static final int OP_OR = 12;
+
+    // Types de base
+    public static final int BASE_INT = 0;
+    public static final int BASE_BOOL = 1;
+    public static final int BASE_AUTO = 2;
+
+    // Sens des champs A, B, C, D de chaque sorte : n nœud, l liste de nœuds,
+    // p liste de paires (nœud, identifiant), i identifiant, v valeur, - inutilisé
+    private static final String[] CHAMPS = {
+        "vi--", "v---", "i---", "n---", "n---",
+        "nnv-", "nnv-", "nnv-", "nnv-", "nnv-", "nnv-",
+        "nn--", "l---", "il--", "v---", "n---",
+        "nin-", "i---", "iln-", "l---", "nnn-", "nn--", "nnnn", "n---",
+        "ln--", "nipn", "ln--"
+    };
+
+    private static final int TAILLE_NOEUD = 6;
+    private static final int SORTE = 0;
+    private static final int LIGNE = 1;
+
+    private int[] noeuds = new int[TAILLE_NOEUD * 64];
+    private int nbNoeuds = 0;
+    private int[] listes = new int[64];
+    private int tailleListes = 0;
+
+    private String[] noms = new String[16];
+    private final HashMap<String, Integer> numerosNoms = new HashMap<>();
+
+    // Marques de identifiants : vus[i] == passage si l'identifiant i a déjà été trouvé
+    private int[] vus = new int[16];
+    private int passage = 0;
+    private int[] trouves = new int[16];
+    private int nbTrouves;
+
+    // Pile des parcours de texte et identifiants (pas de récursion : les sous-arbres peuvent
+    // être arbitrairement profonds) : sorte de tâche et valeur
+    private static final int T_NOEUD = 0;
+    private static final int T_CARACTERE = 1;
+    private static final int T_IDENTIFIANT = 2;
+    private static final int T_PARAMETRE = 3;
+    private static final int T_VALEUR = 4;
+    private int[] sortesTaches = new int[64];
+    private int[] valeursTaches = new int[64];
+    private int nbTaches;
+
+    /**
+     * Ajoute un nœud
+     * @param sorte sorte du nœud
+     * @param ligne ligne du source où commence le nœud
+     * @param a champ A
+     * @param b champ B
+     * @param c champ C
+     * @param d champ D
+     * @return int numéro du nœud
+     */
+    public int noeud(int sorte, int ligne, int a, int b, int c, int d) {
+        if ((nbNoeuds + 1) * TAILLE_NOEUD > noeuds.length) {
+            noeuds = Arrays.copyOf(noeuds, noeuds.length * 2);
+        }
+        int i = nbNoeuds * TAILLE_NOEUD;
+        noeuds[i + SORTE] = sorte;
+        noeuds[i + LIGNE] = ligne;
+        noeuds[i + 2] = a;
+        noeuds[i + 3] = b;
+        noeuds[i + 4] = c;
+        noeuds[i + 5] = d;
+        return nbNoeuds++;
+    }
+
+    /**
+     * Ajoute une liste
+     * @param elements éléments de la liste
+     * @param n nombre d'éléments
+     * @return int numéro de la liste
+     */
+    public int liste(int[] elements, int n) {
+        return liste(elements, 0, n);
+    }
+
+    /**
+     * Ajoute une liste
+     * @param elements tableau contenant les éléments de la liste
+     * @param debut indice du premier élément dans elements
+     * @param n nombre d'éléments
+     * @return int numéro de la liste
+     */
+    public int liste(int[] elements, int debut, int n) {
+        if (tailleListes + n + 1 > listes.length) {
+            listes = Arrays.copyOf(listes, Math.max(listes.length * 2, tailleListes + n + 1));
+        }
+        int l = tailleListes;
+        listes[l] = n;
+        System.arraycopy(elements, debut, listes, l + 1, n);
+        tailleListes += n + 1;
+        return l;
+    }
+
+    /**
+     * Interne un identifiant
+     * @param nom identifiant
+     * @return int numéro de l'identifiant
+     */
+    public int interner(String nom) {
+        Integer i = numerosNoms.get(nom);
+        if (i != null) return i;
+        int n = numerosNoms.size();
+        if (n == noms.length) {
+            noms = Arrays.copyOf(noms, n * 2);
+        }
+        noms[n] = nom;
+        numerosNoms.put(nom, n);
+        return n;
+    }
+
+    /**
+     * Numéro d'un identifiant déjà interné
+     * @param nom identifiant
+     * @return int numéro de l'identifiant, -1 s'il n'apparaît pas dans l'arbre
+     */
+    public int numero(String nom) {
+        Integer i = numerosNoms.get(nom);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * Getter du nombre d'identifiants internés
+     * @return int nombre d'identifiants (les numéros vont de 0 à nbNoms() - 1)
+     */
+    public int nbNoms() {
+        return numerosNoms.size();
+    }
+
+    /**
+     * Getter du nombre de nœuds
+     * @return int nombre de nœuds (les nœuds vont de 0 à nbNoeuds() - 1)
+     */
+    public int nbNoeuds() {
+        return nbNoeuds;
+    }
+
+    /**
+     * Oublie tous les nœuds et toutes les listes (les identifiants internés sont conservés),
+     * par exemple après avoir traité une fonction en analyse en flux
+     */
+    public void vider() {
+        nbNoeuds = 0;
+        tailleListes = 0;
+    }
+
+    /**
+     * Getter de la sorte d'un nœud
+     * @param n nœud
+     * @return int sorte (INTEGER, ..., MAIN)
+     */
+    public int sorte(int n) {
+        return noeuds[n * TAILLE_NOEUD + SORTE];
+    }
+
+    /**
+     * Getter de la ligne d'un nœud
+     * @param n nœud
+     * @return int ligne du source où commence le nœud
+     */
+    public int ligne(int n) {
+        return noeuds[n * TAILLE_NOEUD + LIGNE];
+    }
+
+    // Champs A, B, C, D d'un nœud (voir le tableau en tête de classe)
+    public int a(int n) {
+        return noeuds[n * TAILLE_NOEUD + 2];
+    }
+
+    public int b(int n) {
+        return noeuds[n * TAILLE_NOEUD + 3];
+    }
+
+    public int c(int n) {
+        return noeuds[n * TAILLE_NOEUD + 4];
+    }
+
+    public int d(int n) {
+        return noeuds[n * TAILLE_NOEUD + 5];
+    }
+
+    /**
+     * Getter d'un identifiant interné
+     * @param i numéro de l'identifiant
+     * @return String identifiant (toujours la même instance pour un même numéro)
+     */
+    public String nom(int i) {
+        return noms[i];
+    }
+
+    /**
+     * Getter de la longueur d'une liste
+     * @param l liste
+     * @return int nombre d'éléments
+     */
+    public int taille(int l) {
+        return listes[l];
+    }
+
+    /**
+     * Getter d'un élément d'une liste
+     * @param l liste
+     * @param i indice de l'élément
+     * @return int élément
+     */
+    public int element(int l, int i) {
+        return listes[l + 1 + i];
+    }
+
+    /**
+     * Écriture d'un sous-arbre, identique pour deux sous-arbres identiques (clé des caches par fonction)
+     * @param n nœud
+     * @return String forme écrite du sous-arbre
+     */
+    public String texte(int n) {
+        StringBuilder sb = new StringBuilder();
+        nbTaches = 0;
+        empilerTache(T_NOEUD, n);
+        while (nbTaches > 0) {
+            nbTaches--;
+            int x = valeursTaches[nbTaches];
+            switch (sortesTaches[nbTaches]) {
+                case T_NOEUD:
+                    if (x < 0) {
+                        sb.append('_');
+                        break;
+                    }
+                    sb.append('(').append(sorte(x));
+                    empilerTache(T_CARACTERE, ')');
+                    for (int k = 3; k >= 0; k--) {
+                        empilerChamp(x, k, true);
+                        empilerTache(T_CARACTERE, ' ');
+                    }
+                    break;
+                case T_CARACTERE:
+                    sb.append((char) x);
+                    break;
+                case T_IDENTIFIANT:
+                    sb.append(x < 0 ? "_" : nom(x));
+                    break;
+                case T_PARAMETRE:
+                    sb.append(nom(x)).append(' ');
+                    break;
+                default:
+                    sb.append(x);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Identifiants apparaissant dans un sous-arbre, dans l'ordre de première apparition
+     * @param n nœud
+     * @return numéros des identifiants, sans doublon
+     */
+    public int[] identifiants(int n) {
+        if (vus.length < nbNoms()) {
+            vus = Arrays.copyOf(vus, Math.max(vus.length * 2, nbNoms()));
+        }
+        passage++;
+        nbTrouves = 0;
+        nbTaches = 0;
+        empilerTache(T_NOEUD, n);
+        while (nbTaches > 0) {
+            nbTaches--;
+            int x = valeursTaches[nbTaches];
+            if (sortesTaches[nbTaches] != T_NOEUD) {
+                if (x >= 0) trouver(x);
+            } else if (x >= 0) {
+                for (int k = 3; k >= 0; k--) empilerChamp(x, k, false);
+            }
+        }
+        return Arrays.copyOf(trouves, nbTrouves);
+    }
+
+    /**
+     * Nœuds d'un sous-arbre, dans l'ordre du texte : le même ordre pour deux sous-arbres identiques
+     * @param n nœud
+     * @return les nœuds du sous-arbre, n compris
+     */
+    public int[] noeuds(int n) {
+        nbTrouves = 0;
+        nbTaches = 0;
+        empilerTache(T_NOEUD, n);
+        while (nbTaches > 0) {
+            nbTaches--;
+            int x = valeursTaches[nbTaches];
+            if (sortesTaches[nbTaches] == T_NOEUD && x >= 0) {
+                if (nbTrouves == trouves.length) {
+                    trouves = Arrays.copyOf(trouves, nbTrouves * 2);
+                }
+                trouves[nbTrouves++] = x;
+                for (int k = 3; k >= 0; k--) empilerChamp(x, k, false);
+            }
+        }
+        return Arrays.copyOf(trouves, nbTrouves);
+    }
+
+    // Empile le parcours du champ k du nœud n, à l'envers pour qu'il soit dépilé dans l'ordre ;
+    // sans écriture, seuls les nœuds et les identifiants sont empilés
+    private void empilerChamp(int n, int k, boolean ecriture) {
+        int x = noeuds[n * TAILLE_NOEUD + 2 + k];
+        switch (CHAMPS[sorte(n)].charAt(k)) {
+            case 'n':
+                empilerTache(T_NOEUD, x);
+                break;
+            case 'l':
+                if (ecriture) empilerTache(T_CARACTERE, ']');
+                for (int i = taille(x) - 1; i >= 0; i--) empilerTache(T_NOEUD, element(x, i));
+                if (ecriture) empilerTache(T_CARACTERE, '[');
+                break;
+            case 'p':
+                if (ecriture) empilerTache(T_CARACTERE, ']');
+                for (int i = taille(x) - 2; i >= 0; i -= 2) {
+                    empilerTache(ecriture ? T_PARAMETRE : T_IDENTIFIANT, element(x, i + 1));
+                    empilerTache(T_NOEUD, element(x, i));
+                }
+                if (ecriture) empilerTache(T_CARACTERE, '[');
+                break;
+            case 'i':
+                empilerTache(T_IDENTIFIANT, x);
+                break;
+            case 'v':
+                if (ecriture) empilerTache(T_VALEUR, x);
+                break;
+            default:
+        }
+    }
+
+    private void empilerTache(int sorte, int valeur) {
+        if (nbTaches == sortesTaches.length) {
+            sortesTaches = Arrays.copyOf(sortesTaches, nbTaches * 2);
+            valeursTaches = Arrays.copyOf(valeursTaches, nbTaches * 2);
+        }
+        sortesTaches[nbTaches] = sorte;
+        valeursTaches[nbTaches++] = valeur;
+    }
+
+    // Ajoute un identifiant au résultat de identifiants s'il n'y est pas déjà
+    private void trouver(int i) {
+        if (vus[i] == passage) return;
+        vus[i] = passage;
+        if (nbTrouves == trouves.length) {
+            trouves = Arrays.copyOf(trouves, nbTrouves * 2);
+        }
+        trouves[nbTrouves++] = i;
+    }
+}
@@ -0,0 +1,286 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.AbstractParseTreeVisitor;
+
+import Ast.Ast;
+
+/**
+ * Traduit l'arbre d'ANTLR en Ast, en un seul parcours : chaque visite ajoute le nœud
+ * correspondant et renvoie son numéro. Une fois la traduction faite, l'arbre d'ANTLR
+ * et les tokens ne sont plus utilisés.
+ */
+public class AstBuilder extends AbstractParseTreeVisitor<Integer> implements grammarTCLVisitor<Integer> {
+    private final Ast ast;
+    private int[] tampon = new int[16];
+    private final ArrayList<grammarTCLParser.ExprContext> branche = new ArrayList<>();
+
+    /**
+     * Constructeur
+     * @param ast arbre dans lequel ajouter les nœuds
+     */
+    public AstBuilder(Ast ast) {
+        this.ast = ast;
+    }
+
+    private int noeud(int sorte, ParserRuleContext ctx, int a, int b, int c, int d) {
+        return ast.noeud(sorte, ctx.getStart().getLine(), a, b, c, d);
+    }
+
+    private int nom(String nom) {
+        return ast.interner(nom);
+    }
+
+    // Traduit une liste de sous-arbres en liste de nœuds
+    private int liste(List<? extends ParserRuleContext> ctxs) {
+        int[] elements = new int[ctxs.size()];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = visit(ctxs.get(i));
+        }
+        return ast.liste(elements, elements.length);
+    }
+
+    // Traduit une chaîne d'opérateurs binaires (a + b + c + ...) en descendant sa branche gauche
+    // avec une boucle : seule la profondeur des opérandes droits utilise la pile d'appels
+    private int binaire(grammarTCLParser.ExprContext ctx) {
+        int base = branche.size();
+        grammarTCLParser.ExprContext e = ctx;
+        while (sorteBinaire(e) >= 0) {
+            branche.add(e);
+            e = e.getRuleContext(grammarTCLParser.ExprContext.class, 0);
+        }
+        int g = visit(e);
+        for (int i = branche.size() - 1; i >= base; i--) {
+            grammarTCLParser.ExprContext c = branche.remove(i);
+            int d = visit(c.getRuleContext(grammarTCLParser.ExprContext.class, 1));
+            g = noeud(sorteBinaire(c), c, g, d, operateurBinaire(c), -1);
+        }
+        return g;
+    }
+
+    private static int sorteBinaire(grammarTCLParser.ExprContext ctx) {
+        if (ctx instanceof grammarTCLParser.MultiplicationContext) return Ast.MULTIPLICATION;
+        if (ctx instanceof grammarTCLParser.AdditionContext) return Ast.ADDITION;
+        if (ctx instanceof grammarTCLParser.ComparisonContext) return Ast.COMPARISON;
+        if (ctx instanceof grammarTCLParser.EqualityContext) return Ast.EQUALITY;
+        if (ctx instanceof grammarTCLParser.AndContext) return Ast.AND;
+        if (ctx instanceof grammarTCLParser.OrContext) return Ast.OR;
+        return -1;
+    }
+
+    private static int operateurBinaire(grammarTCLParser.ExprContext ctx) {
+        if (ctx instanceof grammarTCLParser.MultiplicationContext) return operateur(((grammarTCLParser.MultiplicationContext) ctx).op.getType());
+        if (ctx instanceof grammarTCLParser.AdditionContext) return operateur(((grammarTCLParser.AdditionContext) ctx).op.getType());
+        if (ctx instanceof grammarTCLParser.ComparisonContext) return operateur(((grammarTCLParser.ComparisonContext) ctx).op.getType());
+        if (ctx instanceof grammarTCLParser.EqualityContext) return operateur(((grammarTCLParser.EqualityContext) ctx).op.getType());
+        if (ctx instanceof grammarTCLParser.AndContext) return Ast.OP_AND;
+        return Ast.OP_OR;
+    }
+
+    private static int operateur(int token) {
+        switch (token) {
+            case grammarTCLParser.MUL: return Ast.OP_MUL;
+            case grammarTCLParser.DIV: return Ast.OP_DIV;
+            case grammarTCLParser.MODULO: return Ast.OP_MOD;
+            case grammarTCLParser.ADD: return Ast.OP_ADD;
+            case grammarTCLParser.SUB: return Ast.OP_SUB;
+            case grammarTCLParser.SUP: return Ast.OP_SUP;
+            case grammarTCLParser.INF: return Ast.OP_INF;
+            case grammarTCLParser.SUPEQ: return Ast.OP_SUPEQ;
+            case grammarTCLParser.INFEQ: return Ast.OP_INFEQ;
+            case grammarTCLParser.EQUALS: return Ast.OP_EQUALS;
+            default: return Ast.OP_DIFF;
+        }
+    }
+
+    // --- EXPRESSIONS ---
+
+    @Override
+    public Integer visitBrackets(grammarTCLParser.BracketsContext ctx) {
+        return visit(ctx.expr());
+    }
+
+    @Override
+    public Integer visitTab_initialization(grammarTCLParser.Tab_initializationContext ctx) {
+        return noeud(Ast.TAB_INITIALIZATION, ctx, liste(ctx.expr()), -1, -1, -1);
+    }
+
+    @Override
+    public Integer visitCall(grammarTCLParser.CallContext ctx) {
+        int fct = nom(ctx.VAR().getText());
+        return noeud(Ast.CALL, ctx, fct, liste(ctx.expr()), -1, -1);
+    }
+
+    @Override
+    public Integer visitTab_access(grammarTCLParser.Tab_accessContext ctx) {
+        int tab = visit(ctx.expr(0));
+        int indice = visit(ctx.expr(1));
+        return noeud(Ast.TAB_ACCESS, ctx, tab, indice, -1, -1);
+    }
+
+    @Override
+    public Integer visitOpposite(grammarTCLParser.OppositeContext ctx) {
+        return noeud(Ast.OPPOSITE, ctx, visit(ctx.expr()), -1, -1, -1);
+    }
+
+    @Override
+    public Integer visitNegation(grammarTCLParser.NegationContext ctx) {
+        return noeud(Ast.NEGATION, ctx, visit(ctx.expr()), -1, -1, -1);
+    }
+
+    @Override
+    public Integer visitMultiplication(grammarTCLParser.MultiplicationContext ctx) {
+        return binaire(ctx);
+    }
+
+    @Override
+    public Integer visitAddition(grammarTCLParser.AdditionContext ctx) {
+        return binaire(ctx);
+    }
+
+    @Override
+    public Integer visitComparison(grammarTCLParser.ComparisonContext ctx) {
+        return binaire(ctx);
+    }
+
+    @Override
+    public Integer visitEquality(grammarTCLParser.EqualityContext ctx) {
+        return binaire(ctx);
+    }
+
+    @Override
+    public Integer visitAnd(grammarTCLParser.AndContext ctx) {
+        return binaire(ctx);
+    }
+
+    @Override
+    public Integer visitOr(grammarTCLParser.OrContext ctx) {
+        return binaire(ctx);
+    }
+
+    @Override
+    public Integer visitVariable(grammarTCLParser.VariableContext ctx) {
+        return noeud(Ast.VARIABLE, ctx, nom(ctx.VAR().getText()), -1, -1, -1);
+    }
+
+    @Override
+    public Integer visitInteger(grammarTCLParser.IntegerContext ctx) {
+        String texte = ctx.INT().getText();
+        try {
+            return noeud(Ast.INTEGER, ctx, Integer.parseInt(texte), -1, -1, -1);
+        } catch (NumberFormatException e) {
+            // Hors des int : l'erreur sera levée par la génération de code, comme avant
+            return noeud(Ast.INTEGER, ctx, 0, nom(texte), -1, -1);
+        }
+    }
+
+    @Override
+    public Integer visitBoolean(grammarTCLParser.BooleanContext ctx) {
+        return noeud(Ast.BOOLEAN, ctx, ctx.BOOL().getText().equals("true") ? 1 : 0, -1, -1, -1);
+    }
+
+    // --- TYPES ---
+
+    @Override
+    public Integer visitBase_type(grammarTCLParser.Base_typeContext ctx) {
+        String texte = ctx.BASE_TYPE().getText();
+        int base = texte.equals("int") ? Ast.BASE_INT : texte.equals("bool") ? Ast.BASE_BOOL : Ast.BASE_AUTO;
+        return noeud(Ast.BASE_TYPE, ctx, base, -1, -1, -1);
+    }
+
+    @Override
+    public Integer visitTab_type(grammarTCLParser.Tab_typeContext ctx) {
+        return noeud(Ast.TAB_TYPE, ctx, visit(ctx.type()), -1, -1, -1);
+    }
+
+    // --- INSTRUCTIONS ---
+
+    @Override
+    public Integer visitDeclaration(grammarTCLParser.DeclarationContext ctx) {
+        int type = visit(ctx.type());
+        int nom = nom(ctx.VAR().getText());
+        int valeur = ctx.expr() == null ? -1 : visit(ctx.expr());
+        return noeud(Ast.DECLARATION, ctx, type, nom, valeur, -1);
+    }
+
+    @Override
+    public Integer visitPrint(grammarTCLParser.PrintContext ctx) {
+        return noeud(Ast.PRINT, ctx, nom(ctx.VAR().getText()), -1, -1, -1);
+    }
+
+    @Override
+    public Integer visitAssignment(grammarTCLParser.AssignmentContext ctx) {
+        int nom = nom(ctx.VAR().getText());
+        List<grammarTCLParser.ExprContext> exprs = ctx.expr();
+        int valeur = visit(exprs.get(exprs.size() - 1));
+        int indices = liste(exprs.subList(0, exprs.size() - 1));
+        return noeud(Ast.ASSIGNMENT, ctx, nom, indices, valeur, -1);
+    }
+
+    @Override
+    public Integer visitBlock(grammarTCLParser.BlockContext ctx) {
+        return noeud(Ast.BLOCK, ctx, liste(ctx.instr()), -1, -1, -1);
+    }
+
+    @Override
+    public Integer visitIf(grammarTCLParser.IfContext ctx) {
+        int cond = visit(ctx.expr());
+        int alors = visit(ctx.instr(0));
+        int sinon = ctx.instr().size() > 1 ? visit(ctx.instr(1)) : -1;
+        return noeud(Ast.IF, ctx, cond, alors, sinon, -1);
+    }
+
+    @Override
+    public Integer visitWhile(grammarTCLParser.WhileContext ctx) {
+        int cond = visit(ctx.expr());
+        int corps = visit(ctx.instr());
+        return noeud(Ast.WHILE, ctx, cond, corps, -1, -1);
+    }
+
+    @Override
+    public Integer visitFor(grammarTCLParser.ForContext ctx) {
+        int init = visit(ctx.instr(0));
+        int cond = visit(ctx.expr());
+        int incr = visit(ctx.instr(1));
+        int corps = visit(ctx.instr(2));
+        return noeud(Ast.FOR, ctx, init, cond, incr, corps);
+    }
+
+    @Override
+    public Integer visitReturn(grammarTCLParser.ReturnContext ctx) {
+        return noeud(Ast.RETURN, ctx, visit(ctx.expr()), -1, -1, -1);
+    }
+
+    // --- FONCTIONS ---
+
+    @Override
+    public Integer visitCore_fct(grammarTCLParser.Core_fctContext ctx) {
+        int instrs = liste(ctx.instr());
+        return noeud(Ast.CORE_FCT, ctx, instrs, visit(ctx.expr()), -1, -1);
+    }
+
+    @Override
+    public Integer visitDecl_fct(grammarTCLParser.Decl_fctContext ctx) {
+        int retour = visit(ctx.type(0));
+        int nom = nom(ctx.VAR(0).getText());
+
+        int nbParams = 2 * (ctx.VAR().size() - 1);
+        if (tampon.length < nbParams) {
+            tampon = new int[nbParams];
+        }
+        for (int i = 1; i < ctx.VAR().size(); i++) {
+            tampon[2 * (i - 1)] = visit(ctx.type(i));
+            tampon[2 * (i - 1) + 1] = nom(ctx.VAR(i).getText());
+        }
+        int params = ast.liste(tampon, nbParams);
+
+        return noeud(Ast.DECL_FCT, ctx, retour, nom, params, visit(ctx.core_fct()));
+    }
+
+    @Override
+    public Integer visitMain(grammarTCLParser.MainContext ctx) {
+        int fcts = liste(ctx.decl_fct());
+        return noeud(Ast.MAIN, ctx, fcts, visit(ctx.core_fct()), -1, -1);
+    }
+}
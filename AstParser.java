@@ -0,0 +1,583 @@
+import java.util.Arrays;
+
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+
+import Ast.Ast;
+
+/**
+ * Analyse syntaxique directe des tokens vers l'Ast, sans arbre d'ANTLR et sans récursion :
+ * les expressions sont analysées par précédence d'opérateurs avec deux piles explicites
+ * (opérandes et opérateurs), et l'imbrication des instructions (blocs, if, while, for) avec
+ * une pile de cadres. La profondeur d'un source n'est donc limitée que par la mémoire.
+ *
+ * Reconnaît le même langage que grammarTCL.g4, avec les mêmes priorités et associativités.
+ * Ne signale pas les erreurs : en cas d'erreur de syntaxe, les méthodes renvoient -1 et
+ * l'appelant relance l'analyse avec le parser d'ANTLR pour obtenir ses messages.
+ */
+public class AstParser {
+    // Tokens littéraux de la grammaire
+    private static final int PAR_OUV = grammarTCLParser.T__0;
+    private static final int PAR_FER = grammarTCLParser.T__1;
+    private static final int ACC_OUV = grammarTCLParser.T__2;
+    private static final int VIRGULE = grammarTCLParser.T__3;
+    private static final int ACC_FER = grammarTCLParser.T__4;
+    private static final int CRO_OUV = grammarTCLParser.T__5;
+    private static final int CRO_FER = grammarTCLParser.T__6;
+    private static final int INT_MAIN = grammarTCLParser.T__7;
+
+    // Marqueurs de groupes ouverts dans la pile des opérateurs (sortes négatives)
+    private static final int PARENTHESE = -1;
+    private static final int APPEL = -2;
+    private static final int INITIALISATION = -3;
+    private static final int INDICE = -4;
+
+    // Étapes des cadres d'instructions
+    private static final int ALORS = 0;
+    private static final int SINON = 1;
+    private static final int INIT = 2;
+    private static final int INCREMENT = 3;
+    private static final int CORPS = 4;
+
+    // Erreur de syntaxe, sans trace : elle ne sert qu'à remonter jusqu'au point d'entrée
+    private static final class ErreurSyntaxe extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ErreurSyntaxe() {
+            super(null, null, false, false);
+        }
+    }
+    private static final ErreurSyntaxe ERREUR = new ErreurSyntaxe();
+
+    private final Ast ast;
+    private final TokenStream tokens;
+
+    // Opérandes des expressions en cours : nœud et ligne de leur premier token
+    private int[] valeurs = new int[32];
+    private int[] lignesValeurs = new int[32];
+    private int nbValeurs = 0;
+
+    // Opérateurs et groupes ouverts : sorte, opérateur (ou identifiant de la fonction appelée),
+    // ligne, et hauteur de la pile des opérandes à l'ouverture d'un groupe
+    private int[] opSortes = new int[32];
+    private int[] opCodes = new int[32];
+    private int[] opLignes = new int[32];
+    private int[] opBases = new int[32];
+    private int nbOps = 0;
+
+    // Instructions englobantes en cours : sorte, étape, ligne, champs A, B, C
+    private int[] cadreSortes = new int[32];
+    private int[] cadreEtapes = new int[32];
+    private int[] cadreLignes = new int[32];
+    private int[] cadreA = new int[32];
+    private int[] cadreB = new int[32];
+    private int[] cadreC = new int[32];
+    private int nbCadres = 0;
+
+    // Éléments des listes en cours de construction (instructions, arguments, paramètres...)
+    private int[] elements = new int[32];
+    private int nbElements = 0;
+
+    /**
+     * Constructeur
+     * @param ast arbre dans lequel ajouter les nœuds
+     * @param tokens tokens à analyser, à partir du token courant
+     */
+    public AstParser(Ast ast, TokenStream tokens) {
+        this.ast = ast;
+        this.tokens = tokens;
+    }
+
+    /**
+     * Analyse un programme complet, jusqu'à la fin des tokens
+     * @return int nœud MAIN, ou -1 en cas d'erreur de syntaxe
+     */
+    public int main() {
+        try {
+            int ligne = ligne();
+            int base = nbElements;
+            while (tokens.LA(1) != INT_MAIN) {
+                empiler(declFct0());
+            }
+            int fcts = liste(base);
+            tokens.consume();
+            int corps = coreFct0();
+            attendre(Token.EOF);
+            return ast.noeud(Ast.MAIN, ligne, fcts, corps, -1, -1);
+        } catch (ErreurSyntaxe e) {
+            return echec();
+        }
+    }
+
+    /**
+     * Analyse une déclaration de fonction (analyse en flux)
+     * @return int nœud DECL_FCT, ou -1 en cas d'erreur de syntaxe
+     */
+    public int declFct() {
+        try {
+            return declFct0();
+        } catch (ErreurSyntaxe e) {
+            return echec();
+        }
+    }
+
+    /**
+     * Analyse un corps de fonction (analyse en flux)
+     * @return int nœud CORE_FCT, ou -1 en cas d'erreur de syntaxe
+     */
+    public int coreFct() {
+        try {
+            return coreFct0();
+        } catch (ErreurSyntaxe e) {
+            return echec();
+        }
+    }
+
+    private int echec() {
+        nbValeurs = 0;
+        nbOps = 0;
+        nbCadres = 0;
+        nbElements = 0;
+        return -1;
+    }
+
+    // --- FONCTIONS ---
+
+    private int declFct0() {
+        int ligne = ligne();
+        int retour = type();
+        int nom = identifiant();
+        attendre(PAR_OUV);
+        int base = nbElements;
+        if (tokens.LA(1) != PAR_FER) {
+            while (true) {
+                empiler(type());
+                empiler(identifiant());
+                if (tokens.LA(1) != VIRGULE) break;
+                tokens.consume();
+            }
+        }
+        attendre(PAR_FER);
+        int params = liste(base);
+        return ast.noeud(Ast.DECL_FCT, ligne, retour, nom, params, coreFct0());
+    }
+
+    private int coreFct0() {
+        int ligne = ligne();
+        attendre(ACC_OUV);
+        int base = nbElements;
+        while (true) {
+            if (tokens.LA(1) != grammarTCLParser.RETURN) {
+                empiler(instruction());
+                continue;
+            }
+            // return suivi de '}' : valeur retournée par la fonction, sinon simple instruction
+            int ligneReturn = ligne();
+            tokens.consume();
+            int valeur = expression();
+            attendre(grammarTCLParser.SEMICOL);
+            if (tokens.LA(1) == ACC_FER) {
+                tokens.consume();
+                return ast.noeud(Ast.CORE_FCT, ligne, liste(base), valeur, -1, -1);
+            }
+            empiler(ast.noeud(Ast.RETURN, ligneReturn, valeur, -1, -1, -1));
+        }
+    }
+
+    private int type() {
+        int ligne = ligne();
+        String texte = texte(grammarTCLParser.BASE_TYPE);
+        int base = texte.equals("int") ? Ast.BASE_INT : texte.equals("bool") ? Ast.BASE_BOOL : Ast.BASE_AUTO;
+        int n = ast.noeud(Ast.BASE_TYPE, ligne, base, -1, -1, -1);
+        while (tokens.LA(1) == CRO_OUV) {
+            tokens.consume();
+            attendre(CRO_FER);
+            n = ast.noeud(Ast.TAB_TYPE, ligne, n, -1, -1, -1);
+        }
+        return n;
+    }
+
+    // --- INSTRUCTIONS ---
+
+    // Analyse une instruction et toutes celles qu'elle contient, en empilant un cadre
+    // par bloc, if, while ou for ouvert au lieu de s'appeler récursivement
+    private int instruction() {
+        int base = nbCadres;
+        analyse:
+        while (true) {
+            int ligne = ligne();
+            int n;
+            switch (tokens.LA(1)) {
+                case ACC_OUV:
+                    tokens.consume();
+                    empilerCadre(Ast.BLOCK, 0, ligne, nbElements, -1, -1);
+                    continue analyse;
+                case grammarTCLParser.IF:
+                    tokens.consume();
+                    empilerCadre(Ast.IF, ALORS, ligne, condition(), -1, -1);
+                    continue analyse;
+                case grammarTCLParser.WHILE:
+                    tokens.consume();
+                    empilerCadre(Ast.WHILE, CORPS, ligne, condition(), -1, -1);
+                    continue analyse;
+                case grammarTCLParser.FOR:
+                    tokens.consume();
+                    attendre(PAR_OUV);
+                    empilerCadre(Ast.FOR, INIT, ligne, -1, -1, -1);
+                    continue analyse;
+                case grammarTCLParser.BASE_TYPE:
+                    n = declaration(ligne);
+                    break;
+                case grammarTCLParser.PRINT:
+                    tokens.consume();
+                    attendre(PAR_OUV);
+                    int variable = identifiant();
+                    attendre(PAR_FER);
+                    attendre(grammarTCLParser.SEMICOL);
+                    n = ast.noeud(Ast.PRINT, ligne, variable, -1, -1, -1);
+                    break;
+                case grammarTCLParser.VAR:
+                    n = affectation(ligne);
+                    break;
+                case grammarTCLParser.RETURN:
+                    tokens.consume();
+                    int valeur = expression();
+                    attendre(grammarTCLParser.SEMICOL);
+                    n = ast.noeud(Ast.RETURN, ligne, valeur, -1, -1, -1);
+                    break;
+                default:
+                    throw ERREUR;
+            }
+
+            // L'instruction n termine peut-être une ou plusieurs instructions englobantes
+            while (nbCadres > base) {
+                int c = nbCadres - 1;
+                switch (cadreSortes[c]) {
+                    case Ast.BLOCK:
+                        empiler(n);
+                        if (tokens.LA(1) != ACC_FER) continue analyse;
+                        tokens.consume();
+                        n = ast.noeud(Ast.BLOCK, cadreLignes[c], liste(cadreA[c]), -1, -1, -1);
+                        break;
+                    case Ast.IF:
+                        if (cadreEtapes[c] == ALORS) {
+                            cadreB[c] = n;
+                            if (tokens.LA(1) == grammarTCLParser.ELSE) {
+                                tokens.consume();
+                                cadreEtapes[c] = SINON;
+                                continue analyse;
+                            }
+                            n = ast.noeud(Ast.IF, cadreLignes[c], cadreA[c], n, -1, -1);
+                        } else {
+                            n = ast.noeud(Ast.IF, cadreLignes[c], cadreA[c], cadreB[c], n, -1);
+                        }
+                        break;
+                    case Ast.WHILE:
+                        n = ast.noeud(Ast.WHILE, cadreLignes[c], cadreA[c], n, -1, -1);
+                        break;
+                    default:
+                        if (cadreEtapes[c] == INIT) {
+                            cadreA[c] = n;
+                            attendre(VIRGULE);
+                            cadreB[c] = expression();
+                            attendre(VIRGULE);
+                            cadreEtapes[c] = INCREMENT;
+                            continue analyse;
+                        }
+                        if (cadreEtapes[c] == INCREMENT) {
+                            cadreC[c] = n;
+                            attendre(PAR_FER);
+                            cadreEtapes[c] = CORPS;
+                            continue analyse;
+                        }
+                        n = ast.noeud(Ast.FOR, cadreLignes[c], cadreA[c], cadreB[c], cadreC[c], n);
+                }
+                nbCadres--;
+            }
+            return n;
+        }
+    }
+
+    private int condition() {
+        attendre(PAR_OUV);
+        int cond = expression();
+        attendre(PAR_FER);
+        return cond;
+    }
+
+    private int declaration(int ligne) {
+        int type = type();
+        int nom = identifiant();
+        int valeur = -1;
+        if (tokens.LA(1) == grammarTCLParser.ASSIGN) {
+            tokens.consume();
+            valeur = expression();
+        }
+        attendre(grammarTCLParser.SEMICOL);
+        return ast.noeud(Ast.DECLARATION, ligne, type, nom, valeur, -1);
+    }
+
+    private int affectation(int ligne) {
+        int nom = identifiant();
+        int base = nbElements;
+        while (tokens.LA(1) == CRO_OUV) {
+            tokens.consume();
+            empiler(expression());
+            attendre(CRO_FER);
+        }
+        attendre(grammarTCLParser.ASSIGN);
+        int valeur = expression();
+        attendre(grammarTCLParser.SEMICOL);
+        return ast.noeud(Ast.ASSIGNMENT, ligne, nom, liste(base), valeur, -1);
+    }
+
+    // --- EXPRESSIONS ---
+
+    // Priorité d'un opérateur (celle de grammarTCLParser : plus grande = plus prioritaire)
+    private static int priorite(int sorte) {
+        switch (sorte) {
+            case Ast.OPPOSITE: return 11;
+            case Ast.NEGATION: return 10;
+            case Ast.MULTIPLICATION: return 9;
+            case Ast.ADDITION: return 8;
+            case Ast.COMPARISON: return 7;
+            case Ast.EQUALITY: return 6;
+            case Ast.AND: return 5;
+            case Ast.OR: return 4;
+            default: return -1; // marqueur de groupe : jamais réduit par priorité
+        }
+    }
+
+    // Analyse une expression complète et s'arrête sur le premier token qui ne peut pas la prolonger
+    private int expression() {
+        int baseOps = nbOps;
+        int baseValeurs = nbValeurs;
+        boolean operande = true;
+        while (true) {
+            int t = tokens.LA(1);
+            int ligne = ligne();
+            if (operande) {
+                switch (t) {
+                    case grammarTCLParser.SUB:
+                        tokens.consume();
+                        empilerOp(Ast.OPPOSITE, -1, ligne, -1);
+                        continue;
+                    case grammarTCLParser.NOT:
+                        tokens.consume();
+                        empilerOp(Ast.NEGATION, -1, ligne, -1);
+                        continue;
+                    case PAR_OUV:
+                        tokens.consume();
+                        empilerOp(PARENTHESE, -1, ligne, -1);
+                        continue;
+                    case ACC_OUV:
+                        tokens.consume();
+                        if (tokens.LA(1) == ACC_FER) {
+                            tokens.consume();
+                            empilerValeur(ast.noeud(Ast.TAB_INITIALIZATION, ligne, ast.liste(elements, 0), -1, -1, -1), ligne);
+                            break;
+                        }
+                        empilerOp(INITIALISATION, -1, ligne, nbValeurs);
+                        continue;
+                    case grammarTCLParser.VAR:
+                        int nom = identifiant();
+                        if (tokens.LA(1) != PAR_OUV) {
+                            empilerValeur(ast.noeud(Ast.VARIABLE, ligne, nom, -1, -1, -1), ligne);
+                            break;
+                        }
+                        tokens.consume();
+                        if (tokens.LA(1) == PAR_FER) {
+                            tokens.consume();
+                            empilerValeur(ast.noeud(Ast.CALL, ligne, nom, ast.liste(elements, 0), -1, -1), ligne);
+                            break;
+                        }
+                        empilerOp(APPEL, nom, ligne, nbValeurs);
+                        continue;
+                    case grammarTCLParser.INT:
+                        String texte = tokens.LT(1).getText();
+                        tokens.consume();
+                        int v;
+                        try {
+                            v = ast.noeud(Ast.INTEGER, ligne, Integer.parseInt(texte), -1, -1, -1);
+                        } catch (NumberFormatException e) {
+                            // Hors des int : l'erreur sera levée par la génération de code
+                            v = ast.noeud(Ast.INTEGER, ligne, 0, ast.interner(texte), -1, -1);
+                        }
+                        empilerValeur(v, ligne);
+                        break;
+                    case grammarTCLParser.BOOL:
+                        boolean vrai = tokens.LT(1).getText().equals("true");
+                        tokens.consume();
+                        empilerValeur(ast.noeud(Ast.BOOLEAN, ligne, vrai ? 1 : 0, -1, -1, -1), ligne);
+                        break;
+                    default:
+                        throw ERREUR;
+                }
+                operande = false;
+                continue;
+            }
+
+            int sorte = -1;
+            int op = -1;
+            switch (t) {
+                case grammarTCLParser.MUL: sorte = Ast.MULTIPLICATION; op = Ast.OP_MUL; break;
+                case grammarTCLParser.DIV: sorte = Ast.MULTIPLICATION; op = Ast.OP_DIV; break;
+                case grammarTCLParser.MODULO: sorte = Ast.MULTIPLICATION; op = Ast.OP_MOD; break;
+                case grammarTCLParser.ADD: sorte = Ast.ADDITION; op = Ast.OP_ADD; break;
+                case grammarTCLParser.SUB: sorte = Ast.ADDITION; op = Ast.OP_SUB; break;
+                case grammarTCLParser.SUP: sorte = Ast.COMPARISON; op = Ast.OP_SUP; break;
+                case grammarTCLParser.INF: sorte = Ast.COMPARISON; op = Ast.OP_INF; break;
+                case grammarTCLParser.SUPEQ: sorte = Ast.COMPARISON; op = Ast.OP_SUPEQ; break;
+                case grammarTCLParser.INFEQ: sorte = Ast.COMPARISON; op = Ast.OP_INFEQ; break;
+                case grammarTCLParser.EQUALS: sorte = Ast.EQUALITY; op = Ast.OP_EQUALS; break;
+                case grammarTCLParser.DIFF: sorte = Ast.EQUALITY; op = Ast.OP_DIFF; break;
+                case grammarTCLParser.AND: sorte = Ast.AND; op = Ast.OP_AND; break;
+                case grammarTCLParser.OR: sorte = Ast.OR; op = Ast.OP_OR; break;
+                default:
+            }
+            if (sorte >= 0) {
+                // Opérateurs binaires associatifs à gauche
+                int p = priorite(sorte);
+                while (nbOps > baseOps && priorite(opSortes[nbOps - 1]) >= p) {
+                    reduire();
+                }
+                tokens.consume();
+                empilerOp(sorte, op, lignesValeurs[nbValeurs - 1], -1);
+                operande = true;
+                continue;
+            }
+            if (t == CRO_OUV) {
+                // Accès tabulaire : plus prioritaire que tous les opérateurs, rien à réduire
+                tokens.consume();
+                empilerOp(INDICE, -1, lignesValeurs[nbValeurs - 1], -1);
+                operande = true;
+                continue;
+            }
+
+            // Fin d'un groupe, séparateur, ou fin de l'expression
+            while (nbOps > baseOps && opSortes[nbOps - 1] >= 0) {
+                reduire();
+            }
+            if (nbOps == baseOps) {
+                break;
+            }
+            int g = nbOps - 1;
+            int groupe = opSortes[g];
+            if (t == VIRGULE && (groupe == APPEL || groupe == INITIALISATION)) {
+                tokens.consume();
+                operande = true;
+                continue;
+            }
+            if (t == PAR_FER && groupe == PARENTHESE) {
+                // Les parenthèses n'apparaissent pas dans l'arbre, mais l'expression commence à '('
+                lignesValeurs[nbValeurs - 1] = opLignes[g];
+            } else if (t == PAR_FER && groupe == APPEL) {
+                int args = ast.liste(valeurs, opBases[g], nbValeurs - opBases[g]);
+                nbValeurs = opBases[g];
+                empilerValeur(ast.noeud(Ast.CALL, opLignes[g], opCodes[g], args, -1, -1), opLignes[g]);
+            } else if (t == ACC_FER && groupe == INITIALISATION) {
+                int elts = ast.liste(valeurs, opBases[g], nbValeurs - opBases[g]);
+                nbValeurs = opBases[g];
+                empilerValeur(ast.noeud(Ast.TAB_INITIALIZATION, opLignes[g], elts, -1, -1, -1), opLignes[g]);
+            } else if (t == CRO_FER && groupe == INDICE) {
+                int indice = valeurs[--nbValeurs];
+                int tab = valeurs[nbValeurs - 1];
+                valeurs[nbValeurs - 1] = ast.noeud(Ast.TAB_ACCESS, opLignes[g], tab, indice, -1, -1);
+            } else {
+                throw ERREUR;
+            }
+            tokens.consume();
+            nbOps--;
+        }
+        if (nbValeurs != baseValeurs + 1) {
+            throw ERREUR;
+        }
+        return valeurs[--nbValeurs];
+    }
+
+    // Applique l'opérateur en sommet de pile à ses opérandes
+    private void reduire() {
+        int o = --nbOps;
+        int sorte = opSortes[o];
+        if (sorte == Ast.OPPOSITE || sorte == Ast.NEGATION) {
+            valeurs[nbValeurs - 1] = ast.noeud(sorte, opLignes[o], valeurs[nbValeurs - 1], -1, -1, -1);
+            lignesValeurs[nbValeurs - 1] = opLignes[o];
+        } else {
+            int droite = valeurs[--nbValeurs];
+            valeurs[nbValeurs - 1] = ast.noeud(sorte, opLignes[o], valeurs[nbValeurs - 1], droite, opCodes[o], -1);
+        }
+    }
+
+    // --- TOKENS ET PILES ---
+
+    private int ligne() {
+        return tokens.LT(1).getLine();
+    }
+
+    private void attendre(int type) {
+        if (tokens.LA(1) != type) throw ERREUR;
+        if (type != Token.EOF) tokens.consume();
+    }
+
+    private String texte(int type) {
+        if (tokens.LA(1) != type) throw ERREUR;
+        String texte = tokens.LT(1).getText();
+        tokens.consume();
+        return texte;
+    }
+
+    private int identifiant() {
+        return ast.interner(texte(grammarTCLParser.VAR));
+    }
+
+    private int liste(int base) {
+        int l = ast.liste(elements, base, nbElements - base);
+        nbElements = base;
+        return l;
+    }
+
+    private void empiler(int element) {
+        if (nbElements == elements.length) elements = Arrays.copyOf(elements, nbElements * 2);
+        elements[nbElements++] = element;
+    }
+
+    private void empilerValeur(int noeud, int ligne) {
+        if (nbValeurs == valeurs.length) {
+            valeurs = Arrays.copyOf(valeurs, nbValeurs * 2);
+            lignesValeurs = Arrays.copyOf(lignesValeurs, nbValeurs * 2);
+        }
+        valeurs[nbValeurs] = noeud;
+        lignesValeurs[nbValeurs++] = ligne;
+    }
+
+    private void empilerOp(int sorte, int code, int ligne, int base) {
+        if (nbOps == opSortes.length) {
+            opSortes = Arrays.copyOf(opSortes, nbOps * 2);
+            opCodes = Arrays.copyOf(opCodes, nbOps * 2);
+            opLignes = Arrays.copyOf(opLignes, nbOps * 2);
+            opBases = Arrays.copyOf(opBases, nbOps * 2);
+        }
+        opSortes[nbOps] = sorte;
+        opCodes[nbOps] = code;
+        opLignes[nbOps] = ligne;
+        opBases[nbOps++] = base;
+    }
+
+    private void empilerCadre(int sorte, int etape, int ligne, int a, int b, int c) {
+        if (nbCadres == cadreSortes.length) {
+            int taille = nbCadres * 2;
+            cadreSortes = Arrays.copyOf(cadreSortes, taille);
+            cadreEtapes = Arrays.copyOf(cadreEtapes, taille);
+            cadreLignes = Arrays.copyOf(cadreLignes, taille);
+            cadreA = Arrays.copyOf(cadreA, taille);
+            cadreB = Arrays.copyOf(cadreB, taille);
+            cadreC = Arrays.copyOf(cadreC, taille);
+        }
+        cadreSortes[nbCadres] = sorte;
+        cadreEtapes[nbCadres] = etape;
+        cadreLignes[nbCadres] = ligne;
+        cadreA[nbCadres] = a;
+        cadreB[nbCadres] = b;
+        cadreC[nbCadres++] = c;
+    }
+}
@@ -1,30 +1,156 @@
-import java.util.Dictionary;
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 
 import Asm.*;
-import org.antlr.v4.runtime.tree.AbstractParseTreeVisitor;
+import Ast.Ast;
+import Metrics.Metrics;
 import Type.Type;
 import Type.ArrayType;
 import Type.UnknownType;
 
-public class CodeGenerator  extends AbstractParseTreeVisitor<Program> implements grammarTCLVisitor<Program> {
+public class CodeGenerator {
 
     private int nbRegister = 1;
     private int nbLabels = 3;
+    // Un tableau est désigné par sa poignée, 3 cases [éléments][taille][classe] qui ne changent jamais
+    // d'adresse : un alias (b = a, r = m[0], paramètre) voit donc les agrandissements faits par un autre.
+    // Les éléments sont rangés d'un seul bloc, t[i] est à l'adresse éléments + i ; seule la première case
+    // de la poignée change quand le bloc est remplacé par un plus grand.
+    // Un bloc de classe k a une capacité de 2^k éléments, au moins 4 pour que les blocs se copient et se
+    // remplissent de 0 par 4 cases ; les cases entre la taille et la capacité valent toujours 0
+    private static final int DECALAGE_ELEMENTS = 0;
+    private static final int DECALAGE_TAILLE = 1;
+    private static final int DECALAGE_CLASSE = 2;
+    private static final int TAILLE_POIGNEE = 3;
+    private static final int CLASSE_MIN = 2;
+    private static final int NB_CLASSES = 16;
+    // Tas des tableaux, alloués à l'exécution : case du sommet du tas puis tête de la liste des blocs
+    // libres de chaque classe. Il est placé au-dessus de la pile des appels, qui descend depuis SP
+    private static final int ADRESSE_TAS = 1024;
+    private static final int ADRESSE_LISTES = ADRESSE_TAS + 1;
+    private static final int DEBUT_TAS = ADRESSE_LISTES + NB_CLASSES;
+    // Décalage qui amène le bit de signe d'un entier 32 bits en poids faible
+    private static final int BITS_SIGNE = 31;
+    // Fin des cases mémoire réservées à la compilation (0 : pas de tableau, le tas n'est pas initialisé)
     private int stackPointer = 0;
-    private Dictionary<String, Integer> varToReg = new Hashtable<>();
-    //  nomFormat=fctName-NbParam -> paramName
-    private Dictionary<String, String> paramToVar = new Hashtable<>();
-    private Map<String, Type> types;
+    // Tables indexées par le numéro des identifiants dans l'Ast
+    // Registre de chaque variable (0 : pas encore de registre)
+    private int[] varToReg = new int[16];
+    // Registre de la valeur de retour de chaque fonction (0 : pas encore générée)
+    private int[] retToReg = new int[16];
+    // Paramètres de chaque fonction, dans l'ordre (null : pas encore générée)
+    private int[][] paramToVar = new int[16][];
+    // Types résolus par le typage, par numéro de nœud (voir TyperVisitor.getTypesNoeuds)
+    private Type[] typesNoeuds;
+    private final Ast ast;
+    // Code déjà généré par fonction (null : pas de compilation incrémentale)
+    private FunctionCache functionCache;
+    // Label du code de main, vers lequel saute le début du programme
+    private String mainLabel;
+    // Piles explicites des parcours d'opérateurs et d'instructions (voir operateurs et instructions) :
+    // les expressions et les blocs peuvent être imbriqués à n'importe quelle profondeur
+    private int[] opsNoeuds = new int[32];
+    private int[] opsEtapes = new int[32];
+    private int nbOps = 0;
+    private int[] adresses = new int[32];
+    private int nbAdresses = 0;
+    // Pile explicite des conditions en contexte de branchement (voir sauter) : nœud (-1 pour poser
+    // un label), valeur qui fait sauter et label visé
+    private int[] sautsNoeuds = new int[16];
+    private boolean[] sautsSi = new boolean[16];
+    private String[] sautsLabels = new String[16];
+    private int nbSauts = 0;
+    private final ArrayList<Cadre> cadres = new ArrayList<>();
+
+    // Instruction if, while, for ou bloc en cours de génération
+    private static final class Cadre {
+        int noeud;
+        int etape;
+        // Code où sont ajoutées les instructions de la structure
+        Program sortie;
+        // For : code de l'incrément, placé après le corps
+        Program incr;
+        // While et for : label du test de la condition, où revient la fin du corps
+        String labelDebut;
+        // If : label du sinon ; if, while et for : label de la fin
+        String labelElse;
+        String labelFin;
+    }
 
 
     /**
      * Constructeur
-     * @param types types de chaque variable du code source
+     * @param ast arbre dont on génère le code
+     * @param typesNoeuds types résolus des nœuds (TyperVisitor.getTypesNoeuds)
+     */
+    public CodeGenerator(Ast ast, Type[] typesNoeuds) {
+        this.ast = ast;
+        this.typesNoeuds = typesNoeuds;
+    }
+
+    /**
+     * Constructeur pour la compilation incrémentale
+     * @param ast arbre dont on génère le code
+     * @param typesNoeuds types résolus des nœuds (TyperVisitor.getTypesNoeuds)
+     * @param functionCache cache du code des fonctions déjà générées
+     */
+    public CodeGenerator(Ast ast, Type[] typesNoeuds, FunctionCache functionCache) {
+        this.ast = ast;
+        this.typesNoeuds = typesNoeuds;
+        this.functionCache = functionCache;
+    }
+
+    /**
+     * Setter des types des nœuds, quand le typage avance avec la génération (analyse en flux)
+     * @param typesNoeuds types résolus des nœuds (TyperVisitor.getTypesNoeuds)
      */
-    public CodeGenerator(Map<String, Type> types) {
-        this.types = types;
+    public void setTypesNoeuds(Type[] typesNoeuds) {
+        this.typesNoeuds = typesNoeuds;
+    }
+
+    // Vrai si le typage a résolu le nœud en tableau
+    private boolean estTableau(int n) {
+        return n < typesNoeuds.length && typesNoeuds[n] instanceof ArrayType;
+    }
+
+    /**
+     * Génère le code d'un nœud selon sa sorte
+     * @param n nœud
+     * @return le code du nœud
+     */
+    public Program visit(int n) {
+        switch (ast.sorte(n)) {
+            case Ast.INTEGER: return visitInteger(n);
+            case Ast.BOOLEAN: return visitBoolean(n);
+            case Ast.VARIABLE: return visitVariable(n);
+            case Ast.NEGATION: return visitNegation(n);
+            case Ast.OPPOSITE: return visitOpposite(n);
+            case Ast.MULTIPLICATION: return visitMultiplication(n);
+            case Ast.ADDITION: return visitAddition(n);
+            case Ast.COMPARISON: return visitComparison(n);
+            case Ast.EQUALITY: return visitEquality(n);
+            case Ast.AND: return visitAnd(n);
+            case Ast.OR: return visitOr(n);
+            case Ast.TAB_ACCESS: return visitTab_access(n);
+            case Ast.TAB_INITIALIZATION: return visitTab_initialization(n);
+            case Ast.CALL: return visitCall(n);
+            case Ast.BASE_TYPE: return visitBase_type(n);
+            case Ast.TAB_TYPE: return visitTab_type(n);
+            case Ast.DECLARATION: return visitDeclaration(n);
+            case Ast.PRINT: return visitPrint(n);
+            case Ast.ASSIGNMENT: return visitAssignment(n);
+            case Ast.BLOCK: return visitBlock(n);
+            case Ast.IF: return visitIf(n);
+            case Ast.WHILE: return visitWhile(n);
+            case Ast.FOR: return visitFor(n);
+            case Ast.RETURN: return visitReturn(n);
+            case Ast.CORE_FCT: return visitCore_fct(n);
+            case Ast.DECL_FCT: return visitDecl_fct(n);
+            case Ast.MAIN: return visitMain(n);
+            default: throw new IllegalStateException("Sorte de nœud inconnue : " + ast.sorte(n));
+        }
     }
 
     public int getNewRegister() {
@@ -37,388 +163,722 @@ public class CodeGenerator  extends AbstractParseTreeVisitor<Program> implements
         return "label" + nbLabels;
     }
 
-    public Instruction getLabelInstruction(String labelName) {
-        // Renvoie une instruction vide qui permet de sauter à un endroit spécifique
-        return new UAL(labelName, UAL.Op.XOR, 0, 0, 0);
-    }
-
-    @Override
-    public Program visitNegation(grammarTCLParser.NegationContext ctx) {
-        Program pCtx = visit(ctx.getChild(1));
-        int addr = this.nbRegister;
-        Program p = new Program();
-        p.addInstructions(pCtx);
-        p.addInstruction(new UALi(UALi.Op.SUB, getNewRegister(), addr, 1));
-        int tempAddr = this.nbRegister;
-        p.addInstruction(new UAL(UAL.Op.SUB, getNewRegister(), 0, tempAddr));
-        return p;
+    // Registre d'une variable
+    private int registre(int id) {
+        if (id >= varToReg.length || varToReg[id] == 0) {
+            throw new IllegalStateException("Aucun registre pour la variable '" + ast.nom(id) + "'");
+        }
+        return varToReg[id];
     }
 
-    @Override
-    public Program visitComparison(grammarTCLParser.ComparisonContext ctx) {
-        Program pLeft = visit(ctx.getChild(0));
-        int leftAddr = this.nbRegister;
-        Program pRight = visit(ctx.getChild(2));
-        int rightAddr = this.nbRegister;
-        Program p = new Program();
-        p.addInstructions(pLeft);
-        p.addInstructions(pRight);
-
-        String trueLabel = getNewLabel();
-        String falseLabel = getNewLabel();
-        String endLabel = getNewLabel();
-
-        String ope = ctx.getChild(1).getText();
-
-        if(ope.equals(">")) {
-            p.addInstruction(new CondJump(CondJump.Op.JSUP, leftAddr, rightAddr, trueLabel));
-            p.addInstruction(new JumpCall(JumpCall.Op.JMP, falseLabel));
-        } else if(ope.equals("<")) {
-            p.addInstruction(new CondJump(CondJump.Op.JINF, leftAddr, rightAddr, trueLabel));
-            p.addInstruction(new JumpCall(JumpCall.Op.JMP, falseLabel));
-        } else if(ope.equals(">=")) {
-            int newReg = getNewRegister();
-            p.addInstruction(new UALi(UALi.Op.SUB, newReg, leftAddr, 1));
-            p.addInstruction(new CondJump(CondJump.Op.JSUP, newReg, rightAddr, trueLabel));
-            p.addInstruction(new JumpCall(JumpCall.Op.JMP, falseLabel));
-        } else {
-            // Cas ope == '<='
-            int newReg = getNewRegister();
-            p.addInstruction(new UALi(UALi.Op.ADD, newReg, leftAddr, 1));
-            p.addInstruction(new CondJump(CondJump.Op.JSUP, newReg, rightAddr, trueLabel));
-            p.addInstruction(new JumpCall(JumpCall.Op.JMP, falseLabel));
+    // Registre de la valeur de retour d'une fonction, connu une fois son corps généré
+    private int registreRetour(int fct) {
+        if (fct >= retToReg.length || retToReg[fct] == 0) {
+            throw new IllegalStateException("Aucun registre de retour pour la fonction '" + ast.nom(fct) + "'");
         }
+        return retToReg[fct];
+    }
 
-        // Bloc qui renvoie 1
-        p.addInstruction(new UALi(trueLabel, UALi.Op.ADD, getNewRegister(), 0, 1));
-        p.addInstruction(new JumpCall(JumpCall.Op.JMP, endLabel));
-
-        // Bloc qui renvoie 0
-        p.addInstruction(new UAL(falseLabel, UAL.Op.XOR, getNewRegister(), 0, 0));
-        p.addInstruction(new JumpCall(JumpCall.Op.JMP, endLabel));
+    private void setRegistre(int id, int reg) {
+        if (id >= varToReg.length) varToReg = Arrays.copyOf(varToReg, Math.max(varToReg.length * 2, ast.nbNoms()));
+        varToReg[id] = reg;
+    }
 
-        p.addInstruction(getLabelInstruction(endLabel));
-        return p;
+    private void setFonction(int fct, int[] params, int regRetour) {
+        if (fct >= retToReg.length) {
+            retToReg = Arrays.copyOf(retToReg, Math.max(retToReg.length * 2, ast.nbNoms()));
+            paramToVar = Arrays.copyOf(paramToVar, retToReg.length);
+        }
+        paramToVar[fct] = params;
+        retToReg[fct] = regRetour;
     }
 
-    @Override
-    public Program visitOr(grammarTCLParser.OrContext ctx) {
-        Program pLeft = visit(ctx.getChild(0));
-        int leftAddr = this.nbRegister;
-        Program pRight = visit(ctx.getChild(2));
-        int rightAddr = this.nbRegister;
-        Program p = new Program();
-        p.addInstructions(pLeft);
-        p.addInstructions(pRight);
-        p.addInstruction(new UALi(UALi.Op.OR, getNewRegister(), leftAddr, rightAddr));
-        return p;
+    // --- PARCOURS SANS RÉCURSION ---
+
+    // Sortes générées par operateurs : opérateurs unaires, binaires, accès tabulaire, littéraux de
+    // tableau et appels
+    private static boolean estOperateur(int sorte) {
+        return sorte >= Ast.NEGATION && sorte <= Ast.CALL;
     }
 
-    @Override
-    public Program visitOpposite(grammarTCLParser.OppositeContext ctx) {
-        Program pCtx = visit(ctx.getChild(1));
-        int addr = this.nbRegister;
+    /**
+     * Génère un arbre d'opérateurs en post-ordre avec une pile explicite, dans un seul Program :
+     * le code (et les registres et labels) de la gauche, puis de la droite, puis de l'opérateur,
+     * comme un parcours récursif. Un littéral de tableau ou un appel génère ses éléments ou
+     * arguments un à un (voir etapeListe). Les autres nœuds rencontrés sont générés par visit.
+     * @param n nœud opérateur
+     * @return le code de l'expression, son résultat est dans le dernier registre
+     */
+    private Program operateurs(int n) {
         Program p = new Program();
-        p.addInstructions(pCtx);
-        p.addInstruction(new UAL(UAL.Op.SUB, getNewRegister(), 0, addr));
+        int base = nbOps;
+        empilerOp(n);
+        while (nbOps > base) {
+            int i = nbOps - 1;
+            int x = opsNoeuds[i];
+            int etape = opsEtapes[i]++;
+            if (ast.sorte(x) >= Ast.TAB_INITIALIZATION) {
+                if (etapeListe(p, x, etape)) {
+                    nbOps--;
+                    finListe(p, x);
+                    empilerAdresse(this.nbRegister);
+                }
+            } else if (etape == 0) {
+                operande(p, indiceDabord(x) ? ast.b(x) : ast.a(x));
+            } else if (etape == 1 && ast.sorte(x) >= Ast.MULTIPLICATION) {
+                operande(p, indiceDabord(x) ? ast.a(x) : ast.b(x));
+            } else {
+                nbOps--;
+                int rightAddr = ast.sorte(x) >= Ast.MULTIPLICATION ? adresses[--nbAdresses] : 0;
+                int leftAddr = adresses[--nbAdresses];
+                if (indiceDabord(x)) {
+                    int indice = leftAddr;
+                    leftAddr = rightAddr;
+                    rightAddr = indice;
+                }
+                appliquer(x, p, leftAddr, rightAddr);
+                empilerAdresse(this.nbRegister);
+            }
+        }
+        nbAdresses--;
         return p;
     }
 
-    @Override
-    public Program visitInteger(grammarTCLParser.IntegerContext ctx) {
-        int value = Integer.parseInt(ctx.getText());
-        Program p = new Program();
-        p.addInstruction(new UALi(UALi.Op.ADD, getNewRegister(), 0, value));
-        return p;
+    /**
+     * Étape d'un littéral de tableau ou d'un appel : à l'étape k, range le résultat de l'élément k - 1
+     * dans sa case ou dans le registre du paramètre, puis lance l'élément k. Un littéral n'est alloué
+     * qu'une fois son premier élément généré, sa poignée et son bloc restant ensuite dans la pile des
+     * adresses : des littéraux imbriqués ne gardent pas toutes leurs adresses dans des registres à la fois.
+     * @return true quand tous les éléments sont générés
+     */
+    private boolean etapeListe(Program p, int n, int etape) {
+        boolean appel = ast.sorte(n) == Ast.CALL;
+        int elements = appel ? ast.b(n) : ast.a(n);
+        int nbElt = ast.taille(elements);
+        if (etape >= 1) {
+            int addrElt = adresses[--nbAdresses];
+            if (appel) {
+                // On stock la var de chaque param dans le reg alloué lors de la decl
+                p.addInstruction(new UALi(UALi.Op.ADD, registre(paramToVar[ast.a(n)][etape - 1]), addrElt, 0));
+            } else {
+                if (etape == 1) {
+                    debutTableau(p, nbElt);
+                }
+                ecrire(p, addrElt, adresses[nbAdresses - 1], etape - 1);
+            }
+        }
+        if (etape < nbElt) {
+            operande(p, ast.element(elements, etape));
+            return false;
+        }
+        return true;
     }
 
-    @Override
-    public Program visitTab_access(grammarTCLParser.Tab_accessContext ctx) {
-        Program p = new Program();
+    // Fin d'un littéral de tableau ou d'un appel, son résultat dans un nouveau registre
+    private void finListe(Program p, int n) {
+        if (ast.sorte(n) == Ast.CALL) {
+            int fct = ast.a(n);
+            p.addInstruction(new JumpCall(JumpCall.Op.CALL, ast.nom(fct)));
 
-        Program pVar = visit(ctx.getChild(0));
-        int addrTaille = this.nbRegister;
+            // On ajoute la valeur de retour dans un nouveau reg
+            p.addInstruction(new UALi(UALi.Op.ADD, getNewRegister(), registreRetour(fct), 0));
+        } else {
+            int nbElt = ast.taille(ast.a(n));
+            if (nbElt == 0) {
+                debutTableau(p, 0);
+            }
+            int addrElems = adresses[--nbAdresses];
+            int addrTab = adresses[--nbAdresses];
+            for (int i = nbElt; i < (1 << classeLitteral(nbElt)); i++) {
+                ecrire(p, 0, addrElems, i);
+            }
 
-        Program pInd = visit(ctx.getChild(2));
-        int addrInd = this.nbRegister;
+            // On renvoie l'adresse de la poignée du tableau
+            p.addInstruction(new UALi(UALi.Op.ADD, getNewRegister(), addrTab, 0));
+        }
+    }
 
-        p.addInstructions(pVar);
-        p.addInstructions(pInd);
+    // Accès t[i] sur une variable : l'indice est généré avant la copie de t, qui ne reste pas dans
+    // un registre pendant le calcul de l'indice (t[t[...]] imbriqués)
+    private boolean indiceDabord(int n) {
+        return ast.sorte(n) == Ast.TAB_ACCESS && ast.sorte(ast.a(n)) == Ast.VARIABLE;
+    }
 
-        int addrPntr = getNewRegister();
-        p.addInstruction(new UALi(UALi.Op.ADD, addrPntr, addrTaille, 0));
-        // On saute la case de la taille du tab
-        p.addInstruction(new UALi(UALi.Op.ADD, addrPntr, addrPntr, 1));
+    // Génère une opérande et retient le registre de son résultat
+    private void operande(Program p, int x) {
+        if (estOperateur(ast.sorte(x))) {
+            empilerOp(x);
+        } else {
+            p.addInstructions(visit(x));
+            empilerAdresse(this.nbRegister);
+        }
+    }
 
-        // Cte = à 10
-        int addrVal10 = getNewRegister();
-        p.addInstruction(new UALi(UALi.Op.ADD, addrVal10, 0, 10));
+    // Code d'un opérateur, ses opérandes étant déjà générées dans p
+    private void appliquer(int n, Program p, int leftAddr, int rightAddr) {
+        int ope = ast.c(n);
+        switch (ast.sorte(n)) {
+            case Ast.NEGATION: {
+                p.addInstruction(new UALi(UALi.Op.SUB, getNewRegister(), leftAddr, 1));
+                int tempAddr = this.nbRegister;
+                p.addInstruction(new UAL(UAL.Op.SUB, getNewRegister(), 0, tempAddr));
+                break;
+            }
+            case Ast.OPPOSITE:
+                p.addInstruction(new UAL(UAL.Op.SUB, getNewRegister(), 0, leftAddr));
+                break;
+            case Ast.MULTIPLICATION:
+                if(ope == Ast.OP_MUL) {
+                    p.addInstruction(new UAL(UAL.Op.MUL, getNewRegister(), leftAddr, rightAddr));
+                } else if(ope == Ast.OP_DIV) {
+                    p.addInstruction(new UAL(UAL.Op.DIV, getNewRegister(), leftAddr, rightAddr));
+                } else {
+                    p.addInstruction(new UAL(UAL.Op.MOD, getNewRegister(), leftAddr, rightAddr));
+                }
+                break;
+            case Ast.ADDITION:
+                if(ope == Ast.OP_ADD) {
+                    p.addInstruction(new UAL(UAL.Op.ADD, getNewRegister(), leftAddr, rightAddr));
+                } else {
+                    // ope == "-"
+                    p.addInstruction(new UAL(UAL.Op.SUB, getNewRegister(), leftAddr, rightAddr));
+                }
+                break;
+            case Ast.COMPARISON:
+                comparaison(n, p, leftAddr, rightAddr);
+                break;
+            case Ast.EQUALITY:
+                egalite(n, p, leftAddr, rightAddr);
+                break;
+            case Ast.AND:
+                p.addInstruction(new UAL(UAL.Op.AND, getNewRegister(), leftAddr, rightAddr));
+                break;
+            case Ast.OR:
+                p.addInstruction(new UAL(UAL.Op.OR, getNewRegister(), leftAddr, rightAddr));
+                break;
+            default:
+                accesTableau(p, leftAddr, rightAddr);
+        }
+    }
 
-        String debLoopLabel = getNewLabel();
-        String finLoopLabel = getNewLabel();
+    // Comparaison (<, >, <=, >=) : 1 ou 0 dans un nouveau registre, sans saut.
+    // a >= b est le complément de a < b ; > et <= échangent les opérandes
+    private void comparaison(int n, Program p, int leftAddr, int rightAddr) {
+        int ope = ast.c(n);
+        if (ope == Ast.OP_INF || ope == Ast.OP_SUPEQ) {
+            inferieur(p, leftAddr, rightAddr);
+        } else {
+            inferieur(p, rightAddr, leftAddr);
+        }
+        if (ope == Ast.OP_SUPEQ || ope == Ast.OP_INFEQ) {
+            int bit = this.nbRegister;
+            p.addInstruction(new UALi(UALi.Op.XOR, getNewRegister(), bit, 1));
+        }
+    }
 
-        // Boucle pour mettre l'indice à une val <10
-        // Concrétement on cherche le chunk où elle se trouve
-        p.addInstruction(getLabelInstruction(debLoopLabel));
+    // a < b dans un nouveau registre : bit de signe de d ^ ((a ^ b) & (d ^ a)) avec d = a - b, juste
+    // même quand a - b déborde des 32 bits (son signe seul s'inverse quand a et b sont de signes opposés)
+    private void inferieur(Program p, int a, int b) {
+        int diff = getNewRegister();
+        p.addInstruction(new UAL(UAL.Op.SUB, diff, a, b));
+        int debord = getNewRegister();
+        p.addInstruction(new UAL(UAL.Op.XOR, debord, diff, a));
+        int ecart = getNewRegister();
+        p.addInstruction(new UAL(UAL.Op.XOR, ecart, a, b));
+        int et = getNewRegister();
+        p.addInstruction(new UAL(UAL.Op.AND, et, ecart, debord));
+        int val = getNewRegister();
+        p.addInstruction(new UAL(UAL.Op.XOR, val, diff, et));
+        negatif(p, val);
+    }
 
-        p.addInstruction(new CondJump(CondJump.Op.JINF, addrInd, addrVal10, finLoopLabel));
+    // Égalité (==, !=) : 1 ou 0 dans un nouveau registre, sans saut.
+    // a != b si a ^ b ou son opposé est négatif, a == b est le complément
+    private void egalite(int n, Program p, int leftAddr, int rightAddr) {
+        int ecart = getNewRegister();
+        p.addInstruction(new UAL(UAL.Op.XOR, ecart, leftAddr, rightAddr));
+        int oppose = getNewRegister();
+        p.addInstruction(new UAL(UAL.Op.SUB, oppose, 0, ecart));
+        int ou = getNewRegister();
+        p.addInstruction(new UAL(UAL.Op.OR, ou, ecart, oppose));
+        negatif(p, ou);
+        if (ast.c(n) == Ast.OP_EQUALS) {
+            int bit = this.nbRegister;
+            p.addInstruction(new UALi(UALi.Op.XOR, getNewRegister(), bit, 1));
+        }
+    }
 
-        // ===== LOOP =====
-        p.addInstruction(new UALi(UALi.Op.SUB, addrInd, addrInd, 10));
-        // On change de chunk pour accéder au suivant
-        int addrNextChunk = getNewRegister();
-        p.addInstruction(new UALi(UALi.Op.ADD, addrNextChunk, addrPntr, 10));
-        p.addInstruction(new Mem(Mem.Op.LD, addrPntr, addrNextChunk));
-        p.addInstruction(new JumpCall(JumpCall.Op.JMP, debLoopLabel));
-        // ================
+    // 1 si val est négatif sur 32 bits, 0 sinon, dans un nouveau registre : décalage du bit de signe
+    // en poids faible, masqué pour ignorer les bits au-delà (équivaut à val >>> 31)
+    private void negatif(Program p, int val) {
+        int signe = getNewRegister();
+        p.addInstruction(new UALi(UALi.Op.SR, signe, val, BITS_SIGNE));
+        p.addInstruction(new UALi(UALi.Op.AND, getNewRegister(), signe, 1));
+    }
 
-        p.addInstruction(getLabelInstruction(finLoopLabel));
+    // Accès t[i] : leftAddr adresse de la poignée, rightAddr indice. Le bloc des éléments n'est lu
+    // qu'ici, après le calcul de l'indice, qui a pu agrandir le tableau par un appel
+    private void accesTableau(Program p, int leftAddr, int rightAddr) {
+        int addrElems = lire(p, leftAddr, DECALAGE_ELEMENTS);
+        int addrElem = getNewRegister();
+        p.addInstruction(new UAL(UAL.Op.ADD, addrElem, addrElems, rightAddr));
+        p.addInstruction(new Mem(Mem.Op.LD, getNewRegister(), addrElem));
+    }
 
-        // On y stock l'adresse dans la variable dans la pile
-        p.addInstruction(new UAL(UAL.Op.ADD, addrPntr, addrPntr, addrInd));
+    // Lit la case ptr + decalage dans un nouveau registre
+    private int lire(Program p, int ptr, int decalage) {
+        int addr = getNewRegister();
+        p.addInstruction(new UALi(UALi.Op.ADD, addr, ptr, decalage));
+        int res = getNewRegister();
+        p.addInstruction(new Mem(Mem.Op.LD, res, addr));
+        return res;
+    }
 
-        // On la renvoie dans un nouveau registre
-        p.addInstruction(new Mem(Mem.Op.LD, getNewRegister(), addrPntr));
+    // Écrit le registre val dans la case ptr + decalage
+    private void ecrire(Program p, int val, int ptr, int decalage) {
+        int addr = getNewRegister();
+        p.addInstruction(new UALi(UALi.Op.ADD, addr, ptr, decalage));
+        p.addInstruction(new Mem(Mem.Op.ST, val, addr));
+    }
 
-        return p;
+    private void empilerOp(int x) {
+        if (nbOps == opsNoeuds.length) {
+            opsNoeuds = Arrays.copyOf(opsNoeuds, nbOps * 2);
+            opsEtapes = Arrays.copyOf(opsEtapes, nbOps * 2);
+        }
+        opsNoeuds[nbOps] = x;
+        opsEtapes[nbOps++] = 0;
     }
 
-    @Override
-    public Program visitBrackets(grammarTCLParser.BracketsContext ctx) {
-        return visit(ctx.getChild(1));
+    private void empilerAdresse(int addr) {
+        if (nbAdresses == adresses.length) {
+            adresses = Arrays.copyOf(adresses, nbAdresses * 2);
+        }
+        adresses[nbAdresses++] = addr;
     }
 
-    @Override
-    public Program visitCall(grammarTCLParser.CallContext ctx) {
-        String fctName = ctx.getChild(0).getText();
+    /**
+     * Génère une instruction et les blocs, if, while et for qu'elle contient avec une pile de cadres.
+     * Chaque structure ajoute son code directement à la suite de celui de la structure englobante ;
+     * les conditions sautent directement au sinon ou à la fin de la structure (voir sauter).
+     * Les instructions simples sont générées par visit.
+     * @param n nœud de l'instruction
+     * @return le code de l'instruction
+     */
+    private Program instructions(int n) {
         Program p = new Program();
-
-        int nbParam = 0;
-        for(int i=2; i<ctx.getChildCount()-1; i+=2) {
-            // On stock la var de chaque param dans le reg alloué lors de la decl
-            Program pParam = visit(ctx.getChild(i));
-            int addrParam = this.nbRegister;
-            p.addInstructions(pParam);
-            p.addInstruction(new UALi(UALi.Op.ADD, varToReg.get(paramToVar.get(fctName+"-"+nbParam)), addrParam, 0));
-            nbParam++;
+        int base = cadres.size();
+        entrer(n, p);
+        while (cadres.size() > base) {
+            Cadre c = cadres.get(cadres.size() - 1);
+            int x = c.noeud;
+            Program sortie = c.sortie;
+            int etape = c.etape++;
+            switch (ast.sorte(x)) {
+                case Ast.BLOCK:
+                    if (etape < ast.taille(ast.a(x))) {
+                        entrer(ast.element(ast.a(x), etape), sortie);
+                        continue;
+                    }
+                    break;
+                case Ast.IF:
+                    if (etape == 0) {
+                        c.labelElse = getNewLabel();
+                        c.labelFin = getNewLabel();
+
+                        // Si condition pas validee on dodge les instructions du if
+                        sauter(sortie, ast.a(x), false, c.labelElse);
+
+                        // Corp du if
+                        entrer(ast.b(x), sortie);
+                        continue;
+                    }
+                    if (etape == 1) {
+                        sortie.addInstruction(new JumpCall(JumpCall.Op.JMP, c.labelFin));
+                        sortie.addInstruction(getLabelInstruction(c.labelElse));
+                        if(ast.c(x) != -1) {
+                            entrer(ast.c(x), sortie);
+                            continue;
+                        }
+                    }
+                    // Instr utile juste pour le label
+                    sortie.addInstruction(getLabelInstruction(c.labelFin));
+                    break;
+                case Ast.WHILE:
+                    if (etape == 0) {
+                        debutBoucle(c, ast.a(x));
+                        entrer(ast.b(x), sortie);
+                        continue;
+                    }
+                    finBoucle(c);
+                    break;
+                default:
+                    // For : init, condition, incrément puis corps, mais l'incrément est placé après le corps
+                    if (etape == 0) {
+                        entrer(ast.a(x), sortie);
+                        continue;
+                    }
+                    if (etape == 1) {
+                        debutBoucle(c, ast.b(x));
+                        c.incr = new Program();
+                        entrer(ast.c(x), c.incr);
+                        continue;
+                    }
+                    if (etape == 2) {
+                        entrer(ast.d(x), sortie);
+                        continue;
+                    }
+                    finBoucle(c);
+            }
+            cadres.remove(cadres.size() - 1);
         }
-
-        p.addInstruction(new JumpCall(JumpCall.Op.CALL, fctName));
-
-        // On ajoute la valeur de retour dans un nouveau reg
-        p.addInstruction(new UALi(UALi.Op.ADD, getNewRegister(), varToReg.get(fctName+"-ret"), 0));
-
         return p;
     }
 
-    @Override
-    public Program visitBoolean(grammarTCLParser.BooleanContext ctx) {
-        String boolVal = ctx.getChild(0).getText();
-        int value = 0;
-        if(boolVal.equals("true")) {
-            value = 1;
-        }
-        Program p = new Program();
-        p.addInstruction(new UALi(UALi.Op.ADD, getNewRegister(), 0, value));
-        return p;
+    // Début d'un while ou d'un for : label où revient la boucle, puis sortie si la condition est fausse
+    private void debutBoucle(Cadre c, int cond) {
+        c.labelDebut = getNewLabel();
+        c.labelFin = getNewLabel();
+        c.sortie.addInstruction(getLabelInstruction(c.labelDebut));
+        sauter(c.sortie, cond, false, c.labelFin);
     }
 
-    @Override
-    public Program visitAnd(grammarTCLParser.AndContext ctx) {
-        Program pLeft = visit(ctx.getChild(0));
-        int leftAddr = this.nbRegister;
-        Program pRight = visit(ctx.getChild(2));
-        int rightAddr = this.nbRegister;
-        Program p = new Program();
-        p.addInstructions(pLeft);
-        p.addInstructions(pRight);
-        p.addInstruction(new UAL(UAL.Op.AND, getNewRegister(), leftAddr, rightAddr));
-        return p;
+    // Fin d'un while ou d'un for : incrément et retour au test
+    private void finBoucle(Cadre c) {
+        Program sortie = c.sortie;
+        if (c.incr != null) {
+            sortie.addInstructions(c.incr);
+        }
+        sortie.addInstruction(new JumpCall(JumpCall.Op.JMP, c.labelDebut));
+        sortie.addInstruction(getLabelInstruction(c.labelFin));
     }
 
-    @Override
-    public Program visitVariable(grammarTCLParser.VariableContext ctx) {
-        String varName = ctx.getChild(0).getText();
-        Program p = new Program();
-        p.addInstruction(new UALi(UALi.Op.ADD, getNewRegister(), varToReg.get(varName), 0));
-        return p;
+    /**
+     * Génère une condition en contexte de branchement : saute à label si elle vaut si, continue sinon,
+     * sans calculer de booléen. Une comparaison devient un seul saut conditionnel, && et || n'évaluent
+     * leur droite que si la gauche ne suffit pas et ! inverse le saut. Parcours avec une pile explicite,
+     * les conditions pouvant être imbriquées à n'importe quelle profondeur.
+     * @param p code où ajouter les instructions
+     * @param n nœud de la condition
+     * @param si valeur de la condition qui fait sauter
+     * @param label label visé (jamais la cible d'un JMP, voir printArray)
+     */
+    private void sauter(Program p, int n, boolean si, String label) {
+        int base = nbSauts;
+        empilerSaut(n, si, label);
+        while (nbSauts > base) {
+            nbSauts--;
+            int x = sautsNoeuds[nbSauts];
+            boolean v = sautsSi[nbSauts];
+            String l = sautsLabels[nbSauts];
+            if (x < 0) {
+                p.addInstruction(getLabelInstruction(l));
+                continue;
+            }
+            switch (ast.sorte(x)) {
+                case Ast.NEGATION:
+                    empilerSaut(ast.a(x), !v, l);
+                    break;
+                case Ast.AND:
+                case Ast.OR:
+                    // Empilés à l'envers : gauche, droite, puis label éventuel
+                    if ((ast.sorte(x) == Ast.AND) != v) {
+                        // a && b faux, a || b vrai : chaque côté suffit à sauter
+                        empilerSaut(ast.b(x), v, l);
+                        empilerSaut(ast.a(x), v, l);
+                    } else {
+                        // a && b vrai, a || b faux : si a ne le permet pas, on passe la droite
+                        String suite = getNewLabel();
+                        empilerSaut(-1, v, suite);
+                        empilerSaut(ast.b(x), v, l);
+                        empilerSaut(ast.a(x), !v, suite);
+                    }
+                    break;
+                case Ast.COMPARISON:
+                case Ast.EQUALITY: {
+                    Program pGauche = visit(ast.a(x));
+                    int gauche = this.nbRegister;
+                    p.addInstructions(pGauche);
+                    Program pDroite = visit(ast.b(x));
+                    int droite = this.nbRegister;
+                    p.addInstructions(pDroite);
+                    p.addInstruction(new CondJump(sautComparaison(ast.c(x), v), gauche, droite, l));
+                    break;
+                }
+                default: {
+                    // Booléen calculé : vrai s'il vaut au moins 1
+                    Program pVal = visit(x);
+                    int addr = this.nbRegister;
+                    p.addInstructions(pVal);
+                    p.addInstruction(new CondJump(v ? CondJump.Op.JSUP : CondJump.Op.JIEQ, addr, 0, l));
+                }
+            }
+        }
     }
 
-    @Override
-    public Program visitMultiplication(grammarTCLParser.MultiplicationContext ctx) {
-        Program pLeft = visit(ctx.getChild(0));
-        int leftAddr = this.nbRegister;
-        Program pRight = visit(ctx.getChild(2));
-        int rightAddr = this.nbRegister;
+    // Saut conditionnel pris quand la comparaison ope vaut si
+    private static CondJump.Op sautComparaison(int ope, boolean si) {
+        switch (ope) {
+            case Ast.OP_SUP: return si ? CondJump.Op.JSUP : CondJump.Op.JIEQ;
+            case Ast.OP_INF: return si ? CondJump.Op.JINF : CondJump.Op.JSEQ;
+            case Ast.OP_SUPEQ: return si ? CondJump.Op.JSEQ : CondJump.Op.JINF;
+            case Ast.OP_INFEQ: return si ? CondJump.Op.JIEQ : CondJump.Op.JSUP;
+            case Ast.OP_EQUALS: return si ? CondJump.Op.JEQU : CondJump.Op.JNEQ;
+            default: return si ? CondJump.Op.JNEQ : CondJump.Op.JEQU;
+        }
+    }
 
-        String ope = ctx.getChild(1).getText();
+    private void empilerSaut(int x, boolean si, String label) {
+        if (nbSauts == sautsNoeuds.length) {
+            sautsNoeuds = Arrays.copyOf(sautsNoeuds, nbSauts * 2);
+            sautsSi = Arrays.copyOf(sautsSi, nbSauts * 2);
+            sautsLabels = Arrays.copyOf(sautsLabels, nbSauts * 2);
+        }
+        sautsNoeuds[nbSauts] = x;
+        sautsSi[nbSauts] = si;
+        sautsLabels[nbSauts++] = label;
+    }
 
-        Program p = new Program();
-        p.addInstructions(pLeft);
-        p.addInstructions(pRight);
+    private static boolean estStructure(int sorte) {
+        return sorte >= Ast.BLOCK && sorte <= Ast.FOR;
+    }
 
-        if(ope.equals("*")) {
-            p.addInstruction(new UAL(UAL.Op.MUL, getNewRegister(), leftAddr, rightAddr));
-        } else if(ope.equals("/")) {
-            p.addInstruction(new UAL(UAL.Op.DIV, getNewRegister(), leftAddr, rightAddr));
+    // Génère x à la suite de sortie : directement pour une instruction simple, avec un cadre sinon
+    private void entrer(int x, Program sortie) {
+        if (estStructure(ast.sorte(x))) {
+            Cadre c = new Cadre();
+            c.noeud = x;
+            c.sortie = sortie;
+            cadres.add(c);
         } else {
-            p.addInstruction(new UAL(UAL.Op.MOD, getNewRegister(), leftAddr, rightAddr));
+            sortie.addInstructions(visit(x));
         }
+    }
 
-        return p;
+    public Instruction getLabelInstruction(String labelName) {
+        // Renvoie une instruction vide qui permet de sauter à un endroit spécifique
+        return new UAL(labelName, UAL.Op.XOR, 0, 0, 0);
     }
 
-    @Override
-    public Program visitEquality(grammarTCLParser.EqualityContext ctx) {
-        Program pLeft = visit(ctx.getChild(0));
-        int leftAddr = this.nbRegister;
-        Program pRight = visit(ctx.getChild(2));
-        int rightAddr = this.nbRegister;
-        Program p = new Program();
-        p.addInstructions(pLeft);
-        p.addInstructions(pRight);
+    public Program visitNegation(int n) {
+        return operateurs(n);
+    }
 
-        String trueLabel = getNewLabel();
-        String falseLabel = getNewLabel();
-        String endLabel = getNewLabel();
+    public Program visitComparison(int n) {
+        return operateurs(n);
+    }
 
-        String ope = ctx.getChild(1).getText();
+    public Program visitOr(int n) {
+        return operateurs(n);
+    }
 
-        if(ope.equals("==")) {
-            p.addInstruction(new CondJump(CondJump.Op.JEQU, leftAddr, rightAddr, trueLabel));
-            p.addInstruction(new JumpCall(JumpCall.Op.JMP, falseLabel));
-        } else {
-            // Cas ope == '!='
-            p.addInstruction(new CondJump(CondJump.Op.JNEQ, leftAddr, rightAddr, trueLabel));
-            p.addInstruction(new JumpCall(JumpCall.Op.JMP, falseLabel));
-        }
+    public Program visitOpposite(int n) {
+        return operateurs(n);
+    }
 
-        // Bloc qui renvoie 1
-        p.addInstruction(new UALi(trueLabel, UALi.Op.ADD, getNewRegister(), 0, 1));
-        p.addInstruction(new JumpCall(JumpCall.Op.JMP, endLabel));
+    public Program visitInteger(int n) {
+        // Littéral hors des int : même erreur qu'à la lecture du texte
+        int value = ast.b(n) >= 0 ? Integer.parseInt(ast.nom(ast.b(n))) : ast.a(n);
+        Program p = new Program();
+        p.addInstruction(new UALi(UALi.Op.ADD, getNewRegister(), 0, value));
+        return p;
+    }
 
-        // Bloc qui renvoie 0
-        p.addInstruction(new UAL(falseLabel, UAL.Op.XOR, getNewRegister(), 0, 0));
-        p.addInstruction(new JumpCall(JumpCall.Op.JMP, endLabel));
+    public Program visitTab_access(int n) {
+        return operateurs(n);
+    }
 
-        p.addInstruction(getLabelInstruction(endLabel));
-        return p;
+    public Program visitCall(int n) {
+        return operateurs(n);
     }
 
-    @Override
-    public Program visitTab_initialization(grammarTCLParser.Tab_initializationContext ctx) {
+    public Program visitBoolean(int n) {
+        int value = ast.a(n);
         Program p = new Program();
+        p.addInstruction(new UALi(UALi.Op.ADD, getNewRegister(), 0, value));
+        return p;
+    }
 
-        int nbElt = (ctx.getChildCount()-1)/2;
-
-        int addrTaille = getNewRegister();
-        int pntrTab = stackPointer;
+    public Program visitAnd(int n) {
+        return operateurs(n);
+    }
 
-        p.addInstruction(new UALi(UALi.Op.ADD, addrTaille, 0, nbElt));
+    public Program visitVariable(int n) {
+        Program p = new Program();
+        p.addInstruction(new UALi(UALi.Op.ADD, getNewRegister(), registre(ast.a(n)), 0));
+        return p;
+    }
 
-        int addrNewSP = getNewRegister();
-        p.addInstruction(new UALi(UALi.Op.ADD, addrNewSP, 0, stackPointer++));
-        p.addInstruction(new Mem(Mem.Op.ST, addrTaille, addrNewSP));
+    public Program visitMultiplication(int n) {
+        return operateurs(n);
+    }
 
-        // On ajoute les valeurs du tableau par chunk
-        int nbEltLeft = nbElt;
-        int nextElt = 1;
-        while(nbEltLeft > 0) {
-            for(int i=0; i<10; i++) {
-                if(nbEltLeft>0) {
-                    Program pElt = visit(ctx.getChild(nextElt));
-                    int addrElt = this.nbRegister;
-                    p.addInstructions(pElt);
+    public Program visitEquality(int n) {
+        return operateurs(n);
+    }
 
-                    // On met la valeur dans la pile
-                    int addrNewSP2 = getNewRegister();
-                    p.addInstruction(new UALi(UALi.Op.ADD, addrNewSP2, 0, stackPointer++));
-                    p.addInstruction(new Mem(Mem.Op.ST, addrElt, addrNewSP2));
+    public Program visitTab_initialization(int n) {
+        return operateurs(n);
+    }
 
-                    nbEltLeft--;
-                    // Par deux car y'a la virgule
-                    nextElt += 2;
-                }
-            }
+    // Plus petite classe qui contient nbElt éléments, connue à la compilation
+    private static int classeLitteral(int nbElt) {
+        int classe = CLASSE_MIN;
+        while ((1 << classe) < nbElt) classe++;
+        return classe;
+    }
 
-            // On ajoute au bout du chunk l'adresse du prochain
-            int addrPntrVersNextChunk = getNewRegister();
-            p.addInstruction(new UALi(UALi.Op.ADD, addrPntrVersNextChunk, 0, stackPointer++));
+    // Début d'un littéral de tableau, avant les éléments : allocation du bloc et de la poignée, dont
+    // les adresses sont empilées (poignée puis bloc)
+    private void debutTableau(Program p, int nbElt) {
+        int addrClasse = constante(p, classeLitteral(nbElt));
+        int addrElems = allouer(p, addrClasse);
+        empilerAdresse(poignee(p, addrElems, constante(p, nbElt), addrClasse));
+        empilerAdresse(addrElems);
+    }
 
-            int addrTeteNextChunk = getNewRegister();
-            if(nbEltLeft > 0) {
-                p.addInstruction(new UALi(UALi.Op.ADD, addrTeteNextChunk, addrPntrVersNextChunk, 1));
-            } else {
-                // Pour signifier que c'est le dernier chunk
-                p.addInstruction(new UALi(UALi.Op.ADD, addrTeteNextChunk, 0, -1));
-            }
+    // Tableau vide (plus petite classe, taille nulle), dont la poignée est dans le dernier registre
+    private Program tableauVide() {
+        Program p = new Program();
+        int addrClasse = constante(p, CLASSE_MIN);
+        int addrElems = allouer(p, addrClasse);
+        for (int i = 0; i < (1 << CLASSE_MIN); i++) {
+            ecrire(p, 0, addrElems, i);
+        }
+        int addrTab = poignee(p, addrElems, 0, addrClasse);
+        p.addInstruction(new UALi(UALi.Op.ADD, getNewRegister(), addrTab, 0));
+        return p;
+    }
 
-            p.addInstruction(new Mem(Mem.Op.ST, addrTeteNextChunk, addrPntrVersNextChunk));
+    // Valeur connue à la compilation dans un nouveau registre
+    private int constante(Program p, int valeur) {
+        int addr = getNewRegister();
+        p.addInstruction(new UALi(UALi.Op.ADD, addr, 0, valeur));
+        return addr;
+    }
 
+    /**
+     * Alloue à l'exécution un bloc de la classe addrClasse : le premier de la liste des blocs libres de
+     * cette classe, sinon un nouveau bloc au sommet du tas. Le coût ne dépend pas de l'état du tas.
+     * Le code est produit sur place plutôt qu'en sous-programme : un CALL sauvegarde puis restaure les
+     * registres vivants, ce qui écraserait l'adresse renvoyée.
+     * @param p code où ajouter les instructions
+     * @param addrClasse registre de la classe du bloc
+     * @return registre de l'adresse du premier élément du bloc
+     */
+    private int allouer(Program p, int addrClasse) {
+        stackPointer = DEBUT_TAS;
+        String labelLibre = getNewLabel();
+
+        int addrTete = getNewRegister();
+        p.addInstruction(new UALi(UALi.Op.ADD, addrTete, addrClasse, ADRESSE_LISTES));
+        int addrBloc = getNewRegister();
+        p.addInstruction(new Mem(Mem.Op.LD, addrBloc, addrTete));
+        p.addInstruction(new CondJump(CondJump.Op.JNEQ, addrBloc, 0, labelLibre));
+
+        // Liste vide : nouveau bloc au sommet du tas, vu comme un bloc libre sans suivant
+        int addrTas = getNewRegister();
+        p.addInstruction(new UALi(UALi.Op.ADD, addrTas, 0, ADRESSE_TAS));
+        int addrSommet = getNewRegister();
+        p.addInstruction(new Mem(Mem.Op.LD, addrSommet, addrTas));
+        p.addInstruction(new UALi(UALi.Op.ADD, addrBloc, addrSommet, 0));
+        int addrCapacite = capacite(p, addrClasse);
+        int addrNewSommet = getNewRegister();
+        p.addInstruction(new UAL(UAL.Op.ADD, addrNewSommet, addrBloc, addrCapacite));
+        p.addInstruction(new Mem(Mem.Op.ST, addrNewSommet, addrTas));
+        p.addInstruction(new Mem(Mem.Op.ST, 0, addrBloc));
+
+        // Bloc retiré de la liste : son suivant (rangé dans e0) devient la tête
+        p.addInstruction(getLabelInstruction(labelLibre));
+        int addrSuivant = getNewRegister();
+        p.addInstruction(new Mem(Mem.Op.LD, addrSuivant, addrBloc));
+        p.addInstruction(new Mem(Mem.Op.ST, addrSuivant, addrTete));
+        return addrBloc;
+    }
 
-        }
+    /**
+     * Alloue au sommet du tas la poignée d'un tableau et la remplit. Une poignée n'est jamais libérée :
+     * des alias peuvent la garder aussi longtemps que le programme tourne.
+     * @param p code où ajouter les instructions
+     * @param addrElems registre de l'adresse du bloc des éléments
+     * @param addrTaille registre de la taille
+     * @param addrClasse registre de la classe du bloc
+     * @return registre de l'adresse de la poignée
+     */
+    private int poignee(Program p, int addrElems, int addrTaille, int addrClasse) {
+        stackPointer = DEBUT_TAS;
+        int addrTas = constante(p, ADRESSE_TAS);
+        int addrTab = getNewRegister();
+        p.addInstruction(new Mem(Mem.Op.LD, addrTab, addrTas));
+        int addrNewSommet = getNewRegister();
+        p.addInstruction(new UALi(UALi.Op.ADD, addrNewSommet, addrTab, TAILLE_POIGNEE));
+        p.addInstruction(new Mem(Mem.Op.ST, addrNewSommet, addrTas));
+        ecrire(p, addrElems, addrTab, DECALAGE_ELEMENTS);
+        ecrire(p, addrTaille, addrTab, DECALAGE_TAILLE);
+        ecrire(p, addrClasse, addrTab, DECALAGE_CLASSE);
+        return addrTab;
+    }
 
-        // On renvoie l'adresse du premier elt du tableau
-        p.addInstruction(new UALi(UALi.Op.ADD, getNewRegister(), 0, pntrTab));
+    // Rend le bloc addrBloc de la classe addrClasse : il devient la tête de la liste de sa classe
+    private void liberer(Program p, int addrBloc, int addrClasse) {
+        int addrTete = getNewRegister();
+        p.addInstruction(new UALi(UALi.Op.ADD, addrTete, addrClasse, ADRESSE_LISTES));
+        int addrAncienne = getNewRegister();
+        p.addInstruction(new Mem(Mem.Op.LD, addrAncienne, addrTete));
+        p.addInstruction(new Mem(Mem.Op.ST, addrAncienne, addrBloc));
+        p.addInstruction(new Mem(Mem.Op.ST, addrBloc, addrTete));
+    }
 
-        return p;
+    // Capacité 2^classe dans un nouveau registre
+    private int capacite(Program p, int addrClasse) {
+        int addrUn = getNewRegister();
+        p.addInstruction(new UALi(UALi.Op.ADD, addrUn, 0, 1));
+        int addrCapacite = getNewRegister();
+        p.addInstruction(new UAL(UAL.Op.SL, addrCapacite, addrUn, addrClasse));
+        return addrCapacite;
     }
 
-    @Override
-    public Program visitAddition(grammarTCLParser.AdditionContext ctx) {
-        Program pLeft = visit(ctx.getChild(0));
-        int leftAddr = this.nbRegister;
-        Program pRight = visit(ctx.getChild(2));
-        int rightAddr = this.nbRegister;
-        Program p = new Program();
-        p.addInstructions(pLeft);
-        p.addInstructions(pRight);
-        String ope = ctx.getChild(1).getText();
-        if(ope.equals("+")) {
-            p.addInstruction(new UAL(UAL.Op.ADD, getNewRegister(), leftAddr, rightAddr));
-        } else {
-            // ope == "-"
-            p.addInstruction(new UAL(UAL.Op.SUB, getNewRegister(), leftAddr, rightAddr));
-        }
-        return p;
+    public Program visitAddition(int n) {
+        return operateurs(n);
     }
 
-    @Override
-    public Program visitBase_type(grammarTCLParser.Base_typeContext ctx) {
+    public Program visitBase_type(int n) {
         // TODO Auto-generated method stub
         return new Program();
     }
 
-    @Override
-    public Program visitTab_type(grammarTCLParser.Tab_typeContext ctx) {
+    public Program visitTab_type(int n) {
         // TODO Auto-generated method stub
         return new Program();
     }
 
-    @Override
-    public Program visitDeclaration(grammarTCLParser.DeclarationContext ctx) {
+    public Program visitDeclaration(int n) {
         Program p = new Program();
         int varReg = getNewRegister();
-        varToReg.put(ctx.getChild(1).getText(), varReg);
+        setRegistre(ast.b(n), varReg);
 
-        if(ctx.getChildCount() > 3) {
+        if(ast.c(n) != -1) {
             // Si on assigne une valeur à la variable
-            Program pCtx = visit(ctx.getChild(3));
+            Program pCtx = visit(ast.c(n));
             int resAddr = this.nbRegister;
             p.addInstructions(pCtx);
             p.addInstruction(new UALi(UALi.Op.ADD, varReg, resAddr, 0));
+        } else if (estTableau(n)) {
+            // Tableau sans valeur : vide, agrandi par les affectations
+            Program pVide = tableauVide();
+            int resAddr = this.nbRegister;
+            p.addInstructions(pVide);
+            p.addInstruction(new UALi(UALi.Op.ADD, varReg, resAddr, 0));
         }
 
         return p;
     }
 
-    @Override
-    public Program visitPrint(grammarTCLParser.PrintContext ctx) {
+    public Program visitPrint(int n) {
         Program p = new Program();
-        String varName = ctx.getChild(2).getText();
-        int regVar = varToReg.get(varName);
+        int regVar = registre(ast.a(n));
 
-        if(types.get(varName) instanceof ArrayType) {
+        if(estTableau(n)) {
             // La variable a affiché est un tableau
             p.addInstructions(printArray(regVar));
         } else {
@@ -429,15 +889,12 @@ public class CodeGenerator  extends AbstractParseTreeVisitor<Program> implements
         return p;
     }
 
-    // Fonction récursive pour afficher les tableaux
+    // Affiche un tableau : [e0, e1, ...]
     private Program printArray(int addrArray) {
         Program p = new Program();
 
-        // Lire la taille du chunk
-        int addrSize = getNewRegister();
-        p.addInstruction(new Mem(Mem.Op.LD, addrSize, addrArray));
-        p.addInstruction(new UALi(UALi.Op.ADD, addrArray, addrArray, 1));
-
+        int addrSize = lire(p, addrArray, DECALAGE_TAILLE);
+        int addrElems = lire(p, addrArray, DECALAGE_ELEMENTS);
         int addrIndex = getNewRegister();
         p.addInstruction(new UALi(UALi.Op.ADD, addrIndex, 0, 0));
 
@@ -449,57 +906,29 @@ public class CodeGenerator  extends AbstractParseTreeVisitor<Program> implements
         p.addInstruction(new UALi(UALi.Op.ADD, regBracket, 0, (int)'['));
         p.addInstruction(new Asm.IO(Asm.IO.Op.OUT, regBracket));
 
-        p.addInstruction(getLabelInstruction(labelDebLoop));
-
-        // Fin si index >= taille
-        p.addInstruction(new CondJump(CondJump.Op.JSUP, addrIndex, addrSize, labelEndLoop));
+        // Tableau vide
+        p.addInstruction(new CondJump(CondJump.Op.JIEQ, addrSize, 0, labelEndLoop));
 
-        // Calcul adresse de l'élément
+        // Les sauts conditionnels visent un autre label que le JMP de la boucle : l'allocateur compte
+        // la cible d'un JMP parmi les variables vivantes et renommerait celle d'un saut conditionnel
+        p.addInstruction(getLabelInstruction(labelDebLoop));
         int addrElem = getNewRegister();
-        p.addInstruction(new UAL(UAL.Op.ADD, addrElem, addrArray, addrIndex));
-
-        // Lire la valeur
+        p.addInstruction(new UAL(UAL.Op.ADD, addrElem, addrElems, addrIndex));
         int addrValue = getNewRegister();
         p.addInstruction(new Mem(Mem.Op.LD, addrValue, addrElem));
         p.addInstruction(new Asm.IO(Asm.IO.Op.PRINT, addrValue));
 
-        // Virgule sauf dernier élément
-        int addrNextElt = getNewRegister();
-        p.addInstruction(new UALi(UALi.Op.ADD, addrNextElt, addrIndex, 1));
-        p.addInstruction(new CondJump(CondJump.Op.JEQU, addrNextElt, addrSize, labelEndLoop));
+        // Fin après le dernier élément
+        p.addInstruction(new UALi(UALi.Op.ADD, addrIndex, addrIndex, 1));
+        p.addInstruction(new CondJump(CondJump.Op.JSEQ, addrIndex, addrSize, labelEndLoop));
 
+        // Virgule entre deux éléments
         int regComma = getNewRegister();
         p.addInstruction(new UALi(UALi.Op.ADD, regComma, 0, (int)','));
         p.addInstruction(new Asm.IO(Asm.IO.Op.OUT, regComma));
         int regSpace = getNewRegister();
         p.addInstruction(new UALi(UALi.Op.ADD, regSpace, 0, (int)' '));
         p.addInstruction(new Asm.IO(Asm.IO.Op.OUT, regSpace));
-
-        // incrémenter index et boucle
-        p.addInstruction(new UALi(UALi.Op.ADD, addrIndex, addrIndex, 1));
-
-        int addrVal10 = getNewRegister();
-        p.addInstruction(new UALi(UALi.Op.ADD, addrVal10, 0, 10));
-        p.addInstruction(new CondJump(CondJump.Op.JNEQ, addrIndex, addrVal10, labelDebLoop));
-
-        int regSep = getNewRegister();
-        p.addInstruction(new UALi(UALi.Op.ADD, regSep, 0, (int)'|'));
-        p.addInstruction(new Asm.IO(Asm.IO.Op.OUT, regSep));
-
-        // Changement de chunk
-        int addrLastElem = getNewRegister();
-        // Charger l'adresse de la dernière case du chunk actuel
-        p.addInstruction(new UALi(UALi.Op.ADD, addrLastElem, addrArray, addrSize)); // addrArray + taille du chunk
-        int addrNextChunk = getNewRegister();
-        // Charger l'adresse du prochain chunk
-        p.addInstruction(new Mem(Mem.Op.LD, addrNextChunk, addrLastElem));
-        // Remplacer addrArray par le nouveau chunk
-        p.addInstruction(new UAL(UAL.Op.ADD, addrArray, addrNextChunk, 0));
-        // Réinitialiser index
-        p.addInstruction(new UAL(UAL.Op.XOR, addrIndex, addrIndex, addrIndex));
-        // Décrémenter taille restante du chunk
-        p.addInstruction(new UALi(UALi.Op.SUB, addrSize, addrSize, 10));
-        // Reboucler
         p.addInstruction(new JumpCall(JumpCall.Op.JMP, labelDebLoop));
 
         p.addInstruction(getLabelInstruction(labelEndLoop));
@@ -511,265 +940,169 @@ public class CodeGenerator  extends AbstractParseTreeVisitor<Program> implements
         return p;
     }
 
-    @Override
-    public Program visitAssignment(grammarTCLParser.AssignmentContext ctx) {
+    public Program visitAssignment(int n) {
         Program p = new Program();
 
-        int varReg = varToReg.get(ctx.getChild(0).getText());
+        int varReg = registre(ast.a(n));
+        int indices = ast.b(n);
 
-        if(ctx.getChildCount() <= 4) {
+        if(ast.taille(indices) == 0) {
             // Variable classique (pas un tableau)
-            Program pCtx = visit(ctx.getChild(2));
+            Program pCtx = visit(ast.c(n));
             int addr = this.nbRegister;
             p.addInstructions(pCtx);
             p.addInstruction(new UALi(UALi.Op.ADD, varReg, addr, 0));
         } else {
-            // Variable tableau
-            // Cte = à 10
-            int addrVal10 = getNewRegister();
-            p.addInstruction(new UALi(UALi.Op.ADD, addrVal10, 0, 10));
-
-            // On stock l'addr pour pouvoir l'utiliser et la décaler plus tard
-            int addrPntr = getNewRegister();
-            p.addInstruction(new UAL(UAL.Op.ADD, addrPntr, varReg, 0));
-
-            // Pour chaque dimension du tableau on récupère l'adresse du ss-tabl
-            for(int i=2; i<ctx.getChildCount()-4 ; i+=3) {
-
-                Program pInd = visit(ctx.getChild(i));
-                int addrInd = this.nbRegister;
+            // Variable tableau : un niveau par indice, chaque tableau agrandi si l'indice dépasse sa taille.
+            // Seules les poignées restent dans des registres pendant le calcul des indices et de la valeur :
+            // un appel peut agrandir le tableau, donc remplacer son bloc
+            int addrTab = varReg;
+            int addrInd = 0;
+
+            for(int i=0; i<ast.taille(indices); i++) {
+                Program pInd = visit(ast.element(indices, i));
+                addrInd = this.nbRegister;
                 p.addInstructions(pInd);
 
-                int addrTaille = getNewRegister();
-                p.addInstruction(new Mem(Mem.Op.LD, addrTaille, addrPntr));
-
-                // On aggrandit la taille si besoin
-                String labelSizeOk = getNewLabel();
-                p.addInstruction(new CondJump(CondJump.Op.JINF, addrInd, addrTaille, labelSizeOk));
-
-                int addrNewTaille = getNewRegister();
-                p.addInstruction(new UALi(UALi.Op.ADD, addrNewTaille, addrInd, 1));
-
-                // chunksExistants = (size + 9) / 10
-                int addrChunksExist = getNewRegister();
-                p.addInstruction(new UALi(UALi.Op.ADD, addrChunksExist, addrTaille, 9));
-                p.addInstruction(new UAL(UAL.Op.DIV, addrChunksExist, addrChunksExist, addrVal10));
-
-                // chunksVoulus = (newSize + 9) / 10
-                int addrChunksVoulus = getNewRegister();
-                p.addInstruction(new UALi(UALi.Op.ADD, addrChunksVoulus, addrNewTaille, 9));
-                p.addInstruction(new UAL(UAL.Op.DIV, addrChunksVoulus, addrChunksVoulus, addrVal10));
-
-                // chunksACreer = chunksVoulus - chunksExistants
-                int addrChunksACreer = getNewRegister();
-                p.addInstruction(new UAL(UAL.Op.SUB, addrChunksACreer, addrChunksVoulus, addrChunksExist));
-
-                int addrCurrChunk = getNewRegister();
-                p.addInstruction(new UAL(UAL.Op.ADD, addrCurrChunk, addrPntr, 0));
-                p.addInstruction(new UALi(UALi.Op.ADD, addrCurrChunk, addrCurrChunk, 1));
-
-                // Init bouble for
-                int addrILoop = getNewRegister();
-                p.addInstruction(new UALi(UALi.Op.ADD, addrILoop, 0, 0));
-                String labelDebForLoop = getNewLabel();
-                String labelCorpForLoop = getNewLabel();
-                String labelFinForLoop = getNewLabel();
-                p.addInstruction(getLabelInstruction(labelDebForLoop));
-
-                // Vérif ind
-                p.addInstruction(new CondJump(CondJump.Op.JINF, addrILoop, addrChunksExist, labelCorpForLoop));
-                p.addInstruction(new JumpCall(JumpCall.Op.JMP, labelFinForLoop));
-
-                // Corp boucle
-                p.addInstruction(getLabelInstruction(labelCorpForLoop));
-                int tmp = getNewRegister();
-                p.addInstruction(new UALi(UALi.Op.ADD, tmp, addrCurrChunk, 10));
-                p.addInstruction(new Mem(Mem.Op.LD, addrCurrChunk, tmp));
-
-                // Fin de boucle
-                p.addInstruction(new UALi(UALi.Op.ADD, addrILoop, addrILoop, 1));
-                p.addInstruction(new JumpCall(JumpCall.Op.JMP, labelDebForLoop));
-                p.addInstruction(getLabelInstruction(labelFinForLoop));
-
-                String debLoopAlloc = getNewLabel();
-                String finLoopAlloc = getNewLabel();
-
-                p.addInstruction(getLabelInstruction(debLoopAlloc));
-                p.addInstruction(new CondJump(CondJump.Op.JEQU, addrChunksACreer, 0, finLoopAlloc));
-
-                // Création d'un chunk
-                int addrNewChunk = getNewRegister();
-                p.addInstruction(new UALi(UALi.Op.ADD, addrNewChunk, 0, stackPointer));
-
-                // Init des 10 cases à 0
-                for(int j=0; j<10; j++) {
-                    p.addInstruction(new Mem(Mem.Op.ST, 0, stackPointer++));
+                int addrElems = agrandir(p, addrTab, addrInd);
+                if (i + 1 < ast.taille(indices)) {
+                    addrTab = sousTableau(p, addrElems, addrInd);
                 }
-
-                // Ptr vers le chunk suivant = 0
-                p.addInstruction(new Mem(Mem.Op.ST, 0, stackPointer++));
-
-                // Chaînage du nouveau chunk a l'ancien
-                int addrPtrNext = getNewRegister();
-                p.addInstruction(new UALi(UALi.Op.ADD, addrPtrNext, addrCurrChunk, 10));
-                p.addInstruction(new Mem(Mem.Op.ST, addrNewChunk, addrPtrNext));
-
-                p.addInstruction(new UAL(UAL.Op.ADD, addrCurrChunk, addrNewChunk, 0));
-                p.addInstruction(new UALi(UALi.Op.SUB, addrChunksACreer, addrChunksACreer, 1));
-                p.addInstruction(new JumpCall(JumpCall.Op.JMP, debLoopAlloc));
-
-                p.addInstruction(getLabelInstruction(finLoopAlloc));
-
-                // Mise à jour de la taille du tableau dans la prem addr
-                p.addInstruction(new Mem(Mem.Op.ST, addrNewTaille, addrPntr));
-                // Aggrandissement du tableau fini
-
-                p.addInstruction(getLabelInstruction(labelSizeOk));
-
-                // Décalage pour sauter la taille du tab
-                p.addInstruction(new UALi(UALi.Op.ADD, addrPntr, addrPntr, 1));
-
-                String debLoopLabel = getNewLabel();
-                String finLoopLabel = getNewLabel();
-
-                // Boucle pour mettre l'indice à une val <10
-                // Concrétement on cherche le chunk où elle se trouve
-                p.addInstruction(getLabelInstruction(debLoopLabel));
-                p.addInstruction(new CondJump(CondJump.Op.JINF, addrInd, addrVal10, finLoopLabel));
-                p.addInstruction(new UALi(UALi.Op.SUB, addrInd, addrInd, 10));
-
-                int addrNextChunk = getNewRegister();
-                p.addInstruction(new UALi(UALi.Op.ADD, addrNextChunk, addrPntr, 10));
-
-                // On change de chunk pour accéder au suivant
-                p.addInstruction(new Mem(Mem.Op.LD, addrPntr, addrNextChunk));
-                p.addInstruction(new JumpCall(JumpCall.Op.JMP, debLoopLabel));
-
-                p.addInstruction(getLabelInstruction(finLoopLabel));
-
-                p.addInstruction(new UAL(UAL.Op.ADD, addrPntr, addrPntr, addrInd));
-
-
             }
 
-            Program pVal = visit(ctx.getChild(ctx.getChildCount()-2));
+            Program pVal = visit(ast.c(n));
             int addrVal = this.nbRegister;
             p.addInstructions(pVal);
 
-            // On la renvoie dans un nouveau registre
-            p.addInstruction(new Mem(Mem.Op.ST, addrVal, addrPntr));
+            int addrElems = lire(p, addrTab, DECALAGE_ELEMENTS);
+            int addrCase = getNewRegister();
+            p.addInstruction(new UAL(UAL.Op.ADD, addrCase, addrElems, addrInd));
+            p.addInstruction(new Mem(Mem.Op.ST, addrVal, addrCase));
         }
 
         return p;
     }
 
-    @Override
-    public Program visitBlock(grammarTCLParser.BlockContext ctx) {
-        Program p = new Program();
-
-        for(int i=1; i<ctx.getChildCount()-1; i++) {
-            Program pInstr = visit(ctx.getChild(i));
-            p.addInstructions(pInstr);
-        }
-
-        return p;
+    // Poignée du sous-tableau rangé dans la case addrInd du bloc addrElems. Une case encore à 0 (jamais
+    // remplie, par exemple après un agrandissement) reçoit d'abord un tableau vide
+    private int sousTableau(Program p, int addrElems, int addrInd) {
+        int addrCase = getNewRegister();
+        p.addInstruction(new UAL(UAL.Op.ADD, addrCase, addrElems, addrInd));
+        int addrSous = getNewRegister();
+        p.addInstruction(new Mem(Mem.Op.LD, addrSous, addrCase));
+
+        String labelRempli = getNewLabel();
+        p.addInstruction(new CondJump(CondJump.Op.JNEQ, addrSous, 0, labelRempli));
+        p.addInstructions(tableauVide());
+        p.addInstruction(new UALi(UALi.Op.ADD, addrSous, this.nbRegister, 0));
+        p.addInstruction(new Mem(Mem.Op.ST, addrSous, addrCase));
+        p.addInstruction(getLabelInstruction(labelRempli));
+        return addrSous;
     }
 
-    @Override
-    public Program visitIf(grammarTCLParser.IfContext ctx) {
-        Program pCond = visit(ctx.getChild(2));
-        int addr = this.nbRegister;
-        Program p = new Program();
-        p.addInstructions(pCond);
-
-        String labelElse = getNewLabel();
-        String labelFinInstr = getNewLabel();
-
-        int valUn = getNewRegister();
-        p.addInstruction(new UALi(UALi.Op.ADD, valUn, 0, 1));
-        // Si condition pas validee on dodge les instructions du if
-        p.addInstruction(new CondJump(CondJump.Op.JINF, addr, valUn, labelElse));
-
-        // Corp du if
-        Program pCorp = visit(ctx.getChild(4));
-        p.addInstructions(pCorp);
-        p.addInstruction(new JumpCall(JumpCall.Op.JMP, labelFinInstr));
-
-        p.addInstruction(getLabelInstruction(labelElse));
-
-        if(ctx.getChildCount() > 5) {
-            Program pElse = visit(ctx.getChild(6));
-            p.addInstructions(pElse);
-        }
-
-        // Instr utile juste pour le label
-        p.addInstruction(getLabelInstruction(labelFinInstr));
-
-        return p;
+    /**
+     * Agrandit si besoin le tableau de poignée addrTab pour que l'indice addrInd soit valide : les cases
+     * ajoutées valent 0 et, au-delà de la capacité, les éléments sont recopiés dans un bloc d'une classe
+     * assez grande, qui remplace l'ancien dans la poignée ; l'ancien bloc est alors libéré. La poignée ne
+     * change pas, les alias du tableau restent donc valides.
+     * @param p code où ajouter les instructions
+     * @param addrTab registre de la poignée du tableau
+     * @param addrInd registre de l'indice
+     * @return registre de l'adresse du bloc des éléments, à jour
+     */
+    private int agrandir(Program p, int addrTab, int addrInd) {
+        String labelSizeOk = getNewLabel();
+        String labelPlaceOk = getNewLabel();
+
+        int addrElems = lire(p, addrTab, DECALAGE_ELEMENTS);
+        int addrTaille = lire(p, addrTab, DECALAGE_TAILLE);
+        p.addInstruction(new CondJump(CondJump.Op.JINF, addrInd, addrTaille, labelSizeOk));
+
+        int addrClasse = lire(p, addrTab, DECALAGE_CLASSE);
+        int addrCapacite = capacite(p, addrClasse);
+        p.addInstruction(new CondJump(CondJump.Op.JINF, addrInd, addrCapacite, labelPlaceOk));
+
+        // Réallocation dans la plus petite classe dont la capacité dépasse l'indice
+        String labelClasse = getNewLabel();
+        int addrNewClasse = getNewRegister();
+        p.addInstruction(new UALi(UALi.Op.ADD, addrNewClasse, addrClasse, 0));
+        int addrNewCapacite = getNewRegister();
+        p.addInstruction(new UALi(UALi.Op.ADD, addrNewCapacite, addrCapacite, 0));
+        p.addInstruction(getLabelInstruction(labelClasse));
+        p.addInstruction(new UALi(UALi.Op.ADD, addrNewClasse, addrNewClasse, 1));
+        p.addInstruction(new UALi(UALi.Op.SL, addrNewCapacite, addrNewCapacite, 1));
+        p.addInstruction(new CondJump(CondJump.Op.JSEQ, addrInd, addrNewCapacite, labelClasse));
+        int addrNewElems = allouer(p, addrNewClasse);
+
+        // Tout l'ancien bloc est recopié (au-delà de la taille, ses cases valent 0), puis la suite est mise à 0
+        parQuatre(p, addrElems, addrNewElems, 0, addrCapacite);
+        parQuatre(p, 0, addrNewElems, addrCapacite, addrNewCapacite);
+        liberer(p, addrElems, addrClasse);
+        ecrire(p, addrNewElems, addrTab, DECALAGE_ELEMENTS);
+        ecrire(p, addrNewClasse, addrTab, DECALAGE_CLASSE);
+        p.addInstruction(new UALi(UALi.Op.ADD, addrElems, addrNewElems, 0));
+
+        // Les cases jusqu'à l'indice valent déjà 0 : seule la taille change
+        p.addInstruction(getLabelInstruction(labelPlaceOk));
+        int addrNewTaille = getNewRegister();
+        p.addInstruction(new UALi(UALi.Op.ADD, addrNewTaille, addrInd, 1));
+        ecrire(p, addrNewTaille, addrTab, DECALAGE_TAILLE);
+
+        p.addInstruction(getLabelInstruction(labelSizeOk));
+        return addrElems;
     }
 
-    @Override
-    public Program visitWhile(grammarTCLParser.WhileContext ctx) {
-        Program pCond = visit(ctx.getChild(2));
-        int addrCond = this.nbRegister;
-        Program pCorp = visit(ctx.getChild(4));
-
-        String labelDebWhile = getNewLabel();
+    /**
+     * Copie les cases [addrDebut, addrFin) du bloc addrSrc dans le bloc addrDest, 4 cases par tour
+     * de boucle ; addrFin - addrDebut doit être un multiple de 4 (les capacités le sont).
+     * @param p code où ajouter les instructions
+     * @param addrSrc registre de l'adresse du bloc source, 0 pour remplir de 0
+     * @param addrDest registre de l'adresse du bloc destination
+     * @param addrDebut registre de la première case (0 : le registre nul, case 0)
+     * @param addrFin registre de la case qui suit la dernière
+     */
+    private void parQuatre(Program p, int addrSrc, int addrDest, int addrDebut, int addrFin) {
+        String labelDeb = getNewLabel();
         String labelFin = getNewLabel();
+        int addrI = getNewRegister();
+        p.addInstruction(new UALi(UALi.Op.ADD, addrI, addrDebut, 0));
+        p.addInstruction(new CondJump(CondJump.Op.JSEQ, addrI, addrFin, labelFin));
+
+        // Do-while : pas de JMP vers labelDeb, que l'allocateur compterait parmi les variables vivantes
+        p.addInstruction(getLabelInstruction(labelDeb));
+        int[] valeurs = new int[4];
+        if (addrSrc != 0) {
+            int addrElemSrc = getNewRegister();
+            p.addInstruction(new UAL(UAL.Op.ADD, addrElemSrc, addrSrc, addrI));
+            for (int k = 0; k < 4; k++) valeurs[k] = lire(p, addrElemSrc, k);
+        }
+        int addrElemDest = getNewRegister();
+        p.addInstruction(new UAL(UAL.Op.ADD, addrElemDest, addrDest, addrI));
+        for (int k = 0; k < 4; k++) ecrire(p, valeurs[k], addrElemDest, k);
+        p.addInstruction(new UALi(UALi.Op.ADD, addrI, addrI, 4));
+        p.addInstruction(new CondJump(CondJump.Op.JINF, addrI, addrFin, labelDeb));
 
-        Program p = new Program();
-        // Pour pouvoir y retourner en fin de boucle
-        p.addInstruction(getLabelInstruction(labelDebWhile));
-        p.addInstructions(pCond);
-
-        // Vérif de la condition
-        int valUn = getNewRegister();
-        p.addInstruction(new UALi(UALi.Op.ADD, valUn, 0, 1));
-        // Si condition pas validee on dodge les instructions du if
-        p.addInstruction(new CondJump(CondJump.Op.JINF, addrCond, valUn, labelFin));
-
-        p.addInstructions(pCorp);
-        p.addInstruction(new JumpCall(JumpCall.Op.JMP, labelDebWhile));
         p.addInstruction(getLabelInstruction(labelFin));
-
-        return p;
     }
 
-    @Override
-    public Program visitFor(grammarTCLParser.ForContext ctx) {
-        Program pInit = visit(ctx.getChild(2));
-        Program pCond = visit(ctx.getChild(4));
-        int addrCond = this.nbRegister;
-        Program pIncr = visit(ctx.getChild(6));
-        Program pCorp = visit(ctx.getChild(8));
-
-        String labelDebFor = getNewLabel();
-        String labelFin = getNewLabel();
-
-        Program p = new Program();
-        p.addInstructions(pInit);
-        // Pour pouvoir y retourner en fin de boucle
-        p.addInstruction(getLabelInstruction(labelDebFor));
-        p.addInstructions(pCond);
-
-        // Vérif de la condition
-        int valUn = getNewRegister();
-        p.addInstruction(new UALi(UALi.Op.ADD, valUn, 0, 1));
-        // Si condition pas validee on dodge les instructions du if
-        p.addInstruction(new CondJump(CondJump.Op.JINF, addrCond, valUn, labelFin));
+    public Program visitBlock(int n) {
+        return instructions(n);
+    }
 
-        p.addInstructions(pCorp);
-        p.addInstructions(pIncr);
-        p.addInstruction(new JumpCall(JumpCall.Op.JMP, labelDebFor));
+    public Program visitIf(int n) {
+        return instructions(n);
+    }
 
-        p.addInstruction(getLabelInstruction(labelFin));
+    public Program visitWhile(int n) {
+        return instructions(n);
+    }
 
-        return p;
+    public Program visitFor(int n) {
+        return instructions(n);
     }
 
-    @Override
-    public Program visitReturn(grammarTCLParser.ReturnContext ctx) {
-        Program pCtx = visit(ctx.getChild(1));
+    public Program visitReturn(int n) {
+        Program pCtx = visit(ast.a(n));
         int addr = this.nbRegister;
         Program p = new Program();
         p.addInstructions(pCtx);
@@ -779,66 +1112,178 @@ public class CodeGenerator  extends AbstractParseTreeVisitor<Program> implements
         return p;
     }
 
-    @Override
-    public Program visitCore_fct(grammarTCLParser.Core_fctContext ctx) {
+    public Program visitCore_fct(int n) {
         Program p = new Program();
 
-        for(int i=1; i<ctx.getChildCount()-4; i++) {
-            Program pCtx = visit(ctx.getChild(i));
+        int instrs = ast.a(n);
+        for(int i=0; i<ast.taille(instrs); i++) {
+            Program pCtx = visit(ast.element(instrs, i));
             p.addInstructions(pCtx);
         }
 
-        Program pExpr = visit(ctx.getChild(ctx.getChildCount()-3));
+        Program pExpr = visit(ast.b(n));
         p.addInstructions(pExpr);
 
         return p;
     }
 
-    @Override
-    public Program visitDecl_fct(grammarTCLParser.Decl_fctContext ctx) {
+    public Program visitDecl_fct(int n) {
+        int fct = ast.b(n);
+        String cle = null;
+        int[] varAvant = null;
+        if (functionCache != null) {
+            cle = cleGeneration(n);
+            FunctionCache.CodeEntry entry = functionCache.getCode(cle);
+            if (entry != null) {
+                // Même texte et même état de départ : le code généré serait identique
+                Metrics.count("incremental.codegen.hits");
+                this.nbRegister = entry.nbRegister;
+                this.nbLabels = entry.nbLabels;
+                this.stackPointer = entry.stackPointer;
+                for (Map.Entry<String, Integer> e : entry.varToReg.entrySet()) setRegistre(ast.interner(e.getKey()), e.getValue());
+                int[] params = new int[entry.params.length];
+                for (int i = 0; i < params.length; i++) params[i] = ast.interner(entry.params[i]);
+                setFonction(fct, params, entry.regRetour);
+                Program p = new Program();
+                p.addInstructions(entry.program);
+                return p;
+            }
+            Metrics.count("incremental.codegen.misses");
+            varAvant = varToReg.clone();
+        }
+
         Program p = new Program();
+        String fctName = ast.nom(fct);
 
         // Ajout du label qui correspond au nom de la ftc
-        p.addInstruction(getLabelInstruction(ctx.getChild(1).getText()));
+        p.addInstruction(getLabelInstruction(fctName));
 
-        // Ajout des params comme var
+        // Ajout des params comme var (paires type, nom)
+        int params = ast.c(n);
+        int[] paramsFct = new int[ast.taille(params) / 2];
         int nbParam = 0;
-        for(int i=4; i<ctx.getChildCount()-2; i+=3) {
-            // Encodage de la forme nom_fct+"-"+ind_param
-            // Pour ne pas écraser de potentiel variable hors de la fct
-            // Car un nom de var ne peut pas contenir '-'
-            varToReg.put(ctx.getChild(i).getText(), getNewRegister());
-            paramToVar.put(ctx.getChild(1).getText()+"-"+nbParam, ctx.getChild(i).getText());
+        for(int i=0; i<ast.taille(params); i+=2) {
+            int param = ast.element(params, i + 1);
+            setRegistre(param, getNewRegister());
+            paramsFct[nbParam] = param;
             nbParam++;
         }
+        // Registre de retour inconnu tant que le corps n'est pas généré
+        setFonction(fct, paramsFct, 0);
 
-        Program pCorpFct = visit(ctx.getChild(ctx.getChildCount()-1));
+        Program pCorpFct = visit(ast.d(n));
         p.addInstructions(pCorpFct);
         // Stock le registre où est stockée la val de retour de la fct
         int addrRet = this.nbRegister;
-        varToReg.put(ctx.getChild(1).getText()+"-ret", addrRet);
+        setFonction(fct, paramsFct, addrRet);
 
         p.addInstruction(new Ret());
 
+        if (cle != null) {
+            String[] nomsParams = new String[paramsFct.length];
+            for (int i = 0; i < paramsFct.length; i++) nomsParams[i] = ast.nom(paramsFct[i]);
+            functionCache.putCode(cle, new FunctionCache.CodeEntry(p, nbRegister, nbLabels, stackPointer,
+                    difference(varAvant), nomsParams, addrRet));
+        }
+
+        return p;
+    }
+
+    /**
+     * Clé du cache de génération d'une fonction : son texte, les compteurs courants, pour chaque
+     * identifiant qu'elle utilise, les registres et paramètres déjà associés à ce nom et, pour chaque
+     * print et chaque déclaration, si la variable est un tableau.
+     * @param n nœud de la déclaration de fonction
+     * @return la clé de cache
+     */
+    private String cleGeneration(int n) {
+        StringBuilder cle = new StringBuilder(ast.texte(n));
+        cle.append('\0').append(nbRegister).append(',').append(nbLabels).append(',').append(stackPointer);
+        for (int id : ast.identifiants(n)) {
+            String nom = ast.nom(id);
+            cle.append('\0').append(nom).append(':').append(id < varToReg.length ? varToReg[id] : 0)
+               .append(',').append(id < retToReg.length ? retToReg[id] : 0);
+            if (id < paramToVar.length && paramToVar[id] != null) {
+                for (int param : paramToVar[id]) {
+                    cle.append(',').append(ast.nom(param)).append('=').append(varToReg[param]);
+                }
+            }
+        }
+        cle.append('\0');
+        for (int noeud : ast.noeuds(n)) {
+            if (ast.sorte(noeud) == Ast.PRINT || ast.sorte(noeud) == Ast.DECLARATION) cle.append(estTableau(noeud) ? 'T' : 'V');
+        }
+        return cle.toString();
+    }
+
+    // Variables dont le registre a changé depuis avant (état de varToReg), par nom
+    private Map<String, Integer> difference(int[] avant) {
+        HashMap<String, Integer> res = new HashMap<>();
+        for (int id = 0; id < varToReg.length; id++) {
+            int regAvant = id < avant.length ? avant[id] : 0;
+            if (varToReg[id] != regAvant) {
+                res.put(ast.nom(id), varToReg[id]);
+            }
+        }
+        return res;
+    }
+
+    public Program visitMain(int n) {
+        Program p = debutMain();
+
+        int fcts = ast.a(n);
+        for(int i=0; i<ast.taille(fcts); i++) {
+            Program pFct = visit(ast.element(fcts, i));
+            p.addInstructions(pFct);
+        }
+
+        p.addInstructions(corpsMain(ast.b(n)));
+
         return p;
     }
 
-    @Override
-    public Program visitMain(grammarTCLParser.MainContext ctx) {
+    /**
+     * Début du programme : saut vers main, par-dessus le code des fonctions.
+     * Avec corpsMain, permet de générer les fonctions une à une au fil de l'analyse syntaxique.
+     * @return le code de début du programme
+     */
+    public Program debutMain() {
         Program p = new Program();
 
-        String mainLabel = getNewLabel();
+        this.mainLabel = getNewLabel();
 
         p.addInstruction(new UAL(UAL.Op.XOR, 0, 0, 0));
         p.addInstruction(new JumpCall(JumpCall.Op.JMP, mainLabel));
 
-        for(int i=0; i<ctx.getChildCount()-3; i++) {
-            Program pFct = visit(ctx.getChild(i));
-            p.addInstructions(pFct);
-        }
+        return p;
+    }
+
+    /**
+     * Fin du programme : code de main, une fois toutes les fonctions générées
+     * @param n nœud du corps de main
+     * @return le code de main
+     */
+    public Program corpsMain(int n) {
+        Program p = new Program();
 
         p.addInstruction(getLabelInstruction(mainLabel));
-        Program pCorp = visit(ctx.getChild(ctx.getChildCount()-2));
+        Program pCorp = visit(n);
+        if (stackPointer != 0) {
+            // Des tableaux sont alloués : tas vide et listes des blocs libres vides
+            int addrTas = getNewRegister();
+            p.addInstruction(new UALi(UALi.Op.ADD, addrTas, 0, ADRESSE_TAS));
+            int addrSommet = getNewRegister();
+            p.addInstruction(new UALi(UALi.Op.ADD, addrSommet, 0, stackPointer));
+            p.addInstruction(new Mem(Mem.Op.ST, addrSommet, addrTas));
+
+            String labelListes = getNewLabel();
+            int addrListe = getNewRegister();
+            p.addInstruction(new UALi(UALi.Op.ADD, addrListe, 0, ADRESSE_LISTES));
+            p.addInstruction(getLabelInstruction(labelListes));
+            p.addInstruction(new Mem(Mem.Op.ST, 0, addrListe));
+            p.addInstruction(new UALi(UALi.Op.ADD, addrListe, addrListe, 1));
+            p.addInstruction(new CondJump(CondJump.Op.JINF, addrListe, addrSommet, labelListes));
+        }
         p.addInstructions(pCorp);
 
         p.addInstruction(new Stop());
@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Cache sur disque du code assembleur final, indexé par le contenu.
+ *
+ * La clé est un SHA-256 du texte source, des options de compilation et d'une empreinte
+ * du compilateur lui-même (tous les fichiers .class de son dossier ou son jar) : recompiler
+ * le compilateur invalide le cache.
+ * Les entrées sont écrites dans un fichier temporaire puis renommées atomiquement, et la taille
+ * totale est bornée en supprimant les entrées les moins récemment utilisées (date de modification,
+ * rafraîchie à chaque lecture).
+ */
+public class CompileCache {
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private static final byte[] EMPREINTE = empreinteCompilateur();
+
+    private final Path dir;
+    private final long maxBytes;
+
+    /**
+     * Constructeur
+     * @param dir dossier du cache (créé si besoin)
+     * @param maxBytes taille maximale du cache en octets
+     * @throws IOException si le dossier ne peut pas être créé
+     */
+    public CompileCache(Path dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+    }
+
+    /**
+     * Calcule la clé d'une compilation
+     * @param source texte source
+     * @param options options de compilation influant sur le code produit
+     * @return String clé hexadécimale
+     */
+    public String cle(String source, String options) {
+        MessageDigest sha = sha256();
+        sha.update(EMPREINTE);
+        sha.update(options.getBytes(StandardCharsets.UTF_8));
+        sha.update((byte) 0);
+        sha.update(source.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(sha.digest());
+    }
+
+    /**
+     * Calcule la clé d'une compilation à partir des octets UTF-8 du source (même clé que pour son texte)
+     * @param source octets du source, entre position() et limit() (la position n'est pas modifiée)
+     * @param options options de compilation influant sur le code produit
+     * @return String clé hexadécimale
+     */
+    public String cle(ByteBuffer source, String options) {
+        MessageDigest sha = sha256();
+        sha.update(EMPREINTE);
+        sha.update(options.getBytes(StandardCharsets.UTF_8));
+        sha.update((byte) 0);
+        sha.update(source.duplicate());
+        return HexFormat.of().formatHex(sha.digest());
+    }
+
+    /**
+     * Copie le code en cache vers output s'il existe
+     * @param cle clé de la compilation
+     * @param output fichier assembleur à produire
+     * @return true si l'entrée était en cache
+     * @throws IOException en cas d'erreur d'écriture de output
+     */
+    public boolean recuperer(String cle, Path output) throws IOException {
+        Path entree = dir.resolve(cle + ".asm");
+        try {
+            Files.copy(entree, output, StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(entree, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Ajoute au cache le code assembleur produit, puis applique la borne de taille
+     * @param cle clé de la compilation
+     * @param output fichier assembleur produit par la compilation
+     * @throws IOException en cas d'erreur d'écriture dans le cache
+     */
+    public void stocker(String cle, Path output) throws IOException {
+        Path tmp = Files.createTempFile(dir, cle, ".tmp");
+        try {
+            Files.copy(output, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, dir.resolve(cle + ".asm"), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        evincer();
+    }
+
+    /**
+     * Supprime les entrées les moins récemment utilisées tant que le cache dépasse maxBytes
+     */
+    private synchronized void evincer() throws IOException {
+        ArrayList<Path> entrees = new ArrayList<>();
+        ArrayList<BasicFileAttributes> attributs = new ArrayList<>();
+        long total = 0;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.asm")) {
+            for (Path entree : stream) {
+                try {
+                    BasicFileAttributes attr = Files.readAttributes(entree, BasicFileAttributes.class);
+                    entrees.add(entree);
+                    attributs.add(attr);
+                    total += attr.size();
+                } catch (NoSuchFileException e) {
+                    // supprimée entre-temps par une autre compilation
+                }
+            }
+        }
+        if (total <= maxBytes) return;
+
+        ArrayList<Integer> ordre = new ArrayList<>();
+        for (int i = 0; i < entrees.size(); i++) ordre.add(i);
+        ordre.sort(Comparator.comparing(i -> attributs.get(i).lastModifiedTime()));
+
+        for (int i : ordre) {
+            if (total <= maxBytes) break;
+            Files.deleteIfExists(entrees.get(i));
+            total -= attributs.get(i).size();
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Empreinte de tout le code compilé chargé avec CompileCache (classes imbriquées comprises) : les
+    // .class d'un dossier dans l'ordre de leurs chemins, ou le contenu du jar. Si le code est illisible,
+    // l'empreinte est propre à ce processus et le cache n'est jamais réutilisé d'un lancement à l'autre.
+    private static byte[] empreinteCompilateur() {
+        MessageDigest sha = sha256();
+        try {
+            Path racine = Path.of(CompileCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (Files.isDirectory(racine)) {
+                List<Path> classes;
+                try (Stream<Path> fichiers = Files.walk(racine)) {
+                    classes = fichiers.filter(f -> f.toString().endsWith(".class")).sorted().toList();
+                }
+                for (Path classe : classes) {
+                    sha.update(racine.relativize(classe).toString().getBytes(StandardCharsets.UTF_8));
+                    sha.update((byte) 0);
+                    sha.update(Files.readAllBytes(classe));
+                }
+            } else {
+                sha.update(Files.readAllBytes(racine));
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            sha.update(UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return sha.digest();
+    }
+}
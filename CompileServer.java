@@ -0,0 +1,132 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serveur de compilation : garde la JVM (caches DFA d'ANTLR, code déjà compilé par le JIT)
+ * chaude entre deux compilations.
+ *
+ * Protocole (une connexion TCP locale, une requête par ligne) :
+ * - requête : {@code <fichier.tcl>} ou {@code <fichier.tcl>\t<sortie.asm>}, séparés par une tabulation
+ *   pour que les chemins puissent contenir des espaces (par défaut x.tcl produit x.asm)
+ * - réponse : {@code OK <sortie.asm>} ou {@code ERREUR <message>}
+ * Le fichier de sortie doit finir par .asm et être dans le dossier du source : un client ne peut
+ * pas écraser d'autres fichiers.
+ *
+ * Chaque connexion est traitée sur son propre thread virtuel.
+ */
+public class CompileServer {
+    public static final int DEFAULT_PORT = 4545;
+
+    private final int port;
+    private final CompileCache cache;
+    private final FunctionCache functionCache;
+
+    /**
+     * Constructeur
+     * @param port port local d'écoute
+     * @param cache cache du code final (null pour toujours compiler)
+     * @param functionCache cache par fonction, partagé entre les requêtes (null pour tout refaire)
+     */
+    public CompileServer(int port, CompileCache cache, FunctionCache functionCache) {
+        this.port = port;
+        this.cache = cache;
+        this.functionCache = functionCache;
+    }
+
+    /**
+     * Accepte les connexions jusqu'à l'arrêt du processus
+     * @throws IOException si le port ne peut pas être ouvert
+     */
+    public void run() throws IOException {
+        try (ServerSocket serveur = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            System.out.println("Serveur de compilation en écoute sur le port " + serveur.getLocalPort());
+            while (true) {
+                Socket client = serveur.accept();
+                executor.submit(() -> traiterConnexion(client));
+            }
+        }
+    }
+
+    /**
+     * Traite toutes les requêtes d'une connexion
+     * @param client socket du client
+     */
+    private void traiterConnexion(Socket client) {
+        try (client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(client.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            String requete;
+            while ((requete = in.readLine()) != null) {
+                if (requete.isBlank()) continue;
+                out.println(traiterRequete(requete));
+            }
+        } catch (IOException e) {
+            System.err.println("Connexion interrompue : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compile le fichier demandé et construit la réponse
+     * @param requete ligne reçue : fichier source et éventuellement, après une tabulation, fichier de sortie
+     * @return ligne de réponse
+     */
+    private String traiterRequete(String requete) {
+        String[] champs = requete.split("\t", -1);
+        if (champs.length > 2 || champs[0].isEmpty()) {
+            return "ERREUR requête invalide : " + requete;
+        }
+        Path source;
+        Path output;
+        try {
+            source = Path.of(champs[0]);
+            output = champs.length == 2 ? Path.of(champs[1]) : Main.sortiePour(source);
+        } catch (InvalidPathException e) {
+            return "ERREUR chemin invalide : " + e.getMessage();
+        }
+        if (output.getFileName() == null || !output.getFileName().toString().endsWith(".asm")
+                || !dossier(output).equals(dossier(source))) {
+            return "ERREUR la sortie doit être un fichier .asm du dossier de " + source;
+        }
+
+        try {
+            switch (Main.compiler(source.toString(), output, false, cache, functionCache)) {
+                case 0:
+                    return "OK " + output;
+                case 1:
+                    return "ERREUR erreur(s) de syntaxe dans " + source;
+                default:
+                    return "ERREUR le programme nécessite plus de 32 registres";
+            }
+        } catch (IOException e) {
+            return "ERREUR lecture ou écriture : " + e.getMessage();
+        } catch (SemanticError e) {
+            return "ERREUR " + e.getMessage();
+        } catch (StackOverflowError e) {
+            // Par exemple AstBuilder sur le chemin de repli d'une erreur de syntaxe
+            return "ERREUR programme trop imbriqué : " + source;
+        } catch (OutOfMemoryError e) {
+            return "ERREUR mémoire insuffisante pour " + source;
+        } catch (VirtualMachineError e) {
+            throw e;
+        } catch (Throwable e) {
+            // Toute autre erreur de cette requête reçoit aussi sa réponse : une réponse par requête
+            return "ERREUR " + e;
+        }
+    }
+
+    // Dossier d'un fichier, en chemin absolu normalisé
+    private static Path dossier(Path fichier) {
+        return fichier.toAbsolutePath().normalize().getParent();
+    }
+}
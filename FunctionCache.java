@@ -0,0 +1,130 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import Asm.Program;
+import Type.FunctionType;
+import Type.Type;
+
+/**
+ * Cache, par fonction (decl_fct), des résultats du typage et de la génération de code.
+ * Partagé entre les compilations d'un même processus (mode lot ou serveur) : quand on ne
+ * modifie qu'une fonction, les autres ne sont ni retypées ni regénérées.
+ *
+ * Les clés sont construites par TyperVisitor et CodeGenerator à partir de l'écriture de la fonction
+ * dans l'Ast (Ast.texte, insensible à la mise en page) et de tout ce dont son résultat dépend : signatures des fonctions qu'elle
+ * référence pour le typage, compteurs et registres déjà attribués pour la génération de code.
+ * Le nombre d'entrées est borné, les moins récemment utilisées sont oubliées en premier.
+ */
+public class FunctionCache {
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /**
+     * Résultat du typage d'une fonction
+     */
+    public static class TypeEntry {
+        final FunctionType signature;
+        final Type[] typesNoeuds;
+
+        /**
+         * Constructeur
+         * @param signature signature résolue de la fonction
+         * @param typesNoeuds types résolus des nœuds de la fonction, dans l'ordre de Ast.noeuds
+         */
+        TypeEntry(FunctionType signature, Type[] typesNoeuds) {
+            this.signature = signature;
+            this.typesNoeuds = typesNoeuds;
+        }
+    }
+
+    /**
+     * Résultat de la génération de code d'une fonction
+     */
+    public static class CodeEntry {
+        final Program program;
+        final int nbRegister;
+        final int nbLabels;
+        final int stackPointer;
+        final Map<String, Integer> varToReg;
+        final String[] params;
+        final int regRetour;
+
+        /**
+         * Constructeur
+         * @param program code de la fonction
+         * @param nbRegister compteur de registres après la fonction
+         * @param nbLabels compteur de labels après la fonction
+         * @param stackPointer fin des cases mémoire réservées après la fonction
+         * @param varToReg associations variable -> registre ajoutées par la fonction
+         * @param params noms des paramètres de la fonction, dans l'ordre
+         * @param regRetour registre de la valeur de retour de la fonction
+         */
+        CodeEntry(Program program, int nbRegister, int nbLabels, int stackPointer,
+                  Map<String, Integer> varToReg, String[] params, int regRetour) {
+            this.program = program;
+            this.nbRegister = nbRegister;
+            this.nbLabels = nbLabels;
+            this.stackPointer = stackPointer;
+            this.varToReg = varToReg;
+            this.params = params;
+            this.regRetour = regRetour;
+        }
+    }
+
+    private final LinkedHashMap<String, TypeEntry> types;
+    private final LinkedHashMap<String, CodeEntry> code;
+
+    /**
+     * Constructeur
+     * @param maxEntries nombre maximal d'entrées de chacun des deux caches
+     */
+    public FunctionCache(int maxEntries) {
+        this.types = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TypeEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.code = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CodeEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Signature et types des nœuds d'une fonction déjà typée
+     * @param cle clé calculée par TyperVisitor
+     * @return TypeEntry en cache, ou null
+     */
+    public synchronized TypeEntry getType(String cle) {
+        return types.get(cle);
+    }
+
+    /**
+     * Mémorise le résultat du typage d'une fonction
+     * @param cle clé calculée par TyperVisitor
+     * @param entry signature et types des nœuds de la fonction
+     */
+    public synchronized void putType(String cle, TypeEntry entry) {
+        types.put(cle, entry);
+    }
+
+    /**
+     * Code d'une fonction déjà générée
+     * @param cle clé calculée par CodeGenerator
+     * @return CodeEntry en cache, ou null
+     */
+    public synchronized CodeEntry getCode(String cle) {
+        return code.get(cle);
+    }
+
+    /**
+     * Mémorise le code généré pour une fonction
+     * @param cle clé calculée par CodeGenerator
+     * @param entry code et état du générateur après la fonction
+     */
+    public synchronized void putCode(String cle, CodeEntry entry) {
+        code.put(cle, entry);
+    }
+}
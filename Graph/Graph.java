@@ -1,4 +1,6 @@
 package Graph;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -65,15 +67,84 @@ public abstract class Graph<T> {
      * @return String
      */
     public String toString() {
-        String s = "";
+        StringBuilder s = new StringBuilder();
+        try {
+            write(s, Integer.MAX_VALUE);
+        } catch (IOException e) {
+            // impossible : un StringBuilder ne lève pas d'IOException
+            throw new UncheckedIOException(e);
+        }
+        return s.toString();
+    }
+
+    /**
+     * Écriture pour l'affichage, sommet par sommet, sans construire la chaîne complète
+     * @param out destination
+     * @param maxLignes nombre maximal de sommets écrits (les suivants sont seulement comptés)
+     * @throws IOException en cas d'erreur d'écriture
+     */
+    public void write(Appendable out, int maxLignes) throws IOException {
+        int n = 0;
+        for (T u : this.vertices) {
+            if (n == maxLignes) {
+                out.append("... (" + (this.vertices.size() - n) + " sommet(s) non affiché(s))\n");
+                return;
+            }
+            n++;
+            out.append(u.toString()).append(": ");
+            for (T v : this.adjList.get(u)) {
+                out.append(v.toString()).append(", ");
+            }
+            out.append("\n");
+        }
+    }
+
+    /**
+     * Export au format DOT de GraphViz
+     * @param out destination
+     * @param nom nom du graphe
+     * @throws IOException en cas d'erreur d'écriture
+     */
+    public void writeDot(Appendable out, String nom) throws IOException {
+        HashMap<T,Integer> ids = new HashMap<T,Integer>();
+        out.append(this.dotType()).append(" \"").append(echapperDot(nom)).append("\" {\n");
+        for (T u : this.vertices) {
+            ids.put(u, ids.size());
+            out.append("  n" + ids.get(u) + " [label=\"" + echapperDot(this.dotLabel(u)) + "\"];\n");
+        }
         for (T u : this.vertices) {
-            s += u.toString()+": ";
             for (T v : this.adjList.get(u)) {
-                s += v.toString()+", ";
+                int i = ids.get(u);
+                int j = ids.get(v);
+                if (this.dotEstOriente() || i <= j) {
+                    out.append("  n" + i + (this.dotEstOriente() ? " -> " : " -- ") + "n" + j + ";\n");
+                }
             }
-            s += "\n";
         }
-        return s;
+        out.append("}\n");
+    }
+
+    /**
+     * Le graphe est-il orienté (digraph) ou non (graph) dans l'export DOT
+     * @return boolean
+     */
+    protected abstract boolean dotEstOriente();
+
+    /**
+     * Texte affiché pour un sommet dans l'export DOT
+     * @param u sommet
+     * @return String
+     */
+    protected String dotLabel(T u) {
+        return u.toString();
+    }
+
+    private String dotType() {
+        return this.dotEstOriente() ? "digraph" : "graph";
+    }
+
+    private static String echapperDot(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
     }
 
 }
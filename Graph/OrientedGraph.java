@@ -39,4 +39,9 @@ public class OrientedGraph<T> extends Graph<T> {
         }
         return result;
     }
+
+    @Override
+    protected boolean dotEstOriente() {
+        return true;
+    }
 }
@@ -72,4 +72,15 @@ public class UnorientedGraph<T> extends Graph<T> {
         }
         return maxCol+1;
     }
+
+    @Override
+    protected boolean dotEstOriente() {
+        return false;
+    }
+
+    @Override
+    protected String dotLabel(T u) {
+        if (getColor(u) == -1) return u.toString();
+        return u.toString() + " (couleur " + getColor(u) + ")";
+    }
 }
@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+
+/**
+ * Compare TCLScanner à grammarTCLLexer : vérifie d'abord que les deux produisent exactement
+ * les mêmes tokens (type, texte, ligne, colonne) sur chaque source, puis mesure leur débit.
+ *
+ * Usage : java LexerBenchmark [-n iterations] <fichier.tcl|dossier>...
+ */
+public class LexerBenchmark {
+    public static void main(String[] args) throws IOException {
+        int iterations = 200;
+        List<Path> sources = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-n") && i + 1 < args.length) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if (Files.isDirectory(Path.of(args[i]))) {
+                try (Stream<Path> fichiers = Files.walk(Path.of(args[i]))) {
+                    fichiers.filter(f -> f.toString().endsWith(".tcl")).sorted().forEach(sources::add);
+                }
+            } else {
+                sources.add(Path.of(args[i]));
+            }
+        }
+        if (sources.isEmpty()) {
+            System.out.println("Usage: java LexerBenchmark [-n iterations] <fichier.tcl|dossier>...");
+            return;
+        }
+
+        List<String> textes = new ArrayList<>();
+        long nbTokens = 0;
+        for (Path source : sources) {
+            String texte = Files.readString(source);
+            String diff = comparer(texte, source.toString());
+            if (diff != null) {
+                System.out.println(source + " : tokens différents : " + diff);
+                System.exit(1);
+            }
+            textes.add(texte);
+            nbTokens += lexerScanner(texte);
+        }
+        System.out.println(sources.size() + " fichier(s), " + nbTokens + " tokens : mêmes tokens pour les deux analyseurs");
+
+        // Échauffement du JIT, puis mesure
+        mesurer(textes, iterations / 10 + 1);
+        long[] temps = mesurer(textes, iterations);
+        long total = nbTokens * iterations;
+        System.out.printf("grammarTCLLexer : %8.1f ns/token%n", (double) temps[0] / total);
+        System.out.printf("TCLScanner      : %8.1f ns/token (x%.1f)%n", (double) temps[1] / total, (double) temps[0] / temps[1]);
+    }
+
+    private static long[] mesurer(List<String> textes, int iterations) {
+        long[] temps = new long[2];
+        long debut = System.nanoTime();
+        for (int it = 0; it < iterations; it++) {
+            for (String texte : textes) lexerAntlr(texte);
+        }
+        temps[0] = System.nanoTime() - debut;
+        debut = System.nanoTime();
+        for (int it = 0; it < iterations; it++) {
+            for (String texte : textes) lexerScanner(texte);
+        }
+        temps[1] = System.nanoTime() - debut;
+        return temps;
+    }
+
+    private static int lexerAntlr(String texte) {
+        grammarTCLLexer lexer = new grammarTCLLexer(CharStreams.fromString(texte));
+        lexer.removeErrorListeners();
+        int n = 0;
+        while (lexer.nextToken().getType() != Token.EOF) n++;
+        return n;
+    }
+
+    private static int lexerScanner(String texte) {
+        TCLScanner scanner = new TCLScanner(texte, "");
+        scanner.removeErrorListeners();
+        int n = 0;
+        while (scanner.next() != Token.EOF) n++;
+        return n;
+    }
+
+    /**
+     * Compare les tokens des deux analyseurs
+     * @param texte source
+     * @param nom nom du source
+     * @return description de la première différence, ou null si aucune
+     */
+    static String comparer(String texte, String nom) {
+        grammarTCLLexer lexer = new grammarTCLLexer(CharStreams.fromString(texte, nom));
+        lexer.removeErrorListeners();
+        TCLScanner scanner = new TCLScanner(texte, nom);
+        scanner.removeErrorListeners();
+        while (true) {
+            Token a = lexer.nextToken();
+            Token b = scanner.nextToken();
+            if (a.getType() != b.getType() || !a.getText().equals(b.getText())
+                    || a.getLine() != b.getLine() || a.getCharPositionInLine() != b.getCharPositionInLine()) {
+                return "attendu " + a + ", obtenu " + b;
+            }
+            if (a.getType() == Token.EOF) return null;
+        }
+    }
+}
@@ -1,76 +1,589 @@
 import Asm.Program;
+import Ast.Ast;
+import Metrics.Metrics;
+import Type.Type;
+import Type.UnknownType;
 import allocReg.AllocationReg;
+import allocReg.NiveauDiagnostic;
 import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.tree.*;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 public class Main {
+    public static final long DEFAULT_SEUIL_FLUX = 16L * 1024 * 1024;
+
+    // Analyse lexicale par grammarTCLLexer (généré par ANTLR) plutôt que par TCLScanner
+    private static boolean lexerAntlr = false;
+    // Taille (en octets) à partir de laquelle un source est analysé en flux
+    private static long seuilFlux = DEFAULT_SEUIL_FLUX;
+    // Typage des fonctions en parallèle quel que soit leur nombre
+    private static boolean typageParallele = false;
+
     public static void main(String[] args) {
+        List<String> options = new ArrayList<>(List.of(args));
+        lexerAntlr = options.remove("--lexer-antlr");
+        if (options.remove("--flux")) {
+            seuilFlux = 0;
+        }
+        typageParallele = options.remove("--typage-parallele");
+        if (typageParallele) {
+            TyperVisitor.setSeuilParallele(0);
+        }
+        args = options.toArray(new String[0]);
+
         if (args.length < 1) {
-            System.out.println("Usage: java Main <fichier.tcl>");
+            System.out.println("Usage: java Main <fichier.tcl> [--metrics <fichier.json>] [--cache <dossier>] [--dot <dossier>] [--silencieux]");
+            System.out.println("       java Main --batch [-j N] [--metrics] [--cache <dossier>] [--incremental] <fichier.tcl|dossier>...");
+            System.out.println("       java Main --serveur [port] [--cache <dossier>] [--incremental]");
+            System.out.println("Options communes : --lexer-antlr (analyse lexicale par grammarTCLLexer au lieu de TCLScanner)");
+            System.out.println("                   --flux (analyse en flux, par défaut à partir de " + DEFAULT_SEUIL_FLUX / (1024 * 1024) + " Mo)");
+            System.out.println("                   --typage-parallele (typage des fonctions en parallèle, par défaut à partir de "
+                               + TyperVisitor.DEFAULT_SEUIL_PARALLELE + " fonctions)");
+            return;
+        }
+
+        if (args[0].equals("--batch")) {
+            System.exit(compilerEnLot(args));
+        }
+
+        if (args[0].equals("--serveur")) {
+            try {
+                int port = CompileServer.DEFAULT_PORT;
+                CompileCache cache = null;
+                FunctionCache functionCache = null;
+                for (int i = 1; i < args.length; i++) {
+                    if (args[i].equals("--cache") && i + 1 < args.length) {
+                        cache = new CompileCache(Path.of(args[++i]), CompileCache.DEFAULT_MAX_BYTES);
+                    } else if (args[i].equals("--incremental")) {
+                        functionCache = new FunctionCache(FunctionCache.DEFAULT_MAX_ENTRIES);
+                    } else {
+                        port = Integer.parseInt(args[i]);
+                    }
+                }
+                new CompileServer(port, cache, functionCache).run();
+            } catch (IOException e) {
+                System.err.println("Impossible de démarrer le serveur : " + e.getMessage());
+                System.exit(1);
+            } catch (NumberFormatException e) {
+                System.err.println("Port invalide : " + e.getMessage());
+                System.exit(1);
+            }
             return;
         }
 
         String sourceFile = args[0];
+        Path metricsFile = null;
+        String cacheDir = null;
+        Path dotDir = null;
+        boolean verbose = true;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--silencieux")) {
+                verbose = false;
+            } else if (i + 1 < args.length) {
+                if (args[i].equals("--metrics")) {
+                    metricsFile = Path.of(args[++i]);
+                } else if (args[i].equals("--cache")) {
+                    cacheDir = args[++i];
+                } else if (args[i].equals("--dot")) {
+                    dotDir = Path.of(args[++i]);
+                }
+            }
+        }
 
+        int status = 0;
         try {
-            // 1) Analyse lexicale / syntaxique
-            CharStream input = CharStreams.fromFileName(sourceFile);
-            grammarTCLLexer lexer = new grammarTCLLexer(input);
-            CommonTokenStream tokens = new CommonTokenStream(lexer);
-            grammarTCLParser parser = new grammarTCLParser(tokens);
+            CompileCache cache = cacheDir == null ? null : new CompileCache(Path.of(cacheDir), CompileCache.DEFAULT_MAX_BYTES);
+            status = compiler(sourceFile, Path.of("prog.asm"), verbose, cache, null, dotDir);
+        } catch (IOException e) {
+            System.err.println("Erreur de lecture ou d'écriture : " + e.getMessage());
+            status = 1;
+        } catch (SemanticError e) {
+            System.err.println(e.getMessage());
+            status = 1;
+        } catch (Exception e) {
+            e.printStackTrace();
+            status = 1;
+        }
 
-            ParseTree tree = parser.main();
+        if (metricsFile != null) {
+            ecrireMetrics(metricsFile);
+        }
+        if (status == 1) {
+            System.exit(1);
+        }
+    }
 
-            if (parser.getNumberOfSyntaxErrors() > 0) {
+    /**
+     * Compile un fichier source jusqu'au code assembleur final, sans export DOT.
+     * @see #compiler(String, Path, boolean, CompileCache, FunctionCache, Path)
+     */
+    static int compiler(String sourceFile, Path output, boolean verbose, CompileCache cache,
+                        FunctionCache functionCache) throws IOException {
+        return compiler(sourceFile, output, verbose, cache, functionCache, null);
+    }
+
+    /**
+     * Compile un fichier source jusqu'au code assembleur final.
+     * Toutes les données de la compilation sont locales à l'appel : plusieurs
+     * compilations peuvent tourner en parallèle sur des threads différents.
+     * @param sourceFile fichier .tcl à compiler
+     * @param output fichier assembleur à produire
+     * @param verbose affiche le détail de l'allocation et le code final (sinon rien n'est affiché)
+     * @param cache cache du code final (null pour toujours compiler)
+     * @param functionCache cache par fonction du typage et du code généré (null pour tout refaire)
+     * @param dotDir dossier où exporter les graphes de l'allocation au format DOT (null pour ne pas les exporter)
+     * @return 0 si la compilation a abouti, 1 en cas d'erreur de syntaxe, 2 si l'allocation a échoué
+     */
+    static int compiler(String sourceFile, Path output, boolean verbose, CompileCache cache,
+                        FunctionCache functionCache, Path dotDir) throws IOException {
+        UnknownType.resetCounter();
+        Type.resetInterned();
+        Metrics.reset();
+
+        Path source = Path.of(sourceFile);
+        if (Files.size(source) >= seuilFlux) {
+            try (FileChannel channel = FileChannel.open(source);
+                 InputStream in = lexerAntlr ? Files.newInputStream(source) : null) {
+                MappedByteBuffer octets = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                String cle = cache == null ? null : cache.cle(octets, optionsCle(true));
+                if (recupererDuCache(cache, cle, output, verbose)) {
+                    return 0;
+                }
+                Program program = lexerAntlr
+                        ? analyserEnFlux(antlrEnFlux(in, sourceFile), functionCache)
+                        : analyserEnFlux(new TCLScanner(octets, sourceFile), functionCache);
+                if (program == null) {
+                    System.err.println("Erreur(s) de syntaxe dans " + sourceFile);
+                    return 1;
+                }
+                if (verbose) {
+                    System.out.println("Le code est correctement typé.");
+                }
+                return allouer(program, output, verbose, cache, cle, dotDir);
+            }
+        }
+
+        String texte = Files.readString(source);
+        String cle = cache == null ? null : cache.cle(texte, optionsCle(false));
+        if (recupererDuCache(cache, cle, output, verbose)) {
+            return 0;
+        }
+
+        // 1) Analyse lexicale / syntaxique
+        TokenSource lexer = lexerAntlr
+                ? new grammarTCLLexer(CharStreams.fromString(texte, sourceFile))
+                : new TCLScanner(texte, sourceFile);
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        Metrics.debut("lex");
+        try {
+            tokens.fill();
+        } finally {
+            Metrics.fin();
+        }
+
+        // 2) Analyse syntaxique directe en Ast, sans arbre d'ANTLR ni récursion (voir AstParser)
+        Ast ast = new Ast();
+        int racine;
+        Metrics.debut("parse");
+        try {
+            racine = new AstParser(ast, tokens).main();
+        } finally {
+            Metrics.fin();
+        }
+        if (racine < 0) {
+            // Erreur de syntaxe : le parser d'ANTLR refait l'analyse (en mode LL, avec la récupération
+            // d'erreurs habituelle) pour la signaler
+            tokens.seek(0);
+            grammarTCLParser parser = new grammarTCLParser(tokens);
+            ParseTree tree;
+            Metrics.debut("parse");
+            try {
+                tree = parser.main();
+            } catch (StackOverflowError e) {
+                // Source trop imbriqué pour le parser récursif d'ANTLR
+                tree = null;
+            } finally {
+                Metrics.fin();
+            }
+            if (tree == null || parser.getNumberOfSyntaxErrors() > 0) {
                 System.err.println("Erreur(s) de syntaxe dans " + sourceFile);
-                System.exit(1);
+                return 1;
             }
+            Metrics.count("parse.directFallbacks");
+            ast = new Ast();
+            Metrics.debut("lower");
+            try {
+                racine = new AstBuilder(ast).visit(tree);
+            } finally {
+                Metrics.fin();
+            }
+        }
+        tokens = null;
 
-            // 2) Typage
-            TyperVisitor typer = new TyperVisitor();
-            typer.visit(tree);
+        // 3) Typage
+        TyperVisitor typer = new TyperVisitor(ast, functionCache);
+        Metrics.debut("typer");
+        try {
+            typer.visit(racine);
+        } finally {
+            Metrics.fin();
+        }
+        if (verbose) {
             System.out.println("Le code est correctement typé.");
+        }
+
+        // 4) Génération de code linéaire
+        CodeGenerator generator = new CodeGenerator(ast, typer.getTypesNoeuds(), functionCache);
+        Program program;
+        Metrics.debut("codegen");
+        try {
+            program = generator.visit(racine);
+        } finally {
+            Metrics.fin();
+        }
 
-            // 3) Génération de code linéaire
-            CodeGenerator generator = new CodeGenerator(typer.getSymbolTable());
-            Program program = generator.visit(tree);
+        return allouer(program, output, verbose, cache, cle, dotDir);
+    }
 
-            String asmLin = "code_semi_compile.asm";
-            try (FileWriter writer = new FileWriter(asmLin)) {
-                writer.write(program.toString());
-            } catch (IOException e) {
-                e.printStackTrace();
+    /**
+     * Options de la compilation en cours qui peuvent changer le code produit, pour la clé du cache
+     * @param enFlux le source est analysé en flux
+     * @return String options, toujours dans le même ordre
+     */
+    private static String optionsCle(boolean enFlux) {
+        return (lexerAntlr ? "--lexer-antlr " : "") + (enFlux ? "--flux " : "")
+                + (typageParallele ? "--typage-parallele" : "");
+    }
+
+    /**
+     * Copie le code final depuis le cache s'il y est
+     * @return true si output a été produit depuis le cache
+     */
+    private static boolean recupererDuCache(CompileCache cache, String cle, Path output, boolean verbose) throws IOException {
+        if (cache == null) {
+            return false;
+        }
+        if (cache.recuperer(cle, output)) {
+            Metrics.count("cache.hits");
+            if (verbose) {
+                System.out.println("Code assembleur récupéré depuis le cache : " + output);
             }
+            return true;
+        }
+        Metrics.count("cache.misses");
+        return false;
+    }
 
-            // 4) Allocation de registres sur le code linéaire
-            AllocationReg alloc = new AllocationReg(asmLin);
+    /**
+     * Analyse en flux, pour les gros sources : les tokens ne sont pas conservés (UnbufferedTokenStream)
+     * et chaque fonction est traduite en Ast, typée et générée dès qu'elle est analysée, puis oubliée.
+     * Le code produit est identique à celui de l'analyse complète, les fonctions ne dépendant que
+     * des fonctions déclarées avant elles. Chaque fonction est analysée par AstParser ; les tokens de la
+     * fonction en cours sont marqués pour que, en cas d'erreur, le parser d'ANTLR (directement en mode LL)
+     * la reprenne et signale l'erreur.
+     * @param lexer source des tokens
+     * @param functionCache cache par fonction du typage et du code généré (null pour tout refaire)
+     * @return le code linéaire du programme, ou null en cas d'erreur de syntaxe
+     */
+    private static Program analyserEnFlux(TokenSource lexer, FunctionCache functionCache) {
+        UnbufferedTokenStream<Token> tokens = new UnbufferedTokenStream<>(lexer);
+        grammarTCLParser parser = new grammarTCLParser(tokens);
+        Ast ast = new Ast();
+        AstParser direct = new AstParser(ast, tokens);
+        AstBuilder builder = new AstBuilder(ast);
+        TyperVisitor typer = new TyperVisitor(ast, functionCache);
+        CodeGenerator generator = new CodeGenerator(ast, typer.getTypesNoeuds(), functionCache);
+
+        typer.declarerMain();
+        Program program = generator.debutMain();
+
+        while (tokens.LA(1) != grammarTCLParser.T__7 && tokens.LA(1) != Token.EOF) {
+            int fct;
+            int marque = tokens.mark();
+            int debut = tokens.index();
+            Metrics.debut("parse");
+            try {
+                fct = direct.declFct();
+            } finally {
+                Metrics.fin();
+            }
+            if (fct < 0) {
+                // Erreur de syntaxe : le parser d'ANTLR reprend la fonction pour la signaler
+                tokens.seek(debut);
+                ast.vider();
+                grammarTCLParser.Decl_fctContext ctx;
+                Metrics.debut("parse");
+                try {
+                    ctx = parser.decl_fct();
+                } finally {
+                    Metrics.fin();
+                }
+                if (parser.getNumberOfSyntaxErrors() > 0) {
+                    return null;
+                }
+                Metrics.count("parse.directFallbacks");
+                Metrics.debut("lower");
+                try {
+                    fct = builder.visit(ctx);
+                } finally {
+                    Metrics.fin();
+                }
+            }
+            tokens.release(marque);
+            Metrics.debut("typer");
+            try {
+                typer.visit(fct);
+            } finally {
+                Metrics.fin();
+            }
+            generator.setTypesNoeuds(typer.getTypesNoeuds());
+            Metrics.debut("codegen");
+            try {
+                program.addInstructions(generator.visit(fct));
+            } finally {
+                Metrics.fin();
+            }
+            ast.vider();
+        }
+
+        int corps;
+        Metrics.debut("parse");
+        try {
+            if (!attendre(parser, grammarTCLParser.T__7, "'int main()'")) {
+                return null;
+            }
+            int marque = tokens.mark();
+            int debut = tokens.index();
+            corps = direct.coreFct();
+            if (corps < 0) {
+                tokens.seek(debut);
+                ast.vider();
+                grammarTCLParser.Core_fctContext ctx = parser.core_fct();
+                if (parser.getNumberOfSyntaxErrors() > 0) {
+                    return null;
+                }
+                Metrics.count("parse.directFallbacks");
+                corps = builder.visit(ctx);
+            }
+            tokens.release(marque);
+            if (!attendre(parser, Token.EOF, "<EOF>")) {
+                return null;
+            }
+        } finally {
+            Metrics.fin();
+        }
+        Metrics.debut("typer");
+        try {
+            typer.typerCorpsMain(corps);
+        } finally {
+            Metrics.fin();
+        }
+        generator.setTypesNoeuds(typer.getTypesNoeuds());
+        Metrics.debut("codegen");
+        try {
+            program.addInstructions(generator.corpsMain(corps));
+        } finally {
+            Metrics.fin();
+        }
+        return program;
+    }
+
+    // Consomme le token attendu hors de toute règle, ou signale l'erreur comme le ferait le parser
+    private static boolean attendre(grammarTCLParser parser, int type, String attendu) {
+        Token t = parser.getCurrentToken();
+        if (t.getType() != type) {
+            String texte = t.getType() == Token.EOF ? "<EOF>" : t.getText();
+            parser.notifyErrorListeners(t, "mismatched input '" + texte + "' expecting " + attendu, null);
+            return false;
+        }
+        if (type != Token.EOF) {
+            parser.getInputStream().consume();
+        }
+        return true;
+    }
+
+    // Lexer ANTLR sur un flux de caractères non bufferisé (les tokens copient leur texte)
+    private static TokenSource antlrEnFlux(InputStream in, String sourceFile) {
+        grammarTCLLexer lexer = new grammarTCLLexer(new UnbufferedCharStream(in) {
+            @Override
+            public String getSourceName() {
+                return sourceFile;
+            }
+        });
+        lexer.setTokenFactory(new CommonTokenFactory(true));
+        return lexer;
+    }
+
+    /**
+     * Allocation de registres sur le code linéaire et écriture du code final, mis en cache
+     * seulement une fois écrit
+     * @return 0 si l'allocation a abouti, 2 sinon
+     * @throws IOException si le code final ne peut pas être écrit
+     */
+    private static int allouer(Program program, Path output, boolean verbose, CompileCache cache,
+                               String cle, Path dotDir) throws IOException {
+        // 4) Allocation de registres sur le code linéaire (directement en mémoire)
+        AllocationReg alloc = new AllocationReg(program, verbose ? NiveauDiagnostic.DEBUG : NiveauDiagnostic.SILENCIEUX);
+        if (verbose) {
             alloc.afficherDebug();
+        }
+        if (dotDir != null) {
+            alloc.exporterDot(dotDir);
+        }
 
-            if (alloc.is32Colorable()) {
+        if (alloc.is32Colorable()) {
+            if (verbose) {
                 System.out.println("CODE ASSEMBLEUR FINAL");
                 String codeFinal = alloc.reecriture();
                 System.out.println(codeFinal);
+                alloc.reecritureOutput(output, codeFinal);
+            } else {
+                alloc.reecritureOutput(output);
+            }
+            if (cache != null) {
+                cache.stocker(cle, output);
+            }
 
-                alloc.reecritureOutput(); // écrit prog.asm
-
+            if (verbose) {
                 System.out.println("Le code peut-être éxécuté avec: python3 simproc.py");
-            } else {
-                System.out.println("Impossible d'allouer les registres");
-                System.out.println("Le programme nécessite plus de 32 registres");
-                System.out.println("L'allocation a échoué");
             }
+        } else {
+            System.out.println("Impossible d'allouer les registres");
+            System.out.println("Le programme nécessite plus de 32 registres");
+            System.out.println("L'allocation a échoué");
+            return 2;
+        }
+        return 0;
+    }
 
+    /**
+     * Mode lot : compile en parallèle tous les fichiers donnés (ou les .tcl des dossiers donnés)
+     * sur un nombre borné de threads. Chaque fichier x.tcl produit son propre x.asm
+     * (et x.metrics.json avec l'option --metrics).
+     * @param args arguments de la ligne de commande (commençant par --batch)
+     * @return 0 si toutes les compilations ont abouti, 1 sinon
+     */
+    private static int compilerEnLot(String[] args) {
+        int nbThreads = Runtime.getRuntime().availableProcessors();
+        boolean metrics = false;
+        CompileCache cache = null;
+        FunctionCache functionCache = null;
+        List<Path> sources = new ArrayList<>();
+
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("-j") && i + 1 < args.length) {
+                    nbThreads = Math.max(1, Integer.parseInt(args[++i]));
+                } else if (args[i].equals("--metrics")) {
+                    metrics = true;
+                } else if (args[i].equals("--cache") && i + 1 < args.length) {
+                    cache = new CompileCache(Path.of(args[++i]), CompileCache.DEFAULT_MAX_BYTES);
+                } else if (args[i].equals("--incremental")) {
+                    functionCache = new FunctionCache(FunctionCache.DEFAULT_MAX_ENTRIES);
+                } else {
+                    Path p = Path.of(args[i]);
+                    if (Files.isDirectory(p)) {
+                        try (Stream<Path> fichiers = Files.walk(p)) {
+                            fichiers.filter(f -> f.toString().endsWith(".tcl")).sorted().forEach(sources::add);
+                        }
+                    } else {
+                        sources.add(p);
+                    }
+                }
+            }
         } catch (IOException e) {
             System.err.println("Erreur de lecture : " + e.getMessage());
+            return 1;
+        } catch (NumberFormatException e) {
+            System.err.println("Nombre de threads invalide : " + e.getMessage());
+            return 1;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(nbThreads);
+        List<Future<Boolean>> resultats = new ArrayList<>();
+        boolean avecMetrics = metrics;
+        CompileCache cacheLot = cache;
+        FunctionCache functionCacheLot = functionCache;
+        for (Path source : sources) {
+            resultats.add(pool.submit(() -> compilerFichier(source, avecMetrics, cacheLot, functionCacheLot)));
+        }
+        pool.shutdown();
+
+        int nbEchecs = 0;
+        for (Future<Boolean> resultat : resultats) {
+            try {
+                if (!resultat.get()) nbEchecs++;
+            } catch (InterruptedException | ExecutionException e) {
+                nbEchecs++;
+            }
+        }
+
+        System.out.println(sources.size() + " fichier(s) compilé(s), " + nbEchecs + " échec(s)");
+        return nbEchecs == 0 ? 0 : 1;
+    }
+
+    /**
+     * Compile un fichier du lot, sans jamais interrompre les autres compilations.
+     * @param source fichier .tcl à compiler
+     * @param metrics écrit aussi les mesures de la compilation dans x.metrics.json
+     * @param cache cache du code final (null pour toujours compiler)
+     * @param functionCache cache par fonction du typage et du code généré (null pour tout refaire)
+     * @return true si la compilation a abouti
+     */
+    private static boolean compilerFichier(Path source, boolean metrics, CompileCache cache, FunctionCache functionCache) {
+        Path output = sortiePour(source);
+        boolean ok = false;
+
+        try {
+            ok = compiler(source.toString(), output, false, cache, functionCache) == 0;
+        } catch (IOException e) {
+            System.err.println(source + " : erreur de lecture ou d'écriture : " + e.getMessage());
         } catch (SemanticError e) {
-            System.err.println(e.getMessage());
-            System.exit(1);
+            System.err.println(source + " : " + e.getMessage());
         } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
+            System.err.println(source + " : " + e);
+        }
+
+        if (metrics) {
+            String nom = output.getFileName().toString();
+            ecrireMetrics(output.resolveSibling(nom.substring(0, nom.length() - 4) + ".metrics.json"));
         }
+        return ok;
+    }
+
+    /**
+     * Écrit en JSON les mesures de la dernière compilation du thread courant
+     * @param fichier fichier JSON à produire
+     */
+    private static void ecrireMetrics(Path fichier) {
+        try {
+            Files.writeString(fichier, Metrics.current().toJson());
+        } catch (IOException e) {
+            System.err.println("Erreur lors de l'écriture des mesures : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fichier assembleur associé à un source : x.tcl produit x.asm dans le même dossier
+     * @param source fichier .tcl
+     * @return chemin du fichier assembleur
+     */
+    static Path sortiePour(Path source) {
+        String nom = source.getFileName().toString();
+        String nomSortie = (nom.endsWith(".tcl") ? nom.substring(0, nom.length() - 4) : nom) + ".asm";
+        return source.resolveSibling(nomSortie);
     }
 }
@@ -0,0 +1,189 @@
+package Metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Mesures d'une compilation : temps et octets alloués par phase, et compteurs.
+ * Chaque thread a sa propre instance (une compilation = un thread), remise à zéro
+ * au début de chaque compilation par reset(). Le travail confié à d'autres threads
+ * (typage parallèle) est mesuré à part puis ajouté par addAll.
+ *
+ * Utilisation :
+ * <pre>
+ * Metrics.debut("parse");
+ * try { ... } finally { Metrics.fin(); }
+ * Metrics.count("typer.solve");
+ * </pre>
+ */
+public class Metrics {
+    private static final ThreadLocal<Metrics> current = ThreadLocal.withInitial(Metrics::new);
+    // phases commencées et pas encore terminées sur ce thread, la plus récente en tête
+    private static final ThreadLocal<ArrayDeque<Phase>> enCours = ThreadLocal.withInitial(ArrayDeque::new);
+    private static final com.sun.management.ThreadMXBean threadBean = initThreadBean();
+
+    // nom de phase -> {nombre d'appels, durée en ns, octets alloués}
+    private final LinkedHashMap<String, long[]> phases = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Long> counters = new LinkedHashMap<>();
+
+    private static com.sun.management.ThreadMXBean initThreadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean;
+            }
+        }
+        return null;
+    }
+
+    private static long allocatedBytes() {
+        return threadBean == null ? 0 : threadBean.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Mesures de la compilation en cours sur ce thread
+     * @return Metrics du thread courant
+     */
+    public static Metrics current() {
+        return current.get();
+    }
+
+    /**
+     * Commence une nouvelle série de mesures sur ce thread
+     * @return les nouvelles Metrics du thread courant
+     */
+    public static Metrics reset() {
+        Metrics m = new Metrics();
+        current.set(m);
+        return m;
+    }
+
+    /**
+     * Remplace les mesures du thread courant, par exemple pour les rétablir après reset()
+     * @param m Metrics à utiliser sur ce thread
+     */
+    public static void set(Metrics m) {
+        current.set(m);
+    }
+
+    /**
+     * Ajoute à ces mesures celles d'une autre série (travail fait pour cette compilation sur
+     * un autre thread). Les nouvelles phases et les nouveaux compteurs sont ajoutés à la suite.
+     * @param autre mesures à ajouter
+     */
+    public void addAll(Metrics autre) {
+        for (Map.Entry<String, long[]> e : autre.phases.entrySet()) {
+            long[] m = phases.computeIfAbsent(e.getKey(), k -> new long[3]);
+            for (int i = 0; i < 3; i++) m[i] += e.getValue()[i];
+        }
+        for (Map.Entry<String, Long> e : autre.counters.entrySet()) {
+            counters.merge(e.getKey(), e.getValue(), Long::sum);
+        }
+    }
+
+    /**
+     * Démarre la mesure d'une phase sur ce thread, terminée par fin()
+     * @param name nom de la phase
+     */
+    public static void debut(String name) {
+        enCours.get().push(new Phase(current(), name));
+    }
+
+    /**
+     * Termine la dernière phase démarrée sur ce thread et l'ajoute aux mesures
+     * où elle a commencé
+     */
+    public static void fin() {
+        enCours.get().pop().terminer();
+    }
+
+    /**
+     * Incrémente un compteur de la compilation en cours
+     * @param name nom du compteur
+     */
+    public static void count(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * Ajoute une valeur à un compteur de la compilation en cours
+     * @param name nom du compteur
+     * @param n valeur à ajouter
+     */
+    public static void add(String name, long n) {
+        current().counters.merge(name, n, Long::sum);
+    }
+
+    /**
+     * Getter d'un compteur
+     * @param name nom du compteur
+     * @return valeur du compteur (0 s'il n'a jamais été incrémenté)
+     */
+    public long getCounter(String name) {
+        return counters.getOrDefault(name, 0L);
+    }
+
+    /**
+     * Getter de la durée cumulée d'une phase
+     * @param name nom de la phase
+     * @return durée en nanosecondes (0 si la phase n'a pas été mesurée)
+     */
+    public long getWallNanos(String name) {
+        long[] m = phases.get(name);
+        return m == null ? 0 : m[1];
+    }
+
+    /**
+     * Conversion en JSON
+     * @return String objet JSON {"phases": {...}, "counters": {...}}
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\n  \"phases\": {");
+        String sep = "\n";
+        for (Map.Entry<String, long[]> e : phases.entrySet()) {
+            long[] m = e.getValue();
+            sb.append(sep).append("    \"").append(e.getKey()).append("\": {")
+              .append("\"calls\": ").append(m[0])
+              .append(", \"wallNanos\": ").append(m[1])
+              .append(", \"allocatedBytes\": ").append(m[2]).append("}");
+            sep = ",\n";
+        }
+        sb.append("\n  },\n  \"counters\": {");
+        sep = "\n";
+        for (Map.Entry<String, Long> e : counters.entrySet()) {
+            sb.append(sep).append("    \"").append(e.getKey()).append("\": ").append(e.getValue());
+            sep = ",\n";
+        }
+        sb.append("\n  }\n}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Mesure en cours d'une phase
+     */
+    private static class Phase {
+        private final Metrics metrics;
+        private final String name;
+        private final long startNanos;
+        private final long startBytes;
+
+        private Phase(Metrics metrics, String name) {
+            this.metrics = metrics;
+            this.name = name;
+            this.startBytes = allocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+
+        private void terminer() {
+            long nanos = System.nanoTime() - startNanos;
+            long bytes = allocatedBytes() - startBytes;
+            long[] m = metrics.phases.computeIfAbsent(name, k -> new long[3]);
+            m[0]++;
+            m[1] += nanos;
+            m[2] += bytes;
+        }
+    }
+}
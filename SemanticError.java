@@ -3,6 +3,10 @@ import org.antlr.v4.runtime.ParserRuleContext;
 public class SemanticError extends RuntimeException {
 
     public SemanticError(ParserRuleContext ctx, String message) {
-        super("Erreur ligne " + ctx.getStart().getLine() + " : " + message);
+        this(ctx.getStart().getLine(), message);
+    }
+
+    public SemanticError(int ligne, String message) {
+        super("Erreur ligne " + ligne + " : " + message);
     }
 }
\ No newline at end of file
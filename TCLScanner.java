@@ -0,0 +1,378 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Pair;
+
+/**
+ * Analyseur lexical écrit à la main pour la grammaire TCL, équivalent à grammarTCLLexer
+ * (mêmes types de tokens, même règle du plus long préfixe, mêmes erreurs) mais sans simulation
+ * de l'ATN caractère par caractère.
+ *
+ * Deux façons de l'utiliser :
+ * - next() avance au token suivant et renvoie son type, sans rien allouer ; la position du token
+ *   est donnée par getStartIndex(), getStopIndex(), getLine() et getCharPositionInLine() ;
+ * - en mode compatibilité, c'est un TokenSource qui alimente grammarTCLParser à travers un
+ *   CommonTokenStream, à la place de grammarTCLLexer.
+ */
+public class TCLScanner implements TokenSource {
+    private static final String INT_MAIN = "int main()";
+
+    // caractères du source, ou à défaut ses octets UTF-8 (lus sur place, ex. fichier projeté en mémoire)
+    private final char[] data;
+    private final ByteBuffer bytes;
+    private final int length;
+    private final String sourceName;
+    private final List<ANTLRErrorListener> listeners = new ArrayList<>();
+    private Pair<TokenSource, CharStream> source;
+    private CharStream input;
+
+    // position courante
+    private int pos = 0;
+    private int line = 1;
+    private int column = 0;
+
+    // dernier token lu
+    private int start;
+    private int stop;
+    private int tokenLine;
+    private int tokenColumn;
+
+    /**
+     * Constructeur
+     * @param data caractères du source (non copiés)
+     * @param length nombre de caractères à analyser
+     * @param sourceName nom du source, pour les messages d'erreur
+     */
+    public TCLScanner(char[] data, int length, String sourceName) {
+        this.data = data;
+        this.bytes = null;
+        this.length = length;
+        this.sourceName = sourceName;
+        this.listeners.add(ConsoleErrorListener.INSTANCE);
+    }
+
+    /**
+     * Constructeur
+     * @param source texte du source
+     * @param sourceName nom du source, pour les messages d'erreur
+     */
+    public TCLScanner(String source, String sourceName) {
+        this(source.toCharArray(), source.length(), sourceName);
+    }
+
+    /**
+     * Constructeur à partir d'octets UTF-8, entre position() et limit(), lus sur place sans copie :
+     * les indices des tokens sont alors des indices d'octets
+     * @param bytes octets du source (la position du buffer n'est pas modifiée)
+     * @param sourceName nom du source, pour les messages d'erreur
+     */
+    public TCLScanner(ByteBuffer bytes, String sourceName) {
+        this.data = null;
+        this.bytes = bytes.slice();
+        this.length = this.bytes.remaining();
+        this.sourceName = sourceName;
+        this.listeners.add(ConsoleErrorListener.INSTANCE);
+    }
+
+    // Tous les tokens sont en ASCII : un octet UTF-8 >= 0x80 n'appartient qu'à un caractère invalide
+    private char at(int i) {
+        return data != null ? data[i] : (char) (bytes.get(i) & 0xFF);
+    }
+
+    private String texte(int debut, int fin) {
+        if (data != null) return new String(data, debut, fin - debut);
+        return StandardCharsets.UTF_8.decode(bytes.slice(debut, fin - debut)).toString();
+    }
+
+    /**
+     * Avance au token suivant (les blancs sont ignorés, les caractères invalides signalés puis ignorés)
+     * @return int type du token (constantes de grammarTCLParser), Token.EOF à la fin du source
+     */
+    public int next() {
+        while (true) {
+            start = pos;
+            tokenLine = line;
+            tokenColumn = column;
+            if (pos >= length) {
+                stop = pos - 1;
+                return Token.EOF;
+            }
+
+            char c = at(pos);
+            switch (c) {
+                case ' ': case '\t': case '\r': case '\n':
+                    while (pos < length && estBlanc(at(pos))) {
+                        avancer();
+                    }
+                    continue;
+                case '(': return token(1, grammarTCLParser.T__0);
+                case ')': return token(1, grammarTCLParser.T__1);
+                case '{': return token(1, grammarTCLParser.T__2);
+                case ',': return token(1, grammarTCLParser.T__3);
+                case '}': return token(1, grammarTCLParser.T__4);
+                case '[': return token(1, grammarTCLParser.T__5);
+                case ']': return token(1, grammarTCLParser.T__6);
+                case ';': return token(1, grammarTCLParser.SEMICOL);
+                case '*': return token(1, grammarTCLParser.MUL);
+                case '/': return token(1, grammarTCLParser.DIV);
+                case '%': return token(1, grammarTCLParser.MODULO);
+                case '+': return token(1, grammarTCLParser.ADD);
+                case '>': return suivant('=') ? token(2, grammarTCLParser.SUPEQ) : token(1, grammarTCLParser.SUP);
+                case '<': return suivant('=') ? token(2, grammarTCLParser.INFEQ) : token(1, grammarTCLParser.INF);
+                case '=': return suivant('=') ? token(2, grammarTCLParser.EQUALS) : token(1, grammarTCLParser.ASSIGN);
+                case '!': return suivant('=') ? token(2, grammarTCLParser.DIFF) : token(1, grammarTCLParser.NOT);
+                case '|':
+                    if (suivant('|')) return token(2, grammarTCLParser.OR);
+                    erreurPrefixe();
+                    continue;
+                case '&':
+                    if (suivant('&')) return token(2, grammarTCLParser.AND);
+                    erreurPrefixe();
+                    continue;
+                case '-':
+                    if (pos + 1 < length && estChiffre(at(pos + 1))) return entier(pos + 1);
+                    return token(1, grammarTCLParser.SUB);
+                default:
+                    if (estChiffre(c)) return entier(pos);
+                    if (estDebutIdentifiant(c)) return identifiant();
+                    erreurCaractere();
+            }
+        }
+    }
+
+    private int entier(int i) {
+        while (i < length && estChiffre(at(i))) i++;
+        return token(i - pos, grammarTCLParser.INT);
+    }
+
+    private int identifiant() {
+        if (at(pos) == 'i' && pos + INT_MAIN.length() <= length && commencePar(INT_MAIN)) {
+            return token(INT_MAIN.length(), grammarTCLParser.T__7);
+        }
+        int i = pos + 1;
+        while (i < length && estSuiteIdentifiant(at(i))) i++;
+        return token(i - pos, motCle(pos, i - pos));
+    }
+
+    // Les mots-clés l'emportent sur VAR à longueur égale (règles déclarées avant VAR)
+    private int motCle(int debut, int n) {
+        switch (n) {
+            case 2:
+                if (egal(debut, "if")) return grammarTCLParser.IF;
+                break;
+            case 3:
+                if (egal(debut, "int")) return grammarTCLParser.BASE_TYPE;
+                if (egal(debut, "for")) return grammarTCLParser.FOR;
+                break;
+            case 4:
+                if (egal(debut, "true")) return grammarTCLParser.BOOL;
+                if (egal(debut, "bool") || egal(debut, "auto")) return grammarTCLParser.BASE_TYPE;
+                if (egal(debut, "else")) return grammarTCLParser.ELSE;
+                break;
+            case 5:
+                if (egal(debut, "false")) return grammarTCLParser.BOOL;
+                if (egal(debut, "print")) return grammarTCLParser.PRINT;
+                if (egal(debut, "while")) return grammarTCLParser.WHILE;
+                break;
+            case 6:
+                if (egal(debut, "return")) return grammarTCLParser.RETURN;
+                break;
+        }
+        return grammarTCLParser.VAR;
+    }
+
+    private boolean egal(int debut, String mot) {
+        for (int i = 0; i < mot.length(); i++) {
+            if (at(debut + i) != mot.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private boolean commencePar(String mot) {
+        return egal(pos, mot);
+    }
+
+    private boolean suivant(char c) {
+        return pos + 1 < length && at(pos + 1) == c;
+    }
+
+    private int token(int n, int type) {
+        stop = pos + n - 1;
+        pos += n;
+        column += n;
+        return type;
+    }
+
+    private void avancer() {
+        if (at(pos) == '\n') {
+            line++;
+            column = 0;
+        } else {
+            column++;
+        }
+        pos++;
+    }
+
+    // Caractère qui ne commence aucun token : signalé puis ignoré (un point de code)
+    private void erreurCaractere() {
+        char c = at(pos);
+        avancer();
+        if (data == null && c >= 0x80) {
+            // suite d'octets d'un même caractère UTF-8
+            int n = c >= 0xF0 ? 3 : c >= 0xE0 ? 2 : c >= 0xC0 ? 1 : 0;
+            pos = Math.min(pos + n, length);
+        } else if (Character.isHighSurrogate(c) && pos < length && Character.isLowSurrogate(at(pos))) {
+            pos++;
+        }
+        signaler(start, pos);
+    }
+
+    // '|' ou '&' isolé : comme grammarTCLLexer, le caractère suivant fait partie de l'erreur et est ignoré aussi
+    private void erreurPrefixe() {
+        avancer();
+        if (pos < length) {
+            erreurCaractere();
+        } else {
+            signaler(start, pos);
+        }
+    }
+
+    private void signaler(int debut, int fin) {
+        StringBuilder msg = new StringBuilder("token recognition error at: '");
+        String texte = texte(debut, fin);
+        for (int i = 0; i < texte.length(); i++) {
+            switch (texte.charAt(i)) {
+                case '\n': msg.append("\\n"); break;
+                case '\t': msg.append("\\t"); break;
+                case '\r': msg.append("\\r"); break;
+                default: msg.append(texte.charAt(i));
+            }
+        }
+        msg.append("'");
+        for (ANTLRErrorListener listener : listeners) {
+            listener.syntaxError(null, null, tokenLine, tokenColumn, msg.toString(), null);
+        }
+    }
+
+    private static boolean estBlanc(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    private static boolean estChiffre(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean estDebutIdentifiant(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean estSuiteIdentifiant(char c) {
+        return estDebutIdentifiant(c) || estChiffre(c);
+    }
+
+    /**
+     * Getter de l'indice du premier caractère du dernier token
+     * @return int
+     */
+    public int getStartIndex() {
+        return start;
+    }
+
+    /**
+     * Getter de l'indice du dernier caractère du dernier token
+     * @return int
+     */
+    public int getStopIndex() {
+        return stop;
+    }
+
+    /**
+     * Texte du dernier token (alloue une String)
+     * @return String
+     */
+    public String getText() {
+        return texte(start, stop + 1);
+    }
+
+    /**
+     * Ajoute un listener prévenu des caractères invalides
+     * @param listener listener
+     */
+    public void addErrorListener(ANTLRErrorListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Retire tous les listeners, y compris celui qui affiche les erreurs sur la console
+     */
+    public void removeErrorListeners() {
+        listeners.clear();
+    }
+
+    // --- Mode compatibilité : TokenSource pour grammarTCLParser ---
+
+    @Override
+    public Token nextToken() {
+        if (source == null) {
+            source = new Pair<>(this, null);
+        }
+        int type = next();
+        CommonToken t = new CommonToken(source, type, Token.DEFAULT_CHANNEL, start, stop);
+        t.setLine(tokenLine);
+        t.setCharPositionInLine(tokenColumn);
+        t.setText(type == Token.EOF ? "<EOF>" : getText());
+        return t;
+    }
+
+    /**
+     * Getter de la ligne du dernier token
+     * @return int ligne (à partir de 1)
+     */
+    @Override
+    public int getLine() {
+        return tokenLine;
+    }
+
+    /**
+     * Getter de la colonne du dernier token
+     * @return int colonne (à partir de 0)
+     */
+    @Override
+    public int getCharPositionInLine() {
+        return tokenColumn;
+    }
+
+    @Override
+    public CharStream getInputStream() {
+        if (input == null) {
+            input = CharStreams.fromString(texte(0, length), sourceName);
+        }
+        return input;
+    }
+
+    @Override
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    @Override
+    public void setTokenFactory(TokenFactory<?> factory) {
+        // les tokens sont toujours des CommonToken portant leur texte
+    }
+
+    @Override
+    public TokenFactory<?> getTokenFactory() {
+        return CommonTokenFactory.DEFAULT;
+    }
+}
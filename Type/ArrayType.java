@@ -1,21 +1,57 @@
 package Type;
 
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 
 /**
  * Classe représentant un type tableau.
  * Un ArrayType contient un type des éléments du tableau (tabType).
+ * Les instances sont partagées (hash-consing) : of renvoie le même objet pour le même objet
+ * type des éléments, tant que la table du thread n'est pas vidée (voir Type.resetInterned).
  */
 public class ArrayType extends Type {
+    // Tableaux déjà construits, indexés par l'objet type des éléments, par thread
+    private static final ThreadLocal<IdentityHashMap<Type, ArrayType>> table =
+        ThreadLocal.withInitial(IdentityHashMap::new);
+
     // Le type des éléments contenus dans le tableau
-    private Type tabType;
-    
+    private final Type tabType;
+    // Vrai si le type ne contient aucune variable de type : sa structure ne changera plus
+    final boolean clos;
+    // Hash structurel, calculé une fois à la construction d'un type clos
+    private final int hash;
+
     /**
-     * Constructeur
+     * Constructeur, réservé à of et aux instances de TypeScheme : un type construit sur des
+     * variables fraîches ne peut pas déjà être dans la table, il n'y est pas enregistré
      * @param t type des éléments du tableau
      */
-    public ArrayType(Type t) {
+    ArrayType(Type t) {
         this.tabType = t; // Initialisation du type des éléments
+        this.clos = Type.estClos(t);
+        this.hash = clos ? hacher(t) : 0;
+    }
+
+    /**
+     * Tableau d'éléments de type t, partagé avec les précédents appels pour le même t
+     * @param t type des éléments du tableau
+     * @return ArrayType unique pour t
+     */
+    public static ArrayType of(Type t) {
+        IdentityHashMap<Type, ArrayType> tableThread = table.get();
+        ArrayType a = tableThread.get(t);
+        if (a == null) {
+            a = new ArrayType(t);
+            tableThread.put(t, a);
+        }
+        return a;
+    }
+
+    /**
+     * Vide la table des tableaux du thread courant
+     */
+    static void clearTable() {
+        table.get().clear();
     }
 
     /**
@@ -28,34 +64,60 @@ public class ArrayType extends Type {
 
     /**
      * Méthode de unification des types.
-     * Essaie de faire correspondre ce type avec un autre type.
+     * Essaie de faire correspondre ce type avec un autre type, en liant ses variables de type.
      * @param t type à unifier avec ce tableau
-     * @return une Map associant les UnknownType à leur substitution, ou null si unification impossible
+     * @return true si l'unification a réussi, false sinon
      */
     @Override
-    public Map<UnknownType, Type> unify(Type t) {
-        if (t instanceof ArrayType) { 
+    public boolean unify(Type t) {
+        // Tableaux imbriqués parcourus en boucle : ils peuvent l'être à n'importe quelle profondeur
+        Type a = this;
+        Type b = t.find();
+        while (a instanceof ArrayType && b instanceof ArrayType) {
+            if (a == b) return true; // même instance : rien à lier
             // Si l'autre type est aussi un tableau, on unifie les types des éléments
-            return tabType.unify(((ArrayType) t).tabType);
+            a = ((ArrayType) a).tabType.find();
+            b = ((ArrayType) b).tabType.find();
+        }
+        if (a instanceof ArrayType) {
+            // Si l'autre type est inconnu, on peut le lier à ce type de tableau ; sinon l'unification échoue
+            return b instanceof UnknownType && b.unify(a);
         }
-        if (t instanceof UnknownType) {
-            // Si l'autre type est inconnu, on peut le substituer par ce type de tableau
-            return Map.of((UnknownType) t, this);
+        return a.unify(b);
+    }
+
+    /**
+     * Tableaux imbriqués à partir de a : a, puis le représentant de son type d'éléments tant que
+     * c'est un tableau. Le dernier a un type d'éléments qui n'est pas un tableau.
+     */
+    private static ArrayList<ArrayType> imbriques(ArrayType a) {
+        ArrayList<ArrayType> res = new ArrayList<>();
+        while (true) {
+            res.add(a);
+            Type t = a.tabType.find();
+            if (!(t instanceof ArrayType)) return res;
+            a = (ArrayType) t;
         }
-        // Sinon, l'unification échoue
-        return null;
     }
 
     /**
-     * Substitue un type inconnu par un type concret dans ce tableau.
-     * @param v type inconnu à remplacer
-     * @param t type concret de substitution
-     * @return un nouveau ArrayType avec le type substitué
+     * Copie du tableau avec le type des éléments résolu.
+     * @return un nouveau ArrayType sans variable liée
      */
     @Override
-    public Type substitute(UnknownType v, Type t) {
-        return new ArrayType(tabType.substitute(v, t));
-        // On crée un nouveau ArrayType avec le type des éléments mis à jour
+    public Type resolve() {
+        if (!(tabType.find() instanceof ArrayType)) {
+            Type r = tabType.resolve();
+            return r == tabType ? this : of(r);
+        }
+        // Reconstruit de l'intérieur vers l'extérieur, sans récursion
+        ArrayList<ArrayType> tableaux = imbriques(this);
+        Type r = tableaux.get(tableaux.size() - 1).tabType.resolve();
+        for (int k = tableaux.size() - 1; k >= 0; k--) {
+            ArrayType a = tableaux.get(k);
+            r = r == a.tabType ? a : of(r);
+        }
+        return r;
     }
 
     /**
@@ -65,7 +127,8 @@ public class ArrayType extends Type {
      */
     @Override
     public boolean contains(UnknownType v) {
-        return tabType.contains(v); // Délégation au type des éléments
+        ArrayList<ArrayType> tableaux = imbriques(this);
+        return tableaux.get(tableaux.size() - 1).tabType.find().contains(v); // Délégation au type des éléments
     }
 
     /**
@@ -75,7 +138,50 @@ public class ArrayType extends Type {
      */
     @Override
     public boolean equals(Object o) {
-        return o instanceof ArrayType && tabType.equals(((ArrayType) o).tabType);
+        if (!(o instanceof ArrayType)) return false;
+        ArrayType x = this;
+        ArrayType y = (ArrayType) o;
+        while (true) {
+            if (x == y) return true;
+            if (x.clos && y.clos && x.hash != y.hash) return false;
+            // Représentants : une variable liée depuis la construction vaut le type auquel elle est liée
+            Type tx = x.tabType.find();
+            Type ty = y.tabType.find();
+            if (!(tx instanceof ArrayType) || !(ty instanceof ArrayType)) return tx.equals(ty);
+            x = (ArrayType) tx;
+            y = (ArrayType) ty;
+        }
+    }
+
+    /**
+     * Hash structurel : précalculé pour un type clos, sinon recalculé depuis les représentants,
+     * pour rester égal à celui des tableaux devenus égaux par unification
+     */
+    @Override
+    public int hashCode() {
+        if (clos) return hash;
+        int profondeur = 0;
+        ArrayType a = this;
+        int h;
+        while (true) {
+            if (a.clos) {
+                h = a.hash;
+                break;
+            }
+            profondeur++;
+            Type t = a.tabType.find();
+            if (!(t instanceof ArrayType)) {
+                h = t.hashCode();
+                break;
+            }
+            a = (ArrayType) t;
+        }
+        for (; profondeur > 0; profondeur--) h = 31 * h + 7;
+        return h;
+    }
+
+    private static int hacher(Type t) {
+        return 31 * t.find().hashCode() + 7;
     }
 
     /**
@@ -84,6 +190,9 @@ public class ArrayType extends Type {
      */
     @Override
     public String toString() {
-        return tabType + "[]";
+        ArrayList<ArrayType> tableaux = imbriques(this);
+        StringBuilder sb = new StringBuilder(tableaux.get(tableaux.size() - 1).tabType.toString());
+        for (int k = 0; k < tableaux.size(); k++) sb.append("[]");
+        return sb.toString();
     }
 }
\ No newline at end of file
@@ -2,26 +2,106 @@ package Type;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Classe représentant un type fonction.
  * Une fonction a un type de retour (returnType) et une liste de types d'arguments (argsTypes).
+ * Comme ArrayType, les instances sont partagées : of renvoie le même objet pour les mêmes
+ * objets types de retour et d'arguments.
  */
 public class FunctionType extends Type {
+    // Fonctions déjà construites, indexées par les objets qui les composent, par thread
+    private static final ThreadLocal<HashMap<Cle, FunctionType>> table =
+        ThreadLocal.withInitial(HashMap::new);
+
     // Type de retour de la fonction
-    private Type returnType;
-    // Liste des types des arguments de la fonction
-    private ArrayList<Type> argsTypes;
+    private final Type returnType;
+    // Liste des types des arguments de la fonction (ne doit plus être modifiée)
+    private final ArrayList<Type> argsTypes;
+    // Vrai si le type ne contient aucune variable de type : sa structure ne changera plus
+    final boolean clos;
+    // Hash structurel, calculé une fois à la construction d'un type clos
+    private final int hash;
 
     /**
-     * Constructeur
+     * Clé de la table : les composants comparés par identité
+     */
+    private static final class Cle {
+        private final Type[] composants;
+        private final int hash;
+
+        Cle(Type returnType, ArrayList<Type> argsTypes) {
+            composants = new Type[argsTypes.size() + 1];
+            composants[0] = returnType;
+            int h = System.identityHashCode(returnType);
+            for (int i = 0; i < argsTypes.size(); i++) {
+                composants[i + 1] = argsTypes.get(i);
+                h = 31 * h + System.identityHashCode(composants[i + 1]);
+            }
+            hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Cle)) return false;
+            Type[] autres = ((Cle) o).composants;
+            if (autres.length != composants.length) return false;
+            for (int i = 0; i < composants.length; i++)
+                if (autres[i] != composants[i]) return false;
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Constructeur, réservé à of et aux instances de TypeScheme : un type construit sur des
+     * variables fraîches ne peut pas déjà être dans la table, il n'y est pas enregistré
      * @param returnType type de retour de la fonction
      * @param argsTypes liste des types des arguments
      */
-    public FunctionType(Type returnType, ArrayList<Type> argsTypes) {
+    FunctionType(Type returnType, ArrayList<Type> argsTypes) {
         this.returnType = returnType; // initialisation du type de retour
         this.argsTypes = argsTypes;   // initialisation de la liste des types d'arguments
+        boolean c = Type.estClos(returnType);
+        for (Type arg : argsTypes) c &= Type.estClos(arg);
+        this.clos = c;
+        this.hash = clos ? hacher() : 0;
+    }
+
+    // Hash structurel calculé depuis les représentants des composants
+    private int hacher() {
+        int h = returnType.find().hashCode();
+        for (Type arg : argsTypes) h = 31 * h + arg.find().hashCode();
+        return h;
+    }
+
+    /**
+     * Fonction de type (argsTypes) -> returnType, partagée avec les précédents appels
+     * pour les mêmes objets
+     * @param returnType type de retour de la fonction
+     * @param argsTypes liste des types des arguments (copiée)
+     * @return FunctionType unique pour ces composants
+     */
+    public static FunctionType of(Type returnType, ArrayList<Type> argsTypes) {
+        HashMap<Cle, FunctionType> tableThread = table.get();
+        Cle cle = new Cle(returnType, argsTypes);
+        FunctionType f = tableThread.get(cle);
+        if (f == null) {
+            f = new FunctionType(returnType, new ArrayList<>(argsTypes));
+            tableThread.put(cle, f);
+        }
+        return f;
+    }
+
+    /**
+     * Vide la table des fonctions du thread courant
+     */
+    static void clearTable() {
+        table.get().clear();
     }
 
     // Getter pour le type de retour
@@ -46,56 +126,48 @@ public class FunctionType extends Type {
 
     /**
      * Méthode d'unification des types.
-     * Essaie de faire correspondre cette fonction avec un autre type.
+     * Essaie de faire correspondre cette fonction avec un autre type, en liant ses variables de type.
      * @param t type à unifier
-     * @return map des substitutions de types inconnus ou null si échec
+     * @return true si l'unification a réussi, false sinon
      */
     @Override
-    public Map<UnknownType, Type> unify(Type t) {
-        if (!(t instanceof FunctionType)) {
-            // Si t n'est pas une fonction mais un type inconnu, on peut le substituer
-            if (t instanceof UnknownType) return Map.of((UnknownType) t, this);
-            return null; // sinon l'unification échoue
+    public boolean unify(Type t) {
+        Type autre = t.find();
+        if (autre == this) return true; // même instance : rien à lier
+        if (!(autre instanceof FunctionType)) {
+            // Si t n'est pas une fonction mais un type inconnu, on peut le lier
+            if (autre instanceof UnknownType) return autre.unify(this);
+            return false; // sinon l'unification échoue
         }
 
-        FunctionType ft = (FunctionType) t;
-        if (argsTypes.size() != ft.argsTypes.size()) return null; // nombres d'arguments différents
+        FunctionType ft = (FunctionType) autre;
+        if (argsTypes.size() != ft.argsTypes.size()) return false; // nombres d'arguments différents
 
-        Map<UnknownType, Type> subst = new HashMap<>();
-
-        // Unification des types des arguments un par un
+        // Unification des types des arguments un par un : les liaisons faites pour un argument
+        // s'appliquent d'elles-mêmes aux suivants
         for (int i = 0; i < argsTypes.size(); i++) {
-            // applique les substitutions déjà trouvées pour les types précédents
-            Type a1 = argsTypes.get(i).substituteAll(subst);
-            Type a2 = ft.argsTypes.get(i).substituteAll(subst);
-
-            // unifie les types des arguments
-            Map<UnknownType, Type> s = a1.unify(a2);
-            if (s == null) return null; // échec si un argument ne peut être unifié
-            subst.putAll(s); // ajoute les nouvelles substitutions
+            if (!argsTypes.get(i).find().unify(ft.argsTypes.get(i))) return false;
         }
 
         // Unification des types de retour
-        Type ret1 = returnType.substituteAll(subst);
-        Type ret2 = ft.returnType.substituteAll(subst);
-        Map<UnknownType, Type> sret = ret1.unify(ret2);
-        if (sret == null) return null; // échec si types de retour incompatibles
-        subst.putAll(sret);
-
-        return subst; // retourne la map des substitutions trouvées
+        return returnType.find().unify(ft.returnType);
     }
 
     /**
-     * Substitution d'un type inconnu par un type concret.
+     * Copie de la fonction avec les types des arguments et de retour résolus.
      */
     @Override
-    public Type substitute(UnknownType v, Type t) {
+    public Type resolve() {
         ArrayList<Type> newArgs = new ArrayList<>();
+        boolean inchange = true;
         for (Type arg : argsTypes) {
-            newArgs.add(arg.substitute(v, t)); // applique la substitution à chaque argument
+            Type r = arg.resolve();
+            inchange &= r == arg;
+            newArgs.add(r);
         }
-        // applique la substitution au type de retour
-        return new FunctionType(returnType.substitute(v, t), newArgs);
+        Type newReturn = returnType.resolve();
+        if (inchange && newReturn == returnType) return this;
+        return of(newReturn, newArgs);
     }
 
     /**
@@ -103,8 +175,8 @@ public class FunctionType extends Type {
      */
     @Override
     public boolean contains(UnknownType v) {
-        if (returnType.contains(v)) return true; // vérifie le type de retour
-        for (Type arg : argsTypes) if (arg.contains(v)) return true; // vérifie chaque argument
+        if (returnType.find().contains(v)) return true; // vérifie le type de retour
+        for (Type arg : argsTypes) if (arg.find().contains(v)) return true; // vérifie chaque argument
         return false;
     }
 
@@ -113,15 +185,27 @@ public class FunctionType extends Type {
      */
     @Override
     public boolean equals(Object o) {
+        if (this == o) return true;
         if (!(o instanceof FunctionType)) return false;
         FunctionType ft = (FunctionType) o;
-        if (!returnType.equals(ft.returnType)) return false; // types de retour différents
+        if (clos && ft.clos && hash != ft.hash) return false; // hash structurel différent
+        // Représentants : une variable liée depuis la construction vaut le type auquel elle est liée
+        if (!returnType.find().equals(ft.returnType.find())) return false; // types de retour différents
         if (argsTypes.size() != ft.argsTypes.size()) return false; // nombre d'arguments différent
         for (int i = 0; i < argsTypes.size(); i++)
-            if (!argsTypes.get(i).equals(ft.argsTypes.get(i))) return false; // un argument diffère
+            if (!argsTypes.get(i).find().equals(ft.argsTypes.get(i).find())) return false; // un argument diffère
         return true;
     }
 
+    /**
+     * Hash structurel : précalculé pour un type clos, sinon recalculé depuis les représentants,
+     * pour rester égal à celui des fonctions devenues égales par unification
+     */
+    @Override
+    public int hashCode() {
+        return clos ? hash : hacher();
+    }
+
     /**
      * Représentation sous forme de chaîne.
      * Exemple : (int, bool) -> int
@@ -1,15 +1,34 @@
 package Type;
-import java.util.Map;
 
 public  class PrimitiveType extends Type {
-    private Type.Base type; 
-    
+    // Une seule instance par type de base : deux types primitifs égaux sont le même objet
+    public static final PrimitiveType INT = new PrimitiveType(Type.Base.INT);
+    public static final PrimitiveType BOOL = new PrimitiveType(Type.Base.BOOL);
+    public static final PrimitiveType VOID = new PrimitiveType(Type.Base.VOID);
+
+    private final Type.Base type;
+    private final int hash;
+
     /**
-     * Constructeur
+     * Constructeur, réservé aux instances uniques (voir of)
      * @param type type de base
      */
-    public PrimitiveType(Type.Base type) {
+    private PrimitiveType(Type.Base type) {
         this.type = type;
+        this.hash = type.toString().toLowerCase().hashCode();
+    }
+
+    /**
+     * Instance unique d'un type de base
+     * @param type type de base
+     * @return INT, BOOL ou VOID
+     */
+    public static PrimitiveType of(Type.Base type) {
+        switch (type) {
+            case INT: return INT;
+            case BOOL: return BOOL;
+            default: return VOID;
+        }
     }
 
     /**
@@ -21,21 +40,19 @@ public  class PrimitiveType extends Type {
     }
 
     @Override
-    public Map<UnknownType, Type> unify(Type t) {
-
-        //si c unkowntype on laisse gérer, si c le meme => succées map vide
-        if (t instanceof UnknownType) {
-            return t.unify(this); // Délégation
-        }
-        if (t instanceof PrimitiveType && this.type == ((PrimitiveType)t).type) {
-            return new java.util.HashMap<>(); // Map vide = Succès sans substitution
+    public boolean unify(Type t) {
+        Type autre = t.find();
+        if (autre == this) return true; // instances uniques : même type => même objet
+        //si c unkowntype on laisse gérer, si c le meme => succées
+        if (autre instanceof UnknownType) {
+            return autre.unify(this); // Délégation
         }
-        return null; // Impossible d'unifier (ex: INT vs BOOL)
+        return false; // ex: INT vs BOOL impossible
     }
 
     @Override
-    public Type substitute(UnknownType v, Type t) {
-         return this;
+    public Type resolve() {
+        return this;
     }
 
     @Override
@@ -45,10 +62,13 @@ public  class PrimitiveType extends Type {
 
     @Override
     public boolean equals(Object t) {
-        //comparer 2 types ex int = int
-        if (this == t) return true;
-        if (!(t instanceof PrimitiveType)) return false;
-        return this.type == ((PrimitiveType) t).type;
+        //comparer 2 types ex int = int : les instances sont uniques
+        return this == t;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
     }
 
     @Override
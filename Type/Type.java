@@ -1,5 +1,4 @@
 package Type;
-import java.util.Map;
 
 
 public abstract class Type {
@@ -13,12 +12,33 @@ public abstract class Type {
         return this.toString().hashCode();
     }
 
-    /** 
-     * Unification
+    /**
+     * Vide les tables de partage des ArrayType et FunctionType du thread courant,
+     * à appeler au début de chaque compilation
+     */
+    public static void resetInterned() {
+        ArrayType.clearTable();
+        FunctionType.clearTable();
+    }
+
+    /**
+     * Test si t ne contient aucune variable de type, même liée : sa structure ne peut plus changer
+     * @param t type à tester
+     * @return true si t est clos
+     */
+    static boolean estClos(Type t) {
+        if (t instanceof ArrayType) return ((ArrayType) t).clos;
+        if (t instanceof FunctionType) return ((FunctionType) t).clos;
+        return !(t instanceof UnknownType);
+    }
+
+    /**
+     * Unification en place : lie les variables de type (UnknownType) de this et de t
+     * pour rendre les deux types égaux. this doit être son propre représentant (voir find).
      * @param t type à unifier
-     * @return la liste des substitutions à effectuer (null si pas unifiable)
+     * @return true si l'unification a réussi, false sinon (des liaisons peuvent alors avoir été faites)
      */
-    public abstract Map<UnknownType,Type> unify(Type t); 
+    public abstract boolean unify(Type t);
 
     /** 
      * Test d'égalité
@@ -27,26 +47,21 @@ public abstract class Type {
      */
     @Override public abstract boolean equals(Object t);
 
-    /** 
-     * Substitution
-     * @param v type variable à substituer
-     * @param t type par lequel remplacer v
-     * @return Type obtenu en remplaçant v par t
-     */
-    public abstract Type substitute(UnknownType v, Type t);
-    
     /**
-     * Applique plusieurs substitutions
-     * @param h liste de substitutions
-     * @return Type obtenu en appliquant toutes les substitutions de h
-     */
-    public Type substituteAll(Map<UnknownType,Type> h){
-        Type result = this;
-        for (UnknownType key : h.keySet()) 
-            result = result.substitute(key, h.get(key));
-        return result;
+     * Représentant du type : lui-même, sauf pour une variable de type liée (voir UnknownType)
+     * @return Type représentant
+     */
+    public Type find() {
+        return this;
     }
-    
+
+    /**
+     * Type résolu : copie du type où chaque variable liée est remplacée par le type auquel elle
+     * est liée. Les variables libres sont copiées, la copie ne change donc plus ensuite.
+     * @return Type sans variable liée
+     */
+    public abstract Type resolve();
+
     /** 
      * Test si le type dépend du type variable v
      * @param v type variable
@@ -0,0 +1,161 @@
+package Type;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Schéma de type d'une fonction dont le typage est terminé : ses variables de type libres ne
+ * peuvent plus être liées, elles sont donc quantifiées une fois pour toutes.
+ *
+ * La signature est compilée en un petit programme postfixe où chaque variable quantifiée est
+ * remplacée par un numéro de case et chaque sous-type sans variable par une constante.
+ * Une instance s'obtient en créant une variable fraîche par case puis en exécutant le programme,
+ * sans parcourir la signature ni construire de correspondance. Une fonction monomorphe n'a
+ * aucune case : son instance est la signature elle-même.
+ */
+public class TypeScheme {
+    // Instructions du programme postfixe
+    private static final int CONSTANTE = 0; // empile constantes[operande]
+    private static final int VARIABLE = 1;  // empile la variable fraîche de la case operande
+    private static final int TABLEAU = 2;   // remplace le sommet t par t[]
+    private static final int FONCTION = 3;  // dépile operande arguments puis le retour
+
+    private final FunctionType signature;
+    // Nombre de variables quantifiées (cases)
+    private final int nbCases;
+    private final int[] codes;
+    private final int[] operandes;
+    private final Type[] constantes;
+    private final int hauteurPile;
+
+    /**
+     * Généralise une signature de fonction.
+     * Les cases sont numérotées dans l'ordre de première rencontre des variables (arguments puis
+     * retour, en profondeur), les variables fraîches sont donc créées dans le même ordre qu'en
+     * renommant la signature.
+     * @param f signature dont les variables libres ne seront plus liées
+     */
+    public TypeScheme(FunctionType f) {
+        this.signature = f;
+        HashMap<UnknownType, Integer> cases = new HashMap<>();
+        ArrayList<Integer> c = new ArrayList<>();
+        ArrayList<Integer> o = new ArrayList<>();
+        ArrayList<Type> k = new ArrayList<>();
+        int[] hauteur = new int[2];
+        compiler(f, cases, c, o, k, hauteur);
+        this.nbCases = cases.size();
+        this.codes = new int[c.size()];
+        this.operandes = new int[o.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = c.get(i);
+            operandes[i] = o.get(i);
+        }
+        this.constantes = k.toArray(new Type[0]);
+        this.hauteurPile = hauteur[1];
+    }
+
+    /**
+     * Compile t à la suite du programme ; hauteur[0] est la hauteur courante de la pile, hauteur[1] la maximale
+     */
+    private static void compiler(Type t, HashMap<UnknownType, Integer> cases, ArrayList<Integer> codes,
+                                 ArrayList<Integer> operandes, ArrayList<Type> constantes, int[] hauteur) {
+        t = t.find();
+        if (!aVariableLibre(t)) {
+            emettre(codes, operandes, CONSTANTE, constantes.size());
+            constantes.add(t.resolve());
+            empiler(hauteur, 1);
+        } else if (t instanceof UnknownType) {
+            Integer numero = cases.get(t);
+            if (numero == null) {
+                numero = cases.size();
+                cases.put((UnknownType) t, numero);
+            }
+            emettre(codes, operandes, VARIABLE, numero);
+            empiler(hauteur, 1);
+        } else if (t instanceof ArrayType) {
+            compiler(((ArrayType) t).getTabType(), cases, codes, operandes, constantes, hauteur);
+            emettre(codes, operandes, TABLEAU, 0);
+        } else {
+            FunctionType ft = (FunctionType) t;
+            for (Type arg : ft.getArgsTypes()) {
+                compiler(arg, cases, codes, operandes, constantes, hauteur);
+            }
+            compiler(ft.getReturnType(), cases, codes, operandes, constantes, hauteur);
+            emettre(codes, operandes, FONCTION, ft.getNbArgs());
+            empiler(hauteur, -ft.getNbArgs());
+        }
+    }
+
+    private static void emettre(ArrayList<Integer> codes, ArrayList<Integer> operandes, int code, int operande) {
+        codes.add(code);
+        operandes.add(operande);
+    }
+
+    private static void empiler(int[] hauteur, int delta) {
+        hauteur[0] += delta;
+        hauteur[1] = Math.max(hauteur[1], hauteur[0]);
+    }
+
+    // Vrai si t (représentant) contient une variable libre
+    private static boolean aVariableLibre(Type t) {
+        if (t instanceof UnknownType) return true;
+        if (t instanceof ArrayType) return aVariableLibre(((ArrayType) t).getTabType().find());
+        if (t instanceof FunctionType) {
+            FunctionType ft = (FunctionType) t;
+            if (aVariableLibre(ft.getReturnType().find())) return true;
+            for (Type arg : ft.getArgsTypes()) if (aVariableLibre(arg.find())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Getter de la signature généralisée
+     * @return signature
+     */
+    public FunctionType getSignature() {
+        return signature;
+    }
+
+    /**
+     * Instance du schéma : la signature où chaque variable quantifiée est remplacée par une
+     * variable fraîche (la même pour toutes ses occurrences). Seuls les sous-types constants sont
+     * partagés, les autres contiennent une variable fraîche et sont construits sans passer par
+     * les tables de ArrayType.of et FunctionType.of.
+     * @return FunctionType instanciée
+     */
+    public FunctionType instancier() {
+        if (nbCases == 0) {
+            return (FunctionType) constantes[0];
+        }
+        UnknownType[] fraiches = new UnknownType[nbCases];
+        for (int i = 0; i < nbCases; i++) {
+            fraiches[i] = new UnknownType();
+        }
+        Type[] pile = new Type[hauteurPile];
+        int sommet = 0;
+        for (int i = 0; i < codes.length; i++) {
+            switch (codes[i]) {
+                case CONSTANTE:
+                    pile[sommet++] = constantes[operandes[i]];
+                    break;
+                case VARIABLE:
+                    pile[sommet++] = fraiches[operandes[i]];
+                    break;
+                case TABLEAU:
+                    pile[sommet - 1] = new ArrayType(pile[sommet - 1]);
+                    break;
+                default:
+                    Type retour = pile[--sommet];
+                    int nbArgs = operandes[i];
+                    ArrayList<Type> args = new ArrayList<>(nbArgs);
+                    for (int j = sommet - nbArgs; j < sommet; j++) {
+                        args.add(pile[j]);
+                    }
+                    sommet -= nbArgs;
+                    pile[sommet++] = new FunctionType(retour, args);
+                    break;
+            }
+        }
+        return (FunctionType) pile[0];
+    }
+}
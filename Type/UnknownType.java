@@ -1,23 +1,74 @@
 package Type;
-import java.util.Map;
+import java.util.ArrayList;
 
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.TerminalNode;
 
+/**
+ * Variable de type, nœud d'une structure union-find : une variable libre est son propre
+ * représentant, une variable liée pointe vers le type auquel elle a été unifiée (lien).
+ * L'unification lie les variables en place au lieu de construire des substitutions ;
+ * find suit les liens et les raccourcit (compression de chemin).
+ */
 public class UnknownType extends Type {
     private String varName;
     private int varIndex;
-    private static int newVariableCounter = 0;
+    // Type auquel la variable est liée, null si elle est libre
+    private Type lien;
+    // Dernier test d'occurrence ayant déjà parcouru ce lien
+    private int marque;
+    // Un compteur par thread : des compilations parallèles ne se partagent pas leurs variables
+    private static final ThreadLocal<int[]> newVariableCounter = ThreadLocal.withInitial(() -> new int[1]);
+    // Numéro du test d'occurrence courant, par thread
+    private static final ThreadLocal<int[]> marqueCourante = ThreadLocal.withInitial(() -> new int[1]);
+    // Message du test d'occurrence désactivé, par thread (typage parallèle, voir TyperVisitor)
+    private static final ThreadLocal<boolean[]> muet = ThreadLocal.withInitial(() -> new boolean[1]);
 
     /**
      * Constructeur sans nom
      */
     public UnknownType(){
-        this.varIndex = newVariableCounter++;
+        this.varIndex = newVariableCounter.get()[0]++;
         this.varName = "#";
     }
 
+    /**
+     * Remet à zéro la numérotation des variables de type du thread courant,
+     * à appeler au début de chaque compilation
+     */
+    public static void resetCounter() {
+        newVariableCounter.get()[0] = 0;
+    }
+
+    /**
+     * Getter du numéro de la prochaine variable de type du thread courant
+     * @return numéro de la prochaine variable
+     */
+    public static int getCounter() {
+        return newVariableCounter.get()[0];
+    }
+
+    /**
+     * Setter du numéro de la prochaine variable de type du thread courant
+     * @param n numéro de la prochaine variable
+     */
+    public static void setCounter(int n) {
+        newVariableCounter.get()[0] = n;
+    }
+
+    /**
+     * Active ou désactive, sur le thread courant, le message affiché quand le test d'occurrence échoue
+     * @param m true pour ne plus afficher le message
+     * @return l'état précédent
+     */
+    public static boolean setMuet(boolean m) {
+        boolean[] etat = muet.get();
+        boolean precedent = etat[0];
+        etat[0] = m;
+        return precedent;
+    }
+
     /**
      * Constructeur à partir d'un nom de variable et un numéro
      * @param s nom de variable
@@ -70,34 +121,95 @@ public class UnknownType extends Type {
         this.varIndex = n;
     }
 
+    /**
+     * Représentant de la variable : elle-même si elle est libre, sinon le représentant du type
+     * auquel elle est liée. Les variables traversées sont ensuite liées directement au représentant.
+     * @return Type représentant
+     */
+    @Override
+    public Type find() {
+        Type r = this;
+        while (r instanceof UnknownType && ((UnknownType) r).lien != null) {
+            r = ((UnknownType) r).lien;
+        }
+        // Compression de chemin
+        UnknownType u = this;
+        while (u.lien != null && u.lien != r) {
+            Type suivant = u.lien;
+            u.lien = r;
+            u = (UnknownType) suivant;
+        }
+        return r;
+    }
+
     @Override
-    public Map<UnknownType, Type> unify(Type t) {
+    public boolean unify(Type t) {
+        Type moi = find();
+        if (moi != this) {
+            return moi.unify(t);
+        }
+        Type autre = t.find();
         // cas (A = A)
-        if (this.equals(t)) {
-            return new java.util.HashMap<>();
+        if (this.equals(autre)) {
+            return true;
         }
         // cas (A = Tab[A]
-        if (t.contains(this)) {
-            System.out.println("Erreur de type: " + this);
-            return null;
+        if (apparaitDans(autre)) {
+            if (!muet.get()[0]) System.out.println("Erreur de type: " + this);
+            return false;
         }
         // cas succès X = int
-        Map<UnknownType, Type> res = new java.util.HashMap<>();
-        res.put(this, t);
-        return res;
+        this.lien = autre;
+        return true;
+    }
+
+    /**
+     * Test d'occurrence de cette variable (libre) dans t, sans récursion. Chaque lien n'est
+     * parcouru qu'une fois par test, même s'il est partagé par plusieurs parties de t.
+     * @param t type dans lequel chercher
+     * @return true si la variable apparaît dans t
+     */
+    private boolean apparaitDans(Type t) {
+        int m = ++marqueCourante.get()[0];
+        ArrayList<Type> pile = new ArrayList<>();
+        pile.add(t);
+        while (!pile.isEmpty()) {
+            Type x = pile.remove(pile.size() - 1);
+            if (x instanceof UnknownType) {
+                UnknownType u = (UnknownType) x;
+                if (u.lien == null) {
+                    if (this.equals(u)) return true;
+                } else if (u.marque != m) {
+                    u.marque = m;
+                    pile.add(u.lien);
+                }
+            } else if (x instanceof ArrayType) {
+                pile.add(((ArrayType) x).getTabType());
+            } else if (x instanceof FunctionType) {
+                FunctionType f = (FunctionType) x;
+                pile.add(f.getReturnType());
+                pile.addAll(f.getArgsTypes());
+            }
+        }
+        return false;
     }
 
     @Override
-    public Type substitute(UnknownType v, Type t) {
-        if (this.equals(v)){
-            return t; // si je suis la variable qu'on cherche à remplacé je renvoi t
+    public Type resolve() {
+        Type r = find();
+        if (r != this) {
+            return r.resolve();
         }
-        return this;
+        return new UnknownType(varName, varIndex);
     }
 
     @Override
     public boolean contains(UnknownType v) {
         //je me contiens moi meme si je suis la varible v
+        Type r = find();
+        if (r != this) {
+            return r.contains(v);
+        }
         return this.equals(v);
     }
 
@@ -112,6 +224,10 @@ public class UnknownType extends Type {
     }
     @Override
     public String toString() {
+        Type r = find();
+        if (r != this) {
+            return r.toString(); // variable liée : son représentant
+        }
         return "var_" + this.varIndex; // Ex: "var_1"
     }
     @Override
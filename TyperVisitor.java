@@ -1,232 +1,560 @@
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
-
-import org.antlr.v4.runtime.ParserRuleContext; // Important pour les lignes d'erreur
-import org.antlr.v4.runtime.tree.AbstractParseTreeVisitor;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import Ast.Ast;
+import Metrics.Metrics;
 import Type.*;
 
 /**
- * TyperVisitor est le visiteur de typage pour la grammaire TCL générée par ANTLR.
+ * TyperVisitor est le visiteur de typage des programmes TCL.
  *
  * Rôle général:
- * - Parcourt l'arbre de syntaxe et calcule/unifie les types des expressions et instructions.
+ * - Parcourt l'arbre de syntaxe abstraite (Ast, construit par AstParser) et calcule/unifie les types des expressions et instructions.
  * - Gère l'inférence de type (mots‑clés « auto ») via des variables de type (UnknownType) et un solveur d’unification.
- * - Maintient une table des symboles (symbolTable) pour les variables/fonctions visibles dans le scope courant.
- * - Produit des erreurs sémantiques précises avec localisation (ligne/colonne) grâce aux ParserRuleContext.
+ * - Maintient une table des symboles (symbolTable) pour les variables/fonctions visibles dans le scope courant,
+ *   indexée par le numéro des identifiants dans l'Ast.
+ * - Produit des erreurs sémantiques précises avec localisation (ligne/colonne) grâce à la ligne de chaque nœud.
  *
  * Principaux mécanismes:
- * - Unification: la méthode privée solve(t1, t2, ctx) tente d’unifier deux types après substitution des
- *   équations connues (carte "types"). En cas d’échec, une SemanticError est levée avec le contexte.
- * - Substitutions: chaque visite d’expression renvoie un Type pouvant contenir des UnknownType qui
- *   seront progressivement remplacés par des types plus précis au fil des contraintes (unifications).
- * - Portée des symboles: les blocs/instructions créent et restaurent des instantanés de la table des
- *   symboles pour simuler l’entrée/sortie de scope.
+ * - Unification: la méthode privée solve(t1, t2, n) tente d’unifier deux types en liant en place leurs
+ *   variables de type (union-find, voir UnknownType). En cas d’échec, une SemanticError est levée avec la ligne du nœud.
+ * - Liaisons: chaque visite d’expression renvoie un Type pouvant contenir des UnknownType qui
+ *   seront progressivement liés à des types plus précis au fil des contraintes (unifications) ;
+ *   resolve() donne le type avec toutes les liaisons connues.
+ * - Portée des symboles: chaque déclaration est notée (avec le type précédent de l'identifiant) dans une
+ *   trace ; en sortie de scope, les blocs/instructions annulent les déclarations faites depuis l'entrée
+ *   (ouvrirPortee/fermerPortee), sans copier la table des symboles.
  * - Tableaux: l’accès/affectation t[i] force i à être INT et contraint t à être un ArrayType dont on
  *   récupère/unifie le type d’élément.
  * - Fonctions: les déclarations construisent un FunctionType (retour + liste d’arguments). Les appels
- *   utilisent un « freshening » des variables de type (freshFunctionType/freshType) pour obtenir une
- *   instance polymorphe indépendante avant d’unifier chaque argument réel avec le paramètre formel.
+ *   utilisent une instance fraîche de la signature (variables de type renommées) avant d’unifier chaque
+ *   argument réel avec le paramètre formel. Une fois la déclaration typée, la signature est généralisée
+ *   en TypeScheme qui s'instancie sans la reparcourir ; pendant le typage du corps (appels récursifs),
+ *   l'instance est construite par freshFunctionType/freshType.
+ * - Parallélisme: à partir de seuilParallele fonctions, les fonctions indépendantes sont typées en
+ *   parallèle, par niveaux du graphe d'appel (typerEnParallele).
  * - Main: impose que main retourne un INT et vérifie la cohérence du type renvoyé par son corps.
  *
  * Champs principaux:
- * - types: équations courantes entre UnknownType et Type, enrichies par les unifications réussies.
- * - symbolTable: portée courante des identifiants (variables et fonctions) vers leurs Types.
+ * - symbolTable: portée courante, numéro d'identifiant (variable ou fonction) -> Type (null si non déclaré).
  *
  * Exceptions:
  * - SemanticError est levée pour toute incohérence (type non unifiable, variable/fonction inconnue,
- *   nombre d’arguments incorrect, etc.), en utilisant le ParserRuleContext pour des messages précis.
+ *   nombre d’arguments incorrect, etc.), en indiquant la ligne du nœud en cause.
 
  */
-public class TyperVisitor extends AbstractParseTreeVisitor<Type> implements grammarTCLVisitor<Type> {
+public class TyperVisitor {
+    public static final int DEFAULT_SEUIL_PARALLELE = 128;
+
+    private final Ast ast;
+    private Type[] symbolTable = new Type[16];
+    // Déclarations de la portée courante et des portées englobantes, pour les annuler en sortie de
+    // portée : identifiant déclaré et type qu'il avait avant (null s'il n'était pas déclaré)
+    private int[] traceIds = new int[32];
+    private Type[] traceTypes = new Type[32];
+    private int nbTrace = 0;
+    // Nombre de fonctions à partir duquel elles sont typées en parallèle (voir typerEnParallele)
+    private static volatile int seuilParallele = DEFAULT_SEUIL_PARALLELE;
+    // Threads du typage parallèle, propres au typeur : une tâche ne s'exécute jamais sur le thread
+    // de la compilation, dont elle viderait les tables de partage des types
+    private static final ExecutorService POOL_TYPAGE =
+        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread t = new Thread(r, "typage");
+            t.setDaemon(true);
+            return t;
+        });
+    // Type de chaque expression et de la variable de chaque print ou déclaration, par numéro de nœud
+    // (résolus par getTypesNoeuds, pour la génération de code)
+    private Type[] typesNoeuds = new Type[64];
+    // Schéma de chaque fonction déjà typée, par numéro d'identifiant
+    private TypeScheme[] schemas = new TypeScheme[16];
+    // Signatures déjà calculées par fonction (null : pas de compilation incrémentale)
+    private FunctionCache functionCache;
+
+    // Piles explicites des parcours d'opérateurs et d'instructions (voir operateurs et instructions) :
+    // les expressions et les blocs peuvent être imbriqués à n'importe quelle profondeur
+    private int[] opsNoeuds = new int[32];
+    private int[] opsEtapes = new int[32];
+    private int nbOps = 0;
+    private Type[] resultats = new Type[32];
+    private int nbResultats = 0;
+    private int[] cadresNoeuds = new int[32];
+    private int[] cadresEtapes = new int[32];
+    private int[] cadresPortees = new int[32];
+    private int nbCadres = 0;
+
+    /**
+     * Constructeur
+     * @param ast arbre à typer
+     */
+    public TyperVisitor(Ast ast) {
+        this.ast = ast;
+    }
 
-    private Map<UnknownType,Type> types = new HashMap<UnknownType,Type>();
-    private Map<String, Type> symbolTable = new HashMap<>();
+    /**
+     * Constructeur pour la compilation incrémentale
+     * @param ast arbre à typer
+     * @param functionCache cache des signatures des fonctions déjà typées
+     */
+    public TyperVisitor(Ast ast, FunctionCache functionCache) {
+        this.ast = ast;
+        this.functionCache = functionCache;
+    }
 
     /**
-     * Unifie deux types sous les substitutions courantes et enrichit l’ensemble d’équations.
-     * En cas d’échec d’unification, lève une SemanticError contextualisée avec la position d’ANTLR.
+     * Setter du nombre de fonctions à partir duquel elles sont typées en parallèle
+     * @param seuil nombre de fonctions (0 : toujours)
+     */
+    public static void setSeuilParallele(int seuil) {
+        seuilParallele = seuil;
+    }
+
+    /**
+     * Type un nœud selon sa sorte
+     * @param n nœud
+     * @return le type du nœud
+     */
+    public Type visit(int n) {
+        switch (ast.sorte(n)) {
+            case Ast.INTEGER: return noter(n, visitInteger(n));
+            case Ast.BOOLEAN: return noter(n, visitBoolean(n));
+            case Ast.VARIABLE: return noter(n, visitVariable(n));
+            case Ast.NEGATION: return visitNegation(n);
+            case Ast.OPPOSITE: return visitOpposite(n);
+            case Ast.MULTIPLICATION: return visitMultiplication(n);
+            case Ast.ADDITION: return visitAddition(n);
+            case Ast.COMPARISON: return visitComparison(n);
+            case Ast.EQUALITY: return visitEquality(n);
+            case Ast.AND: return visitAnd(n);
+            case Ast.OR: return visitOr(n);
+            case Ast.TAB_ACCESS: return visitTab_access(n);
+            case Ast.TAB_INITIALIZATION: return visitTab_initialization(n);
+            case Ast.CALL: return visitCall(n);
+            case Ast.BASE_TYPE: return visitBase_type(n);
+            case Ast.TAB_TYPE: return visitTab_type(n);
+            case Ast.DECLARATION: return visitDeclaration(n);
+            case Ast.PRINT: return visitPrint(n);
+            case Ast.ASSIGNMENT: return visitAssignment(n);
+            case Ast.BLOCK: return visitBlock(n);
+            case Ast.IF: return visitIf(n);
+            case Ast.WHILE: return visitWhile(n);
+            case Ast.FOR: return visitFor(n);
+            case Ast.RETURN: return visitReturn(n);
+            case Ast.CORE_FCT: return visitCore_fct(n);
+            case Ast.DECL_FCT: return visitDecl_fct(n);
+            case Ast.MAIN: return visitMain(n);
+            default: throw new IllegalStateException("Sorte de nœud inconnue : " + ast.sorte(n));
+        }
+    }
+
+    /**
+     * Unifie deux types en liant en place leurs variables de type (voir UnknownType).
+     * En cas d’échec d’unification, lève une SemanticError avec la ligne du nœud en cause.
      *
-     * @param t1  premier type à unifier (après substitution progressive)
-     * @param t2  second type à unifier (après substitution progressive)
-     * @param ctx contexte ANTLR utilisé pour reporter précisément l’erreur en cas d’échec
+     * @param t1  premier type à unifier
+     * @param t2  second type à unifier
+     * @param n   nœud utilisé pour reporter la ligne de l’erreur en cas d’échec
      * @throws SemanticError si les types ne peuvent pas être unifiés
      */
-    private void solve(Type t1, Type t2, ParserRuleContext ctx) {
-        Type t1_sub = t1.substituteAll(this.types);
-        Type t2_sub = t2.substituteAll(this.types);
+    private void solve(Type t1, Type t2, int n) {
+        Metrics.count("typer.solve");
+        Type a = t1.find();
+        Type b = t2.find();
+        // Types partagés : deux représentants identiques sont déjà unifiés
+        if (a == b) return;
+
+        // Entre deux types composés, un échec peut survenir après des liaisons partielles :
+        // le message d'erreur décrit les types d'avant l'unification
+        String avant = null;
+        if (estCompose(a) && estCompose(b)) {
+            avant = a.resolve() + " et " + b.resolve();
+        }
 
-        Map<UnknownType, Type> res = t1_sub.unify(t2_sub);
+        if (!a.unify(b)) {
+            if (avant == null) avant = a.resolve() + " et " + b.resolve();
+            throw new SemanticError(ast.ligne(n), "Erreur de typage : Impossible d'unifier " + avant);
+        }
+    }
 
-        if (res == null) {
-            throw new SemanticError(ctx, "Erreur de typage : Impossible d'unifier " + t1_sub + " et " + t2_sub);
+    private static boolean estCompose(Type t) {
+        return t instanceof ArrayType || t instanceof FunctionType;
+    }
+
+    // Note le type d'un nœud dans typesNoeuds et le renvoie
+    private Type noter(int n, Type t) {
+        if (n >= typesNoeuds.length) {
+            typesNoeuds = Arrays.copyOf(typesNoeuds, Math.max(typesNoeuds.length * 2, ast.nbNoeuds()));
         }
+        typesNoeuds[n] = t;
+        return t;
+    }
+
+    // Type d'un identifiant dans la portée courante, null s'il n'est pas déclaré
+    private Type symbole(int id) {
+        return id < symbolTable.length ? symbolTable[id] : null;
+    }
+
+    // Déclare un identifiant dans la portée courante, en gardant son type précédent pour fermerPortee
+    private void declarer(int id, Type t) {
+        if (id >= symbolTable.length) {
+            symbolTable = Arrays.copyOf(symbolTable, Math.max(symbolTable.length * 2, id + 1));
+        }
+        if (nbTrace == traceIds.length) {
+            traceIds = Arrays.copyOf(traceIds, nbTrace * 2);
+            traceTypes = Arrays.copyOf(traceTypes, nbTrace * 2);
+        }
+        traceIds[nbTrace] = id;
+        traceTypes[nbTrace++] = symbolTable[id];
+        symbolTable[id] = t;
+    }
+
+    // Ouvre une portée : renvoie la marque à passer à fermerPortee
+    private int ouvrirPortee() {
+        return nbTrace;
+    }
 
-        for (Map.Entry<UnknownType, Type> entry : this.types.entrySet()) {
-            entry.setValue(entry.getValue().substituteAll(res));
+    // Ferme une portée : annule, de la plus récente à la plus ancienne, les déclarations faites depuis la marque
+    private void fermerPortee(int marque) {
+        while (nbTrace > marque) {
+            nbTrace--;
+            symbolTable[traceIds[nbTrace]] = traceTypes[nbTrace];
+            traceTypes[nbTrace] = null;
         }
-        this.types.putAll(res);
+    }
+
+    // --- PARCOURS SANS RÉCURSION ---
+
+    // Sortes typées par operateurs : opérateurs unaires, binaires, accès tabulaire, littéraux de
+    // tableau et appels
+    private static boolean estOperateur(int sorte) {
+        return sorte >= Ast.NEGATION && sorte <= Ast.CALL;
     }
 
     /**
-     * Retourne l’ensemble courant des équations de types (substitutions) accumulées par le solveur.
-     * Utile pour l’inspection/debug ou des passes ultérieures.
-     *
-     * @return la table de substitutions entre UnknownType et Type
+     * Type un arbre d'opérateurs en post-ordre avec une pile explicite : gauche, droite, puis
+     * les unifications de l'opérateur, dans le même ordre qu'un parcours récursif. Un littéral de
+     * tableau ou un appel empile d'abord le type attendu de ses éléments ou son instance, puis type
+     * ses éléments ou arguments un à un (voir etapeListe).
+     * Les autres nœuds rencontrés (variables, constantes) sont typés par visit.
+     * @param n nœud opérateur
+     * @return le type de l'expression
      */
-    public Map<UnknownType, Type> getTypes() {
-        return types;
+    private Type operateurs(int n) {
+        int base = nbOps;
+        empilerOp(n);
+        while (nbOps > base) {
+            int i = nbOps - 1;
+            int x = opsNoeuds[i];
+            int etape = opsEtapes[i]++;
+            if (ast.sorte(x) >= Ast.TAB_INITIALIZATION) {
+                if (etapeListe(x, etape)) {
+                    nbOps--;
+                    Type t = resultats[--nbResultats];
+                    empilerResultat(noter(x, ast.sorte(x) == Ast.CALL
+                        ? ((FunctionType) t).getReturnType()
+                        : ArrayType.of(t)));
+                }
+            } else if (etape == 0) {
+                operande(ast.a(x));
+            } else if (etape == 1 && ast.sorte(x) >= Ast.MULTIPLICATION) {
+                operande(ast.b(x));
+            } else {
+                nbOps--;
+                empilerResultat(noter(x, appliquer(x)));
+            }
+        }
+        return resultats[--nbResultats];
+    }
+
+    /**
+     * Étape d'un littéral de tableau ou d'un appel : à l'étape 0, empile le type des éléments ou
+     * l'instance de la signature ; à l'étape k, unifie le résultat de l'élément k - 2 (en sommet de
+     * pile) avec le type attendu, puis lance l'élément k - 1.
+     * @return true quand tous les éléments sont typés, le type attendu restant en sommet de pile
+     */
+    private boolean etapeListe(int n, int etape) {
+        boolean appel = ast.sorte(n) == Ast.CALL;
+        int elements = appel ? ast.b(n) : ast.a(n);
+        if (etape == 0) {
+            empilerResultat(appel ? instanceAppel(n) : new UnknownType());
+        } else if (etape >= 2) {
+            Type t = resultats[--nbResultats];
+            Type attendu = resultats[nbResultats - 1];
+            solve(t, appel ? ((FunctionType) attendu).getArgsType(etape - 2) : attendu, n);
+        }
+        if (etape >= 1 && etape - 1 < ast.taille(elements)) {
+            operande(ast.element(elements, etape - 1));
+            return false;
+        }
+        return etape >= 1 || ast.taille(elements) == 0;
+    }
+
+    private void operande(int x) {
+        if (estOperateur(ast.sorte(x))) {
+            empilerOp(x);
+        } else {
+            empilerResultat(visit(x));
+        }
+    }
+
+    // Règle de typage d'un opérateur, ses opérandes étant typés en sommet de pile
+    private Type appliquer(int n) {
+        Type t2 = ast.sorte(n) >= Ast.MULTIPLICATION ? resultats[--nbResultats] : null;
+        Type t1 = resultats[--nbResultats];
+        switch (ast.sorte(n)) {
+            case Ast.NEGATION:
+                solve(t1, PrimitiveType.BOOL, n);
+                return PrimitiveType.BOOL;
+            case Ast.OPPOSITE:
+                solve(t1, PrimitiveType.INT, n);
+                return PrimitiveType.INT;
+            case Ast.MULTIPLICATION:
+            case Ast.ADDITION:
+                solve(t1, PrimitiveType.INT, n);
+                solve(t2, PrimitiveType.INT, n);
+                return PrimitiveType.INT;
+            case Ast.COMPARISON:
+                solve(t1, PrimitiveType.INT, n);
+                solve(t2, PrimitiveType.INT, n);
+                return PrimitiveType.BOOL;
+            case Ast.EQUALITY:
+                solve(t1, t2, n);
+                return PrimitiveType.BOOL;
+            case Ast.AND:
+            case Ast.OR:
+                solve(t1, PrimitiveType.BOOL, n);
+                solve(t2, PrimitiveType.BOOL, n);
+                return PrimitiveType.BOOL;
+            default:
+                // Accès tabulaire : t1 tableau, t2 indice
+                solve(t2, PrimitiveType.INT, n);
+                UnknownType elemType = new UnknownType();
+                solve(t1, ArrayType.of(elemType), n);
+                return elemType;
+        }
+    }
+
+    /**
+     * Type une instruction et les blocs, if, while et for qu'elle contient avec une pile de cadres,
+     * dans le même ordre (ouvertures de portée, unifications) qu'un parcours récursif.
+     * Les instructions simples sont typées par visit.
+     * @param n nœud de l'instruction
+     * @return VOID
+     */
+    private Type instructions(int n) {
+        int base = nbCadres;
+        entrer(n);
+        while (nbCadres > base) {
+            int i = nbCadres - 1;
+            int x = cadresNoeuds[i];
+            int etape = cadresEtapes[i]++;
+            switch (ast.sorte(x)) {
+                case Ast.BLOCK:
+                    // Nouvelle portée, restaurée après la dernière instruction
+                    if (etape == 0) cadresPortees[i] = ouvrirPortee();
+                    if (etape < ast.taille(ast.a(x))) {
+                        entrer(ast.element(ast.a(x), etape));
+                        continue;
+                    }
+                    fermerPortee(cadresPortees[i]);
+                    break;
+                case Ast.IF:
+                    // La condition doit être booléenne
+                    if (etape == 0) {
+                        solve(visit(ast.a(x)), PrimitiveType.BOOL, x);
+                        entrer(ast.b(x));
+                        continue;
+                    }
+                    if (etape == 1 && ast.c(x) != -1) {
+                        entrer(ast.c(x));
+                        continue;
+                    }
+                    break;
+                case Ast.WHILE:
+                    if (etape == 0) {
+                        solve(visit(ast.a(x)), PrimitiveType.BOOL, x);
+                        entrer(ast.b(x));
+                        continue;
+                    }
+                    break;
+                default:
+                    // For : init, condition booléenne, incrément et corps dans une portée restaurée à la fin
+                    if (etape == 0) {
+                        cadresPortees[i] = ouvrirPortee();
+                        entrer(ast.a(x));
+                        continue;
+                    }
+                    if (etape == 1) {
+                        solve(visit(ast.b(x)), PrimitiveType.BOOL, x);
+                        entrer(ast.c(x));
+                        continue;
+                    }
+                    if (etape == 2) {
+                        entrer(ast.d(x));
+                        continue;
+                    }
+                    fermerPortee(cadresPortees[i]);
+            }
+            nbCadres--;
+        }
+        return PrimitiveType.VOID;
+    }
+
+    private static boolean estStructure(int sorte) {
+        return sorte >= Ast.BLOCK && sorte <= Ast.FOR;
+    }
+
+    private void entrer(int x) {
+        if (estStructure(ast.sorte(x))) {
+            if (nbCadres == cadresNoeuds.length) {
+                cadresNoeuds = Arrays.copyOf(cadresNoeuds, nbCadres * 2);
+                cadresEtapes = Arrays.copyOf(cadresEtapes, nbCadres * 2);
+                cadresPortees = Arrays.copyOf(cadresPortees, nbCadres * 2);
+            }
+            cadresNoeuds[nbCadres] = x;
+            cadresEtapes[nbCadres++] = 0;
+        } else {
+            visit(x);
+        }
+    }
+
+    private void empilerOp(int x) {
+        if (nbOps == opsNoeuds.length) {
+            opsNoeuds = Arrays.copyOf(opsNoeuds, nbOps * 2);
+            opsEtapes = Arrays.copyOf(opsEtapes, nbOps * 2);
+        }
+        opsNoeuds[nbOps] = x;
+        opsEtapes[nbOps++] = 0;
+    }
+
+    private void empilerResultat(Type t) {
+        if (nbResultats == resultats.length) {
+            resultats = Arrays.copyOf(resultats, nbResultats * 2);
+        }
+        resultats[nbResultats++] = t;
     }
 
     // --- OPÉRATIONS LOGIQUES & ARITHMÉTIQUES ---
 
     /**
      * Visite d’une négation logique: vérifie que l’opérande est BOOL et renvoie BOOL.
-     * @param ctx nœud ANTLR de la négation
+     * @param n nœud de la négation
      * @return le type BOOL
      * @throws SemanticError si l’opérande n’est pas de type booléen
      */
-    @Override
-    public Type visitNegation(grammarTCLParser.NegationContext ctx) {
-        Type t = visit(ctx.expr());
-        solve(t, new PrimitiveType(Type.Base.BOOL), ctx);
-        return new PrimitiveType(Type.Base.BOOL);
+    public Type visitNegation(int n) {
+        return operateurs(n);
     }
 
     /**
      * Visite d’une comparaison (<, >, <=, >=, ...): impose INT sur les deux opérandes et renvoie BOOL.
-     * @param ctx nœud ANTLR de la comparaison
+     * @param n nœud de la comparaison
      * @return le type BOOL
      * @throws SemanticError si un opérande n’est pas entier
      */
-    @Override
-    public Type visitComparison(grammarTCLParser.ComparisonContext ctx) {
-        Type t1 = visit(ctx.expr(0));
-        Type t2 = visit(ctx.expr(1));
-        solve(t1, new PrimitiveType(Type.Base.INT), ctx);
-        solve(t2, new PrimitiveType(Type.Base.INT), ctx);
-        return new PrimitiveType(Type.Base.BOOL);
+    public Type visitComparison(int n) {
+        return operateurs(n);
     }
 
     /**
      * Visite d’un OU logique: force les deux opérandes à BOOL et renvoie BOOL.
-     * @param ctx nœud ANTLR de l’opérateur OR
+     * @param n nœud de l’opérateur OR
      * @return le type BOOL
      * @throws SemanticError si un des opérandes n’est pas booléen
      */
-    @Override
-    public Type visitOr(grammarTCLParser.OrContext ctx) {
-        Type t1 = visit(ctx.expr(0));
-        Type t2 = visit(ctx.expr(1));
-        solve(t1, new PrimitiveType(Type.Base.BOOL), ctx);
-        solve(t2, new PrimitiveType(Type.Base.BOOL), ctx);
-        return new PrimitiveType(Type.Base.BOOL);
+    public Type visitOr(int n) {
+        return operateurs(n);
     }
 
     /**
      * Visite d’un ET logique: force les deux opérandes à BOOL et renvoie BOOL.
-     * @param ctx nœud ANTLR de l’opérateur AND
+     * @param n nœud de l’opérateur AND
      * @return le type BOOL
      * @throws SemanticError si un des opérandes n’est pas booléen
      */
-    @Override
-    public Type visitAnd(grammarTCLParser.AndContext ctx) {
-        Type t1 = visit(ctx.expr(0));
-        Type t2 = visit(ctx.expr(1));
-        solve(t1, new PrimitiveType(Type.Base.BOOL), ctx);
-        solve(t2, new PrimitiveType(Type.Base.BOOL), ctx);
-        return new PrimitiveType(Type.Base.BOOL);
+    public Type visitAnd(int n) {
+        return operateurs(n);
     }
 
     /**
      * Visite de l’opposé unaire (-e): impose INT sur l’opérande et renvoie INT.
-     * @param ctx nœud ANTLR de l’opposé
+     * @param n nœud de l’opposé
      * @return le type INT
      * @throws SemanticError si l’opérande n’est pas entier
      */
-    @Override
-    public Type visitOpposite(grammarTCLParser.OppositeContext ctx) {
-        Type t = visit(ctx.expr());
-        solve(t, new PrimitiveType(Type.Base.INT), ctx);
-        return new PrimitiveType(Type.Base.INT);
+    public Type visitOpposite(int n) {
+        return operateurs(n);
     }
 
     /**
      * Visite d’une multiplication/division: impose INT sur les deux opérandes et renvoie INT.
-     * @param ctx nœud ANTLR de la multiplication
+     * @param n nœud de la multiplication
      * @return le type INT
      * @throws SemanticError si un opérande n’est pas entier
      */
-    @Override
-    public Type visitMultiplication(grammarTCLParser.MultiplicationContext ctx) {
-        Type t1 = visit(ctx.expr(0));
-        Type t2 = visit(ctx.expr(1));
-        solve(t1, new PrimitiveType(Type.Base.INT), ctx);
-        solve(t2, new PrimitiveType(Type.Base.INT), ctx);
-        return new PrimitiveType(Type.Base.INT);
+    public Type visitMultiplication(int n) {
+        return operateurs(n);
     }
 
     /**
      * Visite d’une addition/soustraction: impose INT sur les deux opérandes et renvoie INT.
-     * @param ctx nœud ANTLR de l’addition
+     * @param n nœud de l’addition
      * @return le type INT
      * @throws SemanticError si un opérande n’est pas entier
      */
-    @Override
-    public Type visitAddition(grammarTCLParser.AdditionContext ctx) {
-        Type t1 = visit(ctx.expr(0));
-        Type t2 = visit(ctx.expr(1));
-        solve(t1, new PrimitiveType(Type.Base.INT), ctx);
-        solve(t2, new PrimitiveType(Type.Base.INT), ctx);
-        return new PrimitiveType(Type.Base.INT);
+    public Type visitAddition(int n) {
+        return operateurs(n);
     }
 
     /**
      * Visite d’une égalité/inegalité (==, !=): unifie les deux opérandes et renvoie BOOL.
-     * @param ctx nœud ANTLR de l’égalité
+     * @param n nœud de l’égalité
      * @return le type BOOL
      * @throws SemanticError si les opérandes ne peuvent pas être unifiés
      */
-    @Override
-    public Type visitEquality(grammarTCLParser.EqualityContext ctx) {
-        Type t1 = visit(ctx.expr(0));
-        Type t2 = visit(ctx.expr(1));
-        solve(t1, t2, ctx);
-        return new PrimitiveType(Type.Base.BOOL);
+    public Type visitEquality(int n) {
+        return operateurs(n);
     }
 
     // --- TYPES DE BASE ---
 
     /**
      * Littéral entier: retourne INT.
-     * @param ctx nœud ANTLR du littéral
+     * @param n nœud du littéral
      * @return le type INT
      */
-    @Override
-    public Type visitInteger(grammarTCLParser.IntegerContext ctx) {
-        return new PrimitiveType(Type.Base.INT);
+    public Type visitInteger(int n) {
+        return PrimitiveType.INT;
     }
 
     /**
      * Littéral booléen: retourne BOOL.
-     * @param ctx nœud ANTLR du littéral
+     * @param n nœud du littéral
      * @return le type BOOL
      */
-    @Override
-    public Type visitBoolean(grammarTCLParser.BooleanContext ctx) {
-        return new PrimitiveType(Type.Base.BOOL);
+    public Type visitBoolean(int n) {
+        return PrimitiveType.BOOL;
     }
 
     /**
      * Type de base référencé dans le code (int, bool ou auto): traduit en PrimitiveType ou UnknownType.
-     * @param ctx nœud ANTLR du type de base
+     * @param n nœud du type de base
      * @return INT, BOOL, ou UnknownType pour auto/indéterminé
      */
-    @Override
-    public Type visitBase_type(grammarTCLParser.Base_typeContext ctx) {
-        if (ctx.getText().equals("int")) return new PrimitiveType(Type.Base.INT);
-        if (ctx.getText().equals("bool")) return new PrimitiveType(Type.Base.BOOL);
+    public Type visitBase_type(int n) {
+        if (ast.a(n) == Ast.BASE_INT) return PrimitiveType.INT;
+        if (ast.a(n) == Ast.BASE_BOOL) return PrimitiveType.BOOL;
         return new UnknownType();
     }
 
@@ -234,16 +562,15 @@ public class TyperVisitor extends AbstractParseTreeVisitor<Type> implements gram
 
     /**
      * Utilisation d’une variable: récupère son type depuis la table des symboles.
-     * @param ctx nœud ANTLR de la variable
+     * @param n nœud de la variable
      * @return le type de la variable
      * @throws SemanticError si la variable n’est pas déclarée dans la portée courante
      */
-    @Override
-    public Type visitVariable(grammarTCLParser.VariableContext ctx) {
-        String name = ctx.getText();
-        Type t = symbolTable.get(name);
+    public Type visitVariable(int n) {
+        int id = ast.a(n);
+        Type t = symbole(id);
         if (t == null) {
-            throw new SemanticError(ctx, "La variable '" + name + "' n'est pas déclarée.");
+            throw new SemanticError(ast.ligne(n), "La variable '" + ast.nom(id) + "' n'est pas déclarée.");
         }
         return t;
     }
@@ -251,211 +578,154 @@ public class TyperVisitor extends AbstractParseTreeVisitor<Type> implements gram
     /**
      * Déclaration de variable avec type explicite ou auto et option d’initialisation.
      * Contrainte le type par l’expression si présente et enregistre le symbole dans la portée.
-     * @param ctx nœud ANTLR de la déclaration
+     * @param n nœud de la déclaration
      * @return VOID
      * @throws SemanticError si redéclaration locale ou incompatibilité de types
      */
-    @Override
-    public Type visitDeclaration(grammarTCLParser.DeclarationContext ctx) {
-        String name = ctx.VAR().getText();
+    public Type visitDeclaration(int n) {
+        int id = ast.b(n);
 
-        if (symbolTable.containsKey(name)) {
-            throw new SemanticError(ctx, "La variable '" + name + "' est déjà déclarée dans ce bloc.");
+        if (symbole(id) != null) {
+            throw new SemanticError(ast.ligne(n), "La variable '" + ast.nom(id) + "' est déjà déclarée dans ce bloc.");
         }
 
-        Type t;
-        if (ctx.type().getText().equals("auto")) {
-            t = new UnknownType();
-        } else {
-            t = visit(ctx.type());
-        }
+        // auto (même dans un type tableau) donne une nouvelle variable de type
+        Type t = visit(ast.a(n));
 
-        if (ctx.expr() != null) {
-            Type tExpr = visit(ctx.expr());
-            solve(t, tExpr, ctx);
+        if (ast.c(n) != -1) {
+            Type tExpr = visit(ast.c(n));
+            solve(t, tExpr, n);
         }
-        symbolTable.put(name, t);
-        return new PrimitiveType(Type.Base.VOID);
+        declarer(id, t);
+        noter(n, t);
+        return PrimitiveType.VOID;
     }
 
     /**
      * Affectation sur variable ou accès tabulaire en chaîne (t[i][j] = v).
      * Vérifie les index (INT), contraint les niveaux de tableaux, puis unifie la valeur assignée.
-     * @param ctx nœud ANTLR de l’affectation
+     * @param n nœud de l’affectation
      * @return VOID
      * @throws SemanticError si la variable est inconnue ou si les types/index sont invalides
      */
-    @Override
-    public Type visitAssignment(grammarTCLParser.AssignmentContext ctx) {
-        String name = ctx.VAR().getText();
-        Type tVar = symbolTable.get(name);
-        if (tVar == null) throw new SemanticError(ctx, "La variable '" + name + "' n'est pas déclarée.");
+    public Type visitAssignment(int n) {
+        int id = ast.a(n);
+        Type tVar = symbole(id);
+        if (tVar == null) throw new SemanticError(ast.ligne(n), "La variable '" + ast.nom(id) + "' n'est pas déclarée.");
 
-        // La valeur à assigner est toujours la dernière expression
-        int lastIndex = ctx.expr().size() - 1;
-        Type tExpr = visit(ctx.expr(lastIndex));
+        // La valeur à assigner est visitée en premier
+        Type tExpr = visit(ast.c(n));
 
-        // Le nombre de crochets correspond au nombre d'expr - 1 (la valeur)
-        int nbAccess = ctx.expr().size() - 1;
+        // Un indice par niveau de crochets
+        int indices = ast.b(n);
+        int nbAccess = ast.taille(indices);
         Type currentType = tVar;
 
         for (int i = 0; i < nbAccess; i++) {
             // L'index doit être un int
-            Type tIndex = visit(ctx.expr(i));
-            solve(tIndex, new PrimitiveType(Type.Base.INT), ctx);
+            Type tIndex = visit(ast.element(indices, i));
+            solve(tIndex, PrimitiveType.INT, n);
 
             // On creuse : currentType doit être un tableau
             UnknownType content = new UnknownType();
-            solve(currentType, new ArrayType(content), ctx);
+            solve(currentType, ArrayType.of(content), n);
             currentType = content;
         }
 
-        solve(currentType, tExpr, ctx);
-        return new PrimitiveType(Type.Base.VOID);
+        solve(currentType, tExpr, n);
+        return PrimitiveType.VOID;
     }
 
     /**
      * Instruction d’affichage: s’assure que la variable existe et n’est pas de type VOID.
-     * @param ctx nœud ANTLR du print
+     * @param n nœud du print
      * @return VOID
      * @throws SemanticError si la variable est inconnue ou de type VOID
      */
-    @Override
-    public Type visitPrint(grammarTCLParser.PrintContext ctx) {
-        String varName = ctx.VAR().getText();
-        Type t = symbolTable.get(varName);
-        if (t == null) throw new SemanticError(ctx, "La variable '" + varName + "' n'est pas déclarée.");
+    public Type visitPrint(int n) {
+        int id = ast.a(n);
+        Type t = symbole(id);
+        if (t == null) throw new SemanticError(ast.ligne(n), "La variable '" + ast.nom(id) + "' n'est pas déclarée.");
 
-        if (t instanceof PrimitiveType && ((PrimitiveType)t).getType() == Type.Base.VOID) {
-            throw new SemanticError(ctx, "Impossible d'afficher du VOID.");
+        if (t == PrimitiveType.VOID) {
+            throw new SemanticError(ast.ligne(n), "Impossible d'afficher du VOID.");
         }
-        return new PrimitiveType(Type.Base.VOID);
+        noter(n, t);
+        return PrimitiveType.VOID;
     }
 
     /**
      * Bloc d’instructions: crée une nouvelle portée temporaire, visite chaque instruction, puis restaure.
-     * @param ctx nœud ANTLR du bloc
+     * @param n nœud du bloc
      * @return VOID
      */
-    @Override
-    public Type visitBlock(grammarTCLParser.BlockContext ctx) {
-        Map<String, Type> parentScope = new HashMap<>(this.symbolTable);
-        for(grammarTCLParser.InstrContext instr : ctx.instr()) {
-            visit(instr);
-        }
-        this.symbolTable = parentScope;
-        return new PrimitiveType(Type.Base.VOID);
+    public Type visitBlock(int n) {
+        return instructions(n);
     }
 
     // --- STRUCTURES DE CONTRÔLE ---
 
     /**
      * Instruction conditionnelle if/else: impose un booléen pour la condition et visite les branches.
-     * @param ctx nœud ANTLR du if
+     * @param n nœud du if
      * @return VOID
      * @throws SemanticError si la condition n’est pas booléenne
      */
-    @Override
-    public Type visitIf(grammarTCLParser.IfContext ctx) {
-        solve(visit(ctx.expr()), new PrimitiveType(Type.Base.BOOL), ctx);
-        visit(ctx.instr(0));
-        if (ctx.instr().size() > 1) {
-            visit(ctx.instr(1));
-        }
-        return new PrimitiveType(Type.Base.VOID);
+    public Type visitIf(int n) {
+        return instructions(n);
     }
 
     /**
      * Boucle while: impose un booléen pour la condition et visite le corps.
-     * @param ctx nœud ANTLR du while
+     * @param n nœud du while
      * @return VOID
      * @throws SemanticError si la condition n’est pas booléenne
      */
-    @Override
-    public Type visitWhile(grammarTCLParser.WhileContext ctx) {
-        solve(visit(ctx.expr()), new PrimitiveType(Type.Base.BOOL), ctx);
-        visit(ctx.instr());
-        return new PrimitiveType(Type.Base.VOID);
+    public Type visitWhile(int n) {
+        return instructions(n);
     }
 
     /**
      * Boucle for (init; cond; incr): visite l’init et l’incrément si présents, impose BOOL sur la condition,
      * et exécute le corps dans une portée restaurée à la fin.
-     * @param ctx nœud ANTLR du for
+     * @param n nœud du for
      * @return VOID
      * @throws SemanticError si la condition n’est pas booléenne
      */
-    @Override
-    public Type visitFor(grammarTCLParser.ForContext ctx) {
-        Map<String, Type> snapshot = new HashMap<>(symbolTable);
-        if (ctx.instr(0) != null) visit(ctx.instr(0)); // Init
-        solve(visit(ctx.expr()), new PrimitiveType(Type.Base.BOOL), ctx); // Condition
-        if (ctx.instr().size() > 2) visit(ctx.instr(1)); // Incrément
-        visit(ctx.instr(ctx.instr().size() - 1)); // Corps
-        symbolTable = snapshot;
-        return new PrimitiveType(Type.Base.VOID);
+    public Type visitFor(int n) {
+        return instructions(n);
     }
 
     // --- TABLEAUX ---
 
     /**
      * Accès à un tableau t[i]: vérifie que l’index est INT et retourne le type des éléments du tableau.
-     * @param ctx nœud ANTLR de l’accès tabulaire
+     * @param n nœud de l’accès tabulaire
      * @return le type des éléments du tableau
      * @throws SemanticError si l’index n’est pas entier ou si l’expression n’est pas un tableau
      */
-    @Override
-    public Type visitTab_access(grammarTCLParser.Tab_accessContext ctx) {
-        Type tTab = visit(ctx.expr(0));
-        Type tIndex = visit(ctx.expr(1));
-
-        solve(tIndex, new PrimitiveType(Type.Base.INT), ctx);
-
-        UnknownType elemType = new UnknownType();
-        solve(tTab, new ArrayType(elemType), ctx);
-
-        return elemType;
+    public Type visitTab_access(int n) {
+        return operateurs(n);
     }
 
     /**
      * Initialisation de tableau: contraint tous les éléments à un type commun et retourne ArrayType(elem).
      * Si la liste est vide, retourne un tableau d’éléments inconnus.
-     * @param ctx nœud ANTLR de l’initialisation de tableau
+     * @param n nœud de l’initialisation de tableau
      * @return un ArrayType dont le type d’élément est unifié sur la liste
      */
-    @Override
-    public Type visitTab_initialization(grammarTCLParser.Tab_initializationContext ctx) {
-        if (ctx.expr().isEmpty()) {
-            return new ArrayType(new UnknownType());
-        } else {
-            UnknownType elemType = new UnknownType();
-            for (grammarTCLParser.ExprContext expr : ctx.expr()) {
-                Type tElem = visit(expr);
-                solve(tElem, elemType, ctx);
-            }
-            return new ArrayType(elemType);
-        }
+    public Type visitTab_initialization(int n) {
+        return operateurs(n);
     }
 
     /**
      * Type tableau: construit un ArrayType du type de base fourni.
-     * @param ctx nœud ANTLR du type tableau
+     * @param n nœud du type tableau
      * @return un ArrayType(baseType)
      */
-    @Override
-    public Type visitTab_type(grammarTCLParser.Tab_typeContext ctx) {
-        Type baseType = visit(ctx.type());
-        return new ArrayType(baseType);
-    }
-
-    /**
-     * Parenthèses: propage simplement le type de l’expression entre parenthèses.
-     * @param ctx nœud ANTLR des parenthèses
-     * @return le type de l’expression interne
-     */
-    @Override
-    public Type visitBrackets(grammarTCLParser.BracketsContext ctx) {
-        return visit(ctx.expr());
+    public Type visitTab_type(int n) {
+        Type baseType = visit(ast.a(n));
+        return ArrayType.of(baseType);
     }
 
     // --- FONCTIONS ---
@@ -463,135 +733,458 @@ public class TyperVisitor extends AbstractParseTreeVisitor<Type> implements gram
     /**
      * Déclaration de fonction: construit la signature (retour + paramètres), gère les types auto,
      * vérifie les doublons d’arguments, visite le corps et unifie le type de retour effectif avec la signature.
-     * @param ctx nœud ANTLR de la déclaration de fonction
+     * @param n nœud de la déclaration de fonction
      * @return VOID
      * @throws SemanticError si redéclaration, doublon d’arguments ou incompatibilité de types
      */
-    @Override
-    public Type visitDecl_fct(grammarTCLParser.Decl_fctContext ctx) {
-        String name = ctx.VAR(0).getText();
-        if (symbolTable.containsKey(name)) {
-            throw new SemanticError(ctx, "La fonction '" + name + "' est déjà définie.");
+    public Type visitDecl_fct(int n) {
+        int id = ast.b(n);
+        if (symbole(id) != null) {
+            throw new SemanticError(ast.ligne(n), "La fonction '" + ast.nom(id) + "' est déjà définie.");
         }
 
-        Type returnType = ctx.type(0).getText().equals("auto") ? new UnknownType() : visit(ctx.type(0));
+        if (functionCache == null) {
+            typerFonction(n, null, null);
+        } else {
+            typerFonction(n, cleTypage(ast.texte(n), ast.identifiants(n)), ast.noeuds(n));
+        }
+        return PrimitiveType.VOID;
+    }
+
+    /**
+     * Type une déclaration de fonction dont le nom est libre : déclare puis généralise sa signature.
+     * @param n nœud de la déclaration de fonction
+     * @param cle clé du cache de typage (null sans compilation incrémentale)
+     * @param noeuds nœuds de la déclaration (Ast.noeuds), dont les types sont mis en cache avec la signature
+     * @throws SemanticError si doublon d’arguments ou incompatibilité de types
+     */
+    private void typerFonction(int n, String cle, int[] noeuds) {
+        int id = ast.b(n);
+        String name = ast.nom(id);
+        if (cle != null) {
+            FunctionCache.TypeEntry cached = functionCache.getType(cle);
+            if (cached != null) {
+                // Même texte et mêmes dépendances : on reprend la signature et les types des nœuds
+                // sans retyper le corps
+                Metrics.count("incremental.typer.hits");
+                for (int k = 0; k < noeuds.length; k++) {
+                    noter(noeuds[k], cached.typesNoeuds[k]);
+                }
+                FunctionType fType = freshFunctionType(cached.signature);
+                declarer(id, fType);
+                generaliser(id, fType);
+                return;
+            }
+            Metrics.count("incremental.typer.misses");
+            for (int x : noeuds) {
+                noter(x, null); // types d'une fonction analysée avant (analyse en flux)
+            }
+        }
+
+        Type returnType = visit(ast.a(n));
         ArrayList<Type> argsTypes = new ArrayList<>();
-        Map<String, Type> tempArgs = new HashMap<>();
 
-        for (int i = 1; i < ctx.VAR().size(); i++) {
-            String argName = ctx.VAR(i).getText();
-            if (tempArgs.containsKey(argName)) {
-                throw new SemanticError(ctx, "L'argument '" + argName + "' est dupliqué dans la fonction " + name);
+        // Paramètres : paires (type, nom)
+        int params = ast.c(n);
+        for (int i = 0; i < ast.taille(params); i += 2) {
+            int argId = ast.element(params, i + 1);
+            for (int j = 1; j < i; j += 2) {
+                if (ast.element(params, j) == argId) {
+                    throw new SemanticError(ast.ligne(n), "L'argument '" + ast.nom(argId) + "' est dupliqué dans la fonction " + name);
+                }
             }
-            Type argType = ctx.type(i).getText().equals("auto") ? new UnknownType() : visit(ctx.type(i));
+            Type argType = visit(ast.element(params, i));
             argsTypes.add(argType);
-            tempArgs.put(argName, argType);
         }
 
-        FunctionType fType = new FunctionType(returnType, argsTypes);
-        symbolTable.put(name, fType);
+        FunctionType fType = FunctionType.of(returnType, argsTypes);
+        declarer(id, fType);
 
-        Map<String, Type> snapshot = new HashMap<>(symbolTable);
-        symbolTable.putAll(tempArgs);
+        int portee = ouvrirPortee();
+        for (int i = 0; i < ast.taille(params); i += 2) {
+            declarer(ast.element(params, i + 1), argsTypes.get(i / 2));
+        }
 
         // Visite du corps et récupération du type réel retourné
-        Type bodyReturnType = visit(ctx.core_fct());
+        Type bodyReturnType = visit(ast.d(n));
+
+        solve(bodyReturnType, returnType, n);
+
+        fermerPortee(portee);
+        generaliser(id, fType);
 
-        solve(bodyReturnType, returnType, ctx);
+        if (cle != null) {
+            Type[] types = new Type[noeuds.length];
+            for (int k = 0; k < noeuds.length; k++) {
+                Type t = typesNoeuds[noeuds[k]];
+                types[k] = t == null ? null : t.resolve();
+            }
+            functionCache.putType(cle, new FunctionCache.TypeEntry((FunctionType) symbole(id), types));
+        }
+    }
 
-        symbolTable = snapshot;
-        symbolTable.put(name, fType);
+    /**
+     * Clé du cache de typage d'une fonction : son texte et le type courant de chaque identifiant
+     * qu'elle utilise et qui est déjà dans la table des symboles (fonctions déclarées avant elle).
+     * @param texte écriture de la déclaration de fonction (Ast.texte)
+     * @param identifiants identifiants de la déclaration (Ast.identifiants)
+     * @return la clé de cache
+     */
+    private String cleTypage(String texte, int[] identifiants) {
+        StringBuilder cle = new StringBuilder(texte);
+        for (int id : identifiants) {
+            Type t = symbole(id);
+            if (t != null) {
+                cle.append('\0').append(ast.nom(id)).append(':').append(canonique(t));
+            }
+        }
+        return cle.toString();
+    }
 
-        return new PrimitiveType(Type.Base.VOID);
+    /**
+     * Écriture d'un type indépendante de la numérotation des variables de type : chaque représentant
+     * (find) est numéroté dans son ordre d'apparition. Le type est parcouru avec une pile explicite,
+     * sans passer par toString.
+     * @param t type à écrire
+     * @return String forme canonique du type
+     */
+    private static String canonique(Type t) {
+        StringBuilder sb = new StringBuilder();
+        IdentityHashMap<UnknownType, Integer> numeros = new IdentityHashMap<>();
+        // Morceaux restant à écrire, le prochain en sommet : types à parcourir ou texte à recopier
+        ArrayDeque<Object> pile = new ArrayDeque<>();
+        pile.push(t);
+        while (!pile.isEmpty()) {
+            Object o = pile.pop();
+            if (o instanceof String) {
+                sb.append((String) o);
+                continue;
+            }
+            Type x = ((Type) o).find();
+            if (x instanceof UnknownType) {
+                UnknownType ut = (UnknownType) x;
+                Integer n = numeros.get(ut);
+                if (n == null) {
+                    n = numeros.size();
+                    numeros.put(ut, n);
+                }
+                sb.append('v').append(n);
+            } else if (x instanceof ArrayType) {
+                pile.push("[]");
+                pile.push(((ArrayType) x).getTabType());
+            } else if (x instanceof FunctionType) {
+                FunctionType ft = (FunctionType) x;
+                sb.append('(');
+                pile.push(ft.getReturnType());
+                pile.push(") -> ");
+                for (int i = ft.getNbArgs() - 1; i >= 0; i--) {
+                    pile.push(ft.getArgsType(i));
+                    if (i > 0) pile.push(", ");
+                }
+            } else {
+                sb.append(x);
+            }
+        }
+        return sb.toString();
     }
 
     /**
      * Corps de fonction: visite toutes les instructions, évalue l’expression de return et restitue la portée.
-     * @param ctx nœud ANTLR du corps de fonction
+     * @param n nœud du corps de fonction
      * @return le type calculé de l’expression de retour
      */
-    @Override
-    public Type visitCore_fct(grammarTCLParser.Core_fctContext ctx) {
-        Map<String, Type> snapshot = new HashMap<>(symbolTable);
-        for (grammarTCLParser.InstrContext instr : ctx.instr()) {
-            visit(instr);
+    public Type visitCore_fct(int n) {
+        int portee = ouvrirPortee();
+        int instrs = ast.a(n);
+        for (int i = 0; i < ast.taille(instrs); i++) {
+            visit(ast.element(instrs, i));
         }
-        Type retType = visit(ctx.expr());
-        symbolTable = snapshot;
+        Type retType = visit(ast.b(n));
+        fermerPortee(portee);
         return retType;
     }
 
     /**
      * Instruction return: propage le type de l’expression renvoyée.
-     * @param ctx nœud ANTLR du return
+     * @param n nœud du return
      * @return le type de l’expression de retour
      */
-    @Override
-    public Type visitReturn(grammarTCLParser.ReturnContext ctx) {
-        return visit(ctx.expr());
+    public Type visitReturn(int n) {
+        return visit(ast.a(n));
     }
 
     /**
      * Appel de fonction: vérifie l’existence de la fonction, le nombre d’arguments, instancie
      * fraîchement la signature polymorphe (freshening) et unifie chaque argument réel avec le paramètre.
-     * @param ctx nœud ANTLR de l’appel
+     * @param n nœud de l’appel
      * @return le type de retour de l’instance appelée
      * @throws SemanticError si la cible n’est pas une fonction ou si l’arity est incorrecte
      */
-    @Override
-    public Type visitCall(grammarTCLParser.CallContext ctx) {
-        String name = ctx.VAR().getText();
-        Type t = symbolTable.get(name);
+    public Type visitCall(int n) {
+        return operateurs(n);
+    }
+
+    /**
+     * Instance de la signature de la fonction appelée par n, après vérification du nombre d'arguments
+     * @param n nœud de l’appel
+     * @return FunctionType dont les arguments sont à unifier avec ceux de l'appel
+     * @throws SemanticError si la cible n’est pas une fonction ou si l’arity est incorrecte
+     */
+    private FunctionType instanceAppel(int n) {
+        int id = ast.a(n);
+        String name = ast.nom(id);
+        Type t = symbole(id);
 
         if (!(t instanceof FunctionType)) {
-            throw new SemanticError(ctx, "Fonction inconnue ou variable utilisée comme fonction : " + name);
+            throw new SemanticError(ast.ligne(n), "Fonction inconnue ou variable utilisée comme fonction : " + name);
         }
 
         FunctionType fType = (FunctionType) t;
 
-        if (ctx.expr().size() != fType.getNbArgs()) {
-            throw new SemanticError(ctx, "Mauvais nombre d'arguments pour " + name + " (attendu: " + fType.getNbArgs() + ", reçu: " + ctx.expr().size() + ")");
-        }
-
-        fType = (FunctionType) fType.substituteAll(this.types);
-
-        FunctionType instance = freshFunctionType(fType);
-
-        for (int i = 0; i < ctx.expr().size(); i++) {
-            Type argType = visit(ctx.expr(i));
-            solve(argType, instance.getArgsType(i), ctx);
+        int nbArgs = ast.taille(ast.b(n));
+        if (nbArgs != fType.getNbArgs()) {
+            throw new SemanticError(ast.ligne(n), "Mauvais nombre d'arguments pour " + name + " (attendu: " + fType.getNbArgs() + ", reçu: " + nbArgs + ")");
         }
 
-        return instance.getReturnType();
+        TypeScheme schema = id < schemas.length ? schemas[id] : null;
+        return schema != null && schema.getSignature() == fType
+            ? schema.instancier()
+            : freshFunctionType(fType);
     }
 
     /**
      * Point d’entrée main: enregistre une signature main(): INT, visite les autres fonctions,
      * visite le corps et unifie le type de retour obtenu avec INT.
-     * @param ctx nœud ANTLR du main
+     * @param n nœud du main
      * @return la FunctionType de main
      * @throws SemanticError si le type renvoyé par le corps n’est pas INT
      */
-    @Override
-    public Type visitMain(grammarTCLParser.MainContext ctx) {
-        FunctionType mainType = new FunctionType(new PrimitiveType(Type.Base.INT), new ArrayList<>());
-        symbolTable.put("main", mainType);
+    public Type visitMain(int n) {
+        declarerMain();
+
+        int fcts = ast.a(n);
+        if (ast.taille(fcts) < seuilParallele || !typerEnParallele(fcts)) {
+            for (int i = 0; i < ast.taille(fcts); i++) {
+                visit(ast.element(fcts, i));
+            }
+        }
+
+        return typerCorpsMain(ast.b(n));
+    }
+
+    /**
+     * Type les déclarations de fonctions en parallèle. Une fonction ne peut référencer que
+     * des fonctions déclarées avant elle (ou elle-même) : le graphe d'appel est sans cycle, chacune
+     * de ses composantes fortement connexes est une seule fonction. Chaque fonction reçoit un
+     * niveau, un de plus que le plus haut niveau des fonctions qu'elle référence ; les fonctions
+     * d'un même niveau sont typées en parallèle sur POOL_TYPAGE, par un TyperVisitor propre au
+     * thread où ne sont déclarées que main et les dépendances de la fonction, déjà généralisées.
+     *
+     * Les variables de type étant comparées par numéro, chaque tâche numérote les siennes dans sa
+     * propre plage : les numéros libres sont partagés également entre les fonctions restant à typer,
+     * et le niveau suivant puis le corps de main reprennent après le plus grand numéro utilisé. Une tâche qui
+     * déborde de sa plage échoue. Les signatures et les mesures sont reportées dans l'ordre des
+     * déclarations, une fois toutes les fonctions typées.
+     * En cas d'erreur, rien n'est déclaré : le typage séquentiel reprend tout et signale la première
+     * erreur, avec les mêmes messages (et la même numérotation des variables) qu'auparavant.
+     * @param fcts liste des déclarations de fonctions
+     * @return true si toutes les fonctions ont été typées et déclarées
+     */
+    private boolean typerEnParallele(int fcts) {
+        int nb = ast.taille(fcts);
+        int idMain = ast.numero("main");
+        int[] indices = new int[ast.nbNoms()];
+        Arrays.fill(indices, -1);
+        int[][] dependances = new int[nb][];
+        int[][] identifiants = new int[nb][];
+        String[] textes = new String[nb];
+        int[][] noeuds = new int[nb][];
+        int[] niveaux = new int[nb];
+        int nbNiveaux = 0;
+
+        // Dépendances et niveaux (Ast.texte, Ast.identifiants et Ast.noeuds ne sont pas réentrants :
+        // ils sont calculés ici, avant de lancer les tâches)
+        for (int i = 0; i < nb; i++) {
+            int f = ast.element(fcts, i);
+            int id = ast.b(f);
+            if (id == idMain || indices[id] >= 0) {
+                return false; // redéfinition
+            }
+            identifiants[i] = ast.identifiants(f);
+            int[] deps = new int[identifiants[i].length];
+            int nbDeps = 0;
+            for (int x : identifiants[i]) {
+                if (indices[x] >= 0) {
+                    deps[nbDeps++] = indices[x];
+                    niveaux[i] = Math.max(niveaux[i], niveaux[indices[x]] + 1);
+                }
+            }
+            dependances[i] = Arrays.copyOf(deps, nbDeps);
+            if (functionCache != null) {
+                textes[i] = ast.texte(f);
+                noeuds[i] = ast.noeuds(f);
+            }
+            indices[id] = i;
+            nbNiveaux = Math.max(nbNiveaux, niveaux[i] + 1);
+        }
+
+        FunctionType[] signatures = new FunctionType[nb];
+        TypeScheme[] schemasFonctions = new TypeScheme[nb];
+        Metrics[] mesures = new Metrics[nb];
+        // Plage de numéros de variables de chaque tâche : début, puis fin une fois la tâche terminée
+        int[] debuts = new int[nb];
+        int[] fins = new int[nb];
+        int prochain = UnknownType.getCounter();
+        int restantes = nb;
+        // Les tâches notent les types de leurs nœuds dans le même tableau, qui ne doit plus grandir
+        if (typesNoeuds.length < ast.nbNoeuds()) {
+            typesNoeuds = Arrays.copyOf(typesNoeuds, ast.nbNoeuds());
+        }
+        // Un TyperVisitor par thread, vidé entre deux tâches
+        ConcurrentHashMap<Thread, TyperVisitor> typers = new ConcurrentHashMap<>();
+        for (int niveau = 0; niveau < nbNiveaux; niveau++) {
+            int plage = (Integer.MAX_VALUE - prochain) / restantes;
+            List<Callable<Boolean>> taches = new ArrayList<>();
+            for (int i = 0, j = 0; i < nb; i++) {
+                if (niveaux[i] != niveau) continue;
+                debuts[i] = prochain + j++ * plage;
+                restantes--;
+                int k = i;
+                taches.add(() -> typerTache(typers, fcts, k, idMain, dependances[k], identifiants[k], textes[k],
+                                            noeuds[k], signatures, schemasFonctions, mesures, debuts[k],
+                                            debuts[k] + plage, fins));
+            }
+            try {
+                for (Future<Boolean> resultat : POOL_TYPAGE.invokeAll(taches)) {
+                    if (!resultat.get()) return false;
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                return false; // le typage séquentiel reproduira l'erreur
+            }
+            for (int i = 0; i < nb; i++) {
+                if (niveaux[i] == niveau) prochain = Math.max(prochain, fins[i]);
+            }
+        }
+
+        Metrics courantes = Metrics.current();
+        for (int i = 0; i < nb; i++) {
+            declarerFonction(ast.b(ast.element(fcts, i)), signatures[i], schemasFonctions[i]);
+            courantes.addAll(mesures[i]);
+        }
+        // La suite (corps de main) ne reprend aucun numéro des variables des fonctions
+        UnknownType.setCounter(prochain);
+        return true;
+    }
 
-        for (int i = 0; i < ctx.decl_fct().size(); i++) {
-            visit(ctx.decl_fct(i));
+    /**
+     * Typage d'une fonction par typerEnParallele, sur un thread de POOL_TYPAGE : le compteur de
+     * variables, les mesures et l'affichage du test d'occurrence de ce thread sont rétablis en sortie.
+     * Le TyperVisitor du thread ne garde rien de la tâche : ses déclarations sont annulées à la fin.
+     * @param debut premier numéro des variables de type de la tâche
+     * @param fin fin (exclue) de la plage de numéros de la tâche
+     * @param fins reçoit le numéro suivant la dernière variable créée par la tâche
+     * @return false si la fonction est mal typée ou a débordé de sa plage
+     */
+    private boolean typerTache(ConcurrentHashMap<Thread, TyperVisitor> typers, int fcts, int i, int idMain,
+                               int[] dependances, int[] identifiants, String texte, int[] noeuds,
+                               FunctionType[] signatures, TypeScheme[] schemasFonctions, Metrics[] mesures,
+                               int debut, int fin, int[] fins) {
+        int compteur = UnknownType.getCounter();
+        boolean muet = UnknownType.setMuet(true);
+        Metrics precedentes = Metrics.current();
+        Metrics tache = Metrics.reset();
+        TyperVisitor typer = typers.computeIfAbsent(Thread.currentThread(), t -> new TyperVisitor(ast, functionCache));
+        try {
+            UnknownType.setCounter(debut);
+            typer.typesNoeuds = typesNoeuds;
+            typer.declarer(idMain, symbole(idMain));
+            for (int d : dependances) {
+                typer.declarerFonction(ast.b(ast.element(fcts, d)), signatures[d], schemasFonctions[d]);
+            }
+            int f = ast.element(fcts, i);
+            int id = ast.b(f);
+            typer.typerFonction(f, texte == null ? null : typer.cleTypage(texte, identifiants), noeuds);
+            signatures[i] = (FunctionType) typer.symbole(id);
+            schemasFonctions[i] = typer.schemas[id];
+            mesures[i] = tache;
+            fins[i] = UnknownType.getCounter();
+            typer.schemas[id] = null;
+            for (int d : dependances) {
+                typer.schemas[ast.b(ast.element(fcts, d))] = null;
+            }
+            typer.fermerPortee(0);
+            // Numéros débordant sur la plage suivante (ou au-delà de Integer.MAX_VALUE)
+            return fins[i] >= debut && fins[i] <= fin;
+        } catch (SemanticError e) {
+            // Typage interrompu : ce TyperVisitor n'est plus dans un état réutilisable
+            typers.remove(Thread.currentThread());
+            return false;
+        } finally {
+            UnknownType.setCounter(compteur);
+            UnknownType.setMuet(muet);
+            Metrics.set(precedentes);
+            // Tables de partage du thread : ne pas garder les types de cette compilation
+            Type.resetInterned();
         }
+    }
 
-        Type ret = visit(ctx.core_fct());
-        // On passe 'ctx' au solveur, mais main n'a pas vraiment de ctx unique englobant,
-        // on peut utiliser le core_fct si besoin, ou null si on est confiant.
-        // Utilisons ctx.core_fct() pour la localisation.
-        solve(ret, mainType.getReturnType(), ctx.core_fct());
+    /**
+     * Début du typage du programme : déclare la fonction main.
+     * Avec typerCorpsMain, permet de typer les fonctions une à une au fil de l'analyse syntaxique.
+     */
+    public void declarerMain() {
+        FunctionType mainType = FunctionType.of(PrimitiveType.INT, new ArrayList<>());
+        declarer(ast.interner("main"), mainType);
+    }
+
+    /**
+     * Fin du typage du programme : type le corps de main, une fois toutes les fonctions typées
+     * @param n nœud du corps de main
+     * @return le type de main
+     */
+    public Type typerCorpsMain(int n) {
+        FunctionType mainType = (FunctionType) symbole(ast.numero("main"));
+        Type ret = visit(n);
+        // Le corps de main sert à la localisation de l'erreur
+        solve(ret, mainType.getReturnType(), n);
 
         return mainType;
     }
 
     // --- POLYMORPHISME (Helpers) ---
 
+    /**
+     * Généralise la signature d'une fonction dont le typage est terminé : plus rien ne peut lier
+     * ses variables, la table des symboles reçoit sa copie résolue et les appels suivants
+     * l'instancient par son schéma.
+     * @param id numéro de l'identifiant de la fonction
+     * @param fType signature de la fonction
+     */
+    private void generaliser(int id, FunctionType fType) {
+        // La signature résolue n'a plus de liaison à suivre : elle peut être lue depuis d'autres threads
+        FunctionType resolue = (FunctionType) fType.resolve();
+        symbolTable[id] = resolue;
+        poserSchema(id, new TypeScheme(resolue));
+    }
+
+    /**
+     * Déclare une fonction déjà typée et généralisée (typage parallèle)
+     * @param id numéro de l'identifiant de la fonction
+     * @param signature signature résolue de la fonction
+     * @param schema schéma de la signature
+     */
+    private void declarerFonction(int id, FunctionType signature, TypeScheme schema) {
+        declarer(id, signature);
+        poserSchema(id, schema);
+    }
+
+    private void poserSchema(int id, TypeScheme schema) {
+        if (id >= schemas.length) {
+            schemas = Arrays.copyOf(schemas, Math.max(schemas.length * 2, id + 1));
+        }
+        schemas[id] = schema;
+    }
+
     /**
      * Crée une instance fraîche d’un FunctionType en remplaçant chaque UnknownType par un nouveau UnknownType
      * cohérent via un mapping partagé, afin de modéliser une instanciation polymorphe indépendante.
@@ -605,7 +1198,7 @@ public class TyperVisitor extends AbstractParseTreeVisitor<Type> implements gram
             newArgs.add(freshType(arg, mapping));
         }
         Type newReturn = freshType(f.getReturnType(), mapping);
-        return new FunctionType(newReturn, newArgs);
+        return FunctionType.of(newReturn, newArgs);
     }
 
     /**
@@ -616,30 +1209,58 @@ public class TyperVisitor extends AbstractParseTreeVisitor<Type> implements gram
      * @return un type équivalent structurellement où les UnknownType ont été remplacées par de nouvelles
      */
     private Type freshType(Type t, Map<UnknownType, UnknownType> mapping) {
+        t = t.find();
         if (t instanceof UnknownType) {
             UnknownType ut = (UnknownType) t;
             if (!mapping.containsKey(ut)) mapping.put(ut, new UnknownType());
             return mapping.get(ut);
         } else if (t instanceof ArrayType) {
-            return new ArrayType(freshType(((ArrayType) t).getTabType(), mapping));
+            return ArrayType.of(freshType(((ArrayType) t).getTabType(), mapping));
         } else if (t instanceof FunctionType) {
             FunctionType ft = (FunctionType) t;
             ArrayList<Type> args = new ArrayList<>();
             for (Type arg : ft.getArgsTypes()) args.add(freshType(arg, mapping));
-            return new FunctionType(freshType(ft.getReturnType(), mapping), args);
+            return FunctionType.of(freshType(ft.getReturnType(), mapping), args);
         } else {
             return t;
         }
     }
+    /**
+     * Retourne le type résolu d'un symbole global, sans reconstruire toute la table
+     * @param name nom du symbole
+     * @return le type avec toutes les liaisons connues, ou null si le symbole n'existe pas
+     */
+    public Type getResolvedType(String name) {
+        int id = ast.numero(name);
+        Type t = id < 0 ? null : symbole(id);
+        return t == null ? null : t.resolve();
+    }
+
+    /**
+     * Types des nœuds typés (expressions et variable de chaque print ou déclaration), résolus une fois
+     * pour toutes : la génération de code les lit directement par numéro de nœud.
+     * @return tableau indexé par nœud (null pour les nœuds sans type noté)
+     */
+    public Type[] getTypesNoeuds() {
+        for (int n = 0; n < ast.nbNoeuds() && n < typesNoeuds.length; n++) {
+            if (typesNoeuds[n] != null) {
+                typesNoeuds[n] = typesNoeuds[n].resolve();
+            }
+        }
+        return typesNoeuds;
+    }
+
     /**
      * Retourne la table des symboles avec tous les types résolus.
      */
     public Map<String, Type> getSymbolTable() {
         Map<String, Type> resolvedTable = new HashMap<>();
 
-        for (Map.Entry<String, Type> entry : this.symbolTable.entrySet()) {
-            // On applique toutes les substitutions connues pour avoir le vrai type (INT/BOOL)
-            resolvedTable.put(entry.getKey(), entry.getValue().substituteAll(this.types));
+        for (int id = 0; id < this.symbolTable.length; id++) {
+            if (this.symbolTable[id] != null) {
+                // On résout toutes les liaisons connues pour avoir le vrai type (INT/BOOL)
+                resolvedTable.put(ast.nom(id), this.symbolTable[id].resolve());
+            }
         }
 
         return resolvedTable;
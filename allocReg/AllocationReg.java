@@ -1,7 +1,11 @@
 package allocReg;
 
+import Asm.Program;
+import Metrics.Metrics;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -12,6 +16,7 @@ public class AllocationReg {
     private static final int MAX_REGISTERS = 32;
     private static final int TEMP_REG = 30;
     private static final int ADDR_REG = 31;
+    public static final int DEFAULT_MAX_LIGNES = 1000;
 
     private String fileName;
     private ControlGraph cfg;
@@ -22,9 +27,24 @@ public class AllocationReg {
     private HashSet<String> varsEnMemoire;
     private HashMap<String, Integer> emplacementsMemoire;
     private HashSet<String> reservedRegs;
+    private NiveauDiagnostic niveau = NiveauDiagnostic.INFO;
+    private int maxLignes = DEFAULT_MAX_LIGNES;
 
     public AllocationReg(String fileName) {
         this.fileName = fileName;
+        allouer(new ControlGraph(fileName));
+    }
+
+    public AllocationReg(Program program) {
+        allouer(new ControlGraph(program));
+    }
+
+    public AllocationReg(Program program, NiveauDiagnostic niveau) {
+        this.niveau = niveau;
+        allouer(new ControlGraph(program));
+    }
+
+    private void allouer(ControlGraph cfg) {
         this.varsEnMemoire = new HashSet<>();
         this.emplacementsMemoire = new HashMap<>();
         this.reservedRegs = new HashSet<>();
@@ -33,20 +53,35 @@ public class AllocationReg {
         reservedRegs.add("R30");
         reservedRegs.add("R31");
 
-        this.cfg = new ControlGraph(fileName);
-        this.cfg.getGraph();
-
-        this.calculLV = new CalculLV(this.cfg);
+        this.cfg = cfg;
+        Metrics.debut("cfg");
+        try {
+            this.cfg.getGraph();
+        } finally {
+            Metrics.fin();
+        }
+        Metrics.add("cfg.instructions", this.cfg.getInstructions().size());
 
-        this.conflictGraph = new ConflictGraph(this.cfg, this.calculLV, this.varsEnMemoire, this.reservedRegs);
-        this.conflictGraph.getGraph();
+        Metrics.debut("liveness");
+        try {
+            this.calculLV = new CalculLV(this.cfg);
+        } finally {
+            Metrics.fin();
+        }
 
-        this.nbColors = this.conflictGraph.color();
+        construireConflits();
 
         if (this.nbColors > MAX_REGISTERS) {
-            System.out.println("\nLe graphe nécessite " + this.nbColors + " couleurs.");
-            System.out.println("Déplacement de variables en mémoire : \n");
-            gererDepassementRegistres();
+            if (niveau != NiveauDiagnostic.SILENCIEUX) {
+                System.out.println("\nLe graphe nécessite " + this.nbColors + " couleurs.");
+                System.out.println("Déplacement de variables en mémoire : \n");
+            }
+            Metrics.debut("spill");
+            try {
+                gererDepassementRegistres();
+            } finally {
+                Metrics.fin();
+            }
         }
 
         this.AffecterReg = new HashMap<>();
@@ -75,17 +110,19 @@ public class AllocationReg {
             }
 
             varsEnMemoire.add(varADeplacer);
-            System.out.println("  Déplacement de " + varADeplacer + " en mémoire (conflits: " + conflictGraph.getDegree(varADeplacer) + ")");
-
-            this.conflictGraph = new ConflictGraph(this.cfg, this.calculLV, this.varsEnMemoire, this.reservedRegs);
-            this.conflictGraph.getGraph();
+            if (niveau != NiveauDiagnostic.SILENCIEUX) {
+                System.out.println("  Déplacement de " + varADeplacer + " en mémoire (conflits: " + conflictGraph.getDegree(varADeplacer) + ")");
+            }
 
-            this.nbColors = this.conflictGraph.color();
+            construireConflits();
         }
+        Metrics.add("spill.iterations", iteration);
 
         if (nbColors <= MAX_REGISTERS) {
-            System.out.println("\nRéussite : " + varsEnMemoire.size() + " variables en mémoire");
-            System.out.println("  Nouvelles couleurs nécessaires : " + nbColors);
+            if (niveau != NiveauDiagnostic.SILENCIEUX) {
+                System.out.println("\nRéussite : " + varsEnMemoire.size() + " variables en mémoire");
+                System.out.println("  Nouvelles couleurs nécessaires : " + nbColors);
+            }
 
             int offset = 0;
             for (String var : varsEnMemoire) {
@@ -97,6 +134,23 @@ public class AllocationReg {
         }
     }
 
+    // Construit le graphe de conflits (hors variables en mémoire) et le colorie
+    private void construireConflits() {
+        this.conflictGraph = new ConflictGraph(this.cfg, this.calculLV, this.varsEnMemoire, this.reservedRegs);
+        Metrics.debut("conflictGraph");
+        try {
+            this.conflictGraph.getGraph();
+        } finally {
+            Metrics.fin();
+        }
+        Metrics.debut("color");
+        try {
+            this.nbColors = this.conflictGraph.color();
+        } finally {
+            Metrics.fin();
+        }
+    }
+
     private String choisirVariableADeplacer() {
         String varMax = null;
         int conflitsMax = -1;
@@ -131,15 +185,29 @@ public class AllocationReg {
         return this.nbColors;
     }
 
+    // Nombre maximal de lignes de chaque section des affichages de debug
+    public void setMaxLignes(int maxLignes) {
+        this.maxLignes = maxLignes;
+    }
+
+    // Affiche les graphes, les ensembles LV et l'affectation des registres, section par section
     public void afficherDebug() {
-        System.out.println("GRAPHE DE CONTROLE");
-        System.out.println(this.cfg);
+        PrintStream out = System.out;
+        try {
+            out.println("GRAPHE DE CONTROLE");
+            this.cfg.write(out, maxLignes);
+            out.println();
 
-        System.out.println("\nENSEMBLES LV");
-        this.calculLV.afficherLVtab();
+            out.println("\nENSEMBLES LV");
+            this.calculLV.afficherLVtab(out, maxLignes);
 
-        System.out.println("\nGRAPHE DE CONFLITS");
-        System.out.println(this.conflictGraph);
+            out.println("\nGRAPHE DE CONFLITS");
+            this.conflictGraph.write(out, maxLignes);
+            out.println();
+        } catch (IOException e) {
+            // impossible : un PrintStream ne lève pas d'IOException
+            throw new UncheckedIOException(e);
+        }
 
         System.out.println("\nCOLORATION");
         System.out.println("Nombre de couleurs utilisées : " + this.nbColors);
@@ -152,7 +220,12 @@ public class AllocationReg {
         }
 
         System.out.println("\nAffectation des registres :");
+        int n = 0;
         for (String variable : this.conflictGraph.getVertices()) {
+            if (n++ == maxLignes) {
+                System.out.println("  ... (" + (this.conflictGraph.getVertices().size() - maxLignes) + " variable(s) non affichée(s))");
+                break;
+            }
             int reg = this.getRegistre(variable);
             System.out.println("  " + variable + " -> R" + reg);
         }
@@ -165,6 +238,17 @@ public class AllocationReg {
         }
     }
 
+    // Exporte le graphe de contrôle et le graphe de conflits (colorié) au format DOT de GraphViz
+    public void exporterDot(Path dossier) throws IOException {
+        Files.createDirectories(dossier);
+        try (BufferedWriter writer = Files.newBufferedWriter(dossier.resolve("cfg.dot"))) {
+            this.cfg.writeDot(writer, "cfg");
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(dossier.resolve("conflits.dot"))) {
+            this.conflictGraph.writeDot(writer, "conflits");
+        }
+    }
+
     public ControlGraph getControlGraph() {
         return this.cfg;
     }
@@ -178,19 +262,45 @@ public class AllocationReg {
     }
 
     public String reecriture() {
+        StringBuilder reecriture = new StringBuilder();
+        try {
+            reecriture(reecriture);
+        } catch (IOException e) {
+            // impossible : un StringBuilder ne lève pas d'IOException
+            throw new UncheckedIOException(e);
+        }
+        return reecriture.toString();
+    }
+
+    // Écrit le code final au fur et à mesure dans out, sans construire la chaîne complète
+    public void reecriture(Appendable out) throws IOException {
+        Metrics.debut("reecriture");
+        try {
+            reecrire(out);
+        } finally {
+            Metrics.fin();
+        }
+    }
+
+    private void reecrire(Appendable reecriture) throws IOException {
         ArrayList<String> texte = cfg.getInstructions();
-        System.out.println("INSTRUCTIONS CFG :");
-        for (String s : texte) {
-            System.out.println("[" + s + "]");
+        if (niveau == NiveauDiagnostic.DEBUG) {
+            System.out.println("INSTRUCTIONS CFG :");
+            int n = 0;
+            for (String s : texte) {
+                if (n++ == maxLignes) {
+                    System.out.println("... (" + (texte.size() - maxLignes) + " instruction(s) non affichée(s))");
+                    break;
+                }
+                System.out.println("[" + s + "]");
+            }
         }
-        StringBuilder reecriture = new StringBuilder();
-        ArrayList<String> vertices = this.conflictGraph.getVertices();
 
         int spReg = AffecterReg.getOrDefault("SP", 29);
 
         if (!varsEnMemoire.isEmpty()) {
-            reecriture.append("# Code avec variables en mémoire : ").append(varsEnMemoire.size()).append(" variable(s)\n");
-            reecriture.append("# Variables concernées : ").append(varsEnMemoire).append("\n\n");
+            reecriture.append("# Code avec variables en mémoire : " + varsEnMemoire.size() + " variable(s)\n");
+            reecriture.append("# Variables concernées : " + varsEnMemoire + "\n\n");
         }
 
         for (String instruction : texte) {
@@ -201,7 +311,7 @@ public class AllocationReg {
                 continue;
             }
 
-            String[] words = instructionTrim.split("\\s+");
+            String[] words = cfg.getWords(instruction);
 
             int opIndex = words[0].endsWith(":") ? 1 : 0;
             if (opIndex < words.length && words[opIndex].equals("CALL")) {
@@ -219,8 +329,8 @@ public class AllocationReg {
                 if (varsEnMemoire.contains(word) && !varsMemUtilisees.contains(word)) {
                     varsMemUtilisees.add(word);
                     int offset = emplacementsMemoire.get(word);
-                    reecriture.append("ADDi R").append(ADDR_REG).append(" R").append(spReg).append(" ").append(offset).append("\n");
-                    reecriture.append("LD R").append(TEMP_REG).append(" R").append(ADDR_REG).append("\n");
+                    reecriture.append("ADDi R" + ADDR_REG + " R" + spReg + " " + offset + "\n");
+                    reecriture.append("LD R" + TEMP_REG + " R" + ADDR_REG + "\n");
                 }
             }
 
@@ -236,7 +346,7 @@ public class AllocationReg {
                     line.append("R").append(spReg).append(" ");
                 } else if (varsEnMemoire.contains(word)) {
                     line.append("R").append(TEMP_REG).append(" ");
-                } else if (vertices.contains(word)) {
+                } else if (conflictGraph.hasVertex(word)) {
                     int reg = getRegistre(word);
                     if (reg != -1) {
                         line.append("R").append(reg).append(" ");
@@ -261,13 +371,11 @@ public class AllocationReg {
             for (String var : killed) {
                 if (varsEnMemoire.contains(var)) {
                     int offset = emplacementsMemoire.get(var);
-                    reecriture.append("ADDi R").append(ADDR_REG).append(" R").append(spReg).append(" ").append(offset).append("\n");
-                    reecriture.append("ST R").append(TEMP_REG).append(" R").append(ADDR_REG).append("\n");
+                    reecriture.append("ADDi R" + ADDR_REG + " R" + spReg + " " + offset + "\n");
+                    reecriture.append("ST R" + TEMP_REG + " R" + ADDR_REG + "\n");
                 }
             }
         }
-
-        return reecriture.toString();
     }
 
     private String genererSauvegardeCALL(String callInstruction, int spReg) {
@@ -291,7 +399,7 @@ public class AllocationReg {
             code.append("ST R").append(reg).append(" R").append(spReg).append("\n");
         }
 
-        String[] words = callInstruction.trim().split("\\s+");
+        String[] words = cfg.getWords(callInstruction);
         StringBuilder callLine = new StringBuilder();
         for (String word : words) {
             if (word.equals("SP")) {
@@ -318,18 +426,27 @@ public class AllocationReg {
         return retInstruction + "\n";
     }
 
-    public void reecritureOutput() {
-        String texte = reecriture();
-        Path output = Path.of("prog.asm");
+    public void reecritureOutput() throws IOException {
+        reecritureOutput(Path.of("prog.asm"));
+    }
 
-        try {
-            BufferedWriter writer = Files.newBufferedWriter(output);
-            writer.write(texte);
-            writer.close();
-            System.out.println("\nFichier prog.asm généré avec succès.");
-        } catch (IOException e) {
-            System.err.println("Erreur lors de l'écriture du fichier : " + e.getMessage());
-            e.printStackTrace();
+    // Écrit le code final dans output ; une erreur d'écriture est remontée à l'appelant
+    public void reecritureOutput(Path output) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(output)) {
+            reecriture(writer);
+        }
+        if (niveau != NiveauDiagnostic.SILENCIEUX) {
+            System.out.println("\nFichier " + output + " généré avec succès.");
+        }
+    }
+
+    // Écrit un code final déjà produit par reecriture(), sans refaire la réécriture
+    public void reecritureOutput(Path output, String codeFinal) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(output)) {
+            writer.write(codeFinal);
+        }
+        if (niveau != NiveauDiagnostic.SILENCIEUX) {
+            System.out.println("\nFichier " + output + " généré avec succès.");
         }
     }
 }
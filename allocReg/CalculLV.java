@@ -1,15 +1,19 @@
 package allocReg;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import Graph.*;
+import Metrics.Metrics;
 
 public class CalculLV {
 
     private HashMap<Integer, ArrayList<HashSet<String>>> LVtab = new HashMap<>();
     private HashMap<String, Integer> blocToId = new HashMap<>();
     private ArrayList<String> idToBloc = new ArrayList<>();
+    private ControlGraph cfg;
 
     public HashSet<String> getLVentry(String bloc) {
         return this.LVtab.get(this.blocToId.get(bloc.trim())).get(0);
@@ -20,17 +24,34 @@ public class CalculLV {
     }
 
     public CalculLV(ControlGraph cfg) {
+        this.cfg = cfg;
         this.LVtab = initTab(new HashMap<>(), cfg);
         this.LVtab = remplirLVliste(cfg, this.LVtab);
     }
 
     public void afficherLVtab() {
+        try {
+            afficherLVtab(System.out, Integer.MAX_VALUE);
+        } catch (IOException e) {
+            // impossible : un PrintStream ne lève pas d'IOException
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Écrit les ensembles LV des maxBlocs premiers blocs, au fil de l'eau
+    public void afficherLVtab(Appendable out, int maxBlocs) throws IOException {
+        int n = 0;
         for (int id : this.LVtab.keySet()) {
+            if (n == maxBlocs) {
+                out.append("... (" + (this.LVtab.size() - n) + " bloc(s) non affiché(s))\n");
+                return;
+            }
+            n++;
             ArrayList<HashSet<String>> coupleLV = this.LVtab.get(id);
             String key = idToBloc.get(id);
-            System.out.println(key + " :");
-            System.out.println("\tLVentry = " + afficherHashSet(coupleLV.get(0)));
-            System.out.println("\tLVexit  = " + afficherHashSet(coupleLV.get(1)));
+            out.append(key).append(" :\n");
+            out.append("\tLVentry = ").append(afficherHashSet(coupleLV.get(0))).append("\n");
+            out.append("\tLVexit  = ").append(afficherHashSet(coupleLV.get(1))).append("\n");
         }
     }
 
@@ -83,6 +104,7 @@ public class CalculLV {
         HashSet<String> ancienLVexitBloc;
 
         do {
+            Metrics.count("lv.blockIterations");
             ancienLVentryBloc = new HashSet<>(LVentryBloc);
             ancienLVexitBloc = new HashSet<>(LVexitBloc);
             LVexitBloc = calculNewLVexit(LVtableau, cfg, bloc);
@@ -98,8 +120,12 @@ public class CalculLV {
     public HashMap<Integer, ArrayList<HashSet<String>>> remplirLVliste(ControlGraph cfg, HashMap<Integer, ArrayList<HashSet<String>>> LVtableau) {
         boolean modifie;
         do {
+            Metrics.count("lv.iterations");
             modifie = false;
-            for (String bloc : cfg.getVertices()) {
+            // Parcours à rebours : la vivacité remonte le code, un passage suffit hors boucles
+            ArrayList<String> blocs = cfg.getVertices();
+            for (int k = blocs.size() - 1; k >= 0; k--) {
+                String bloc = blocs.get(k);
                 int blocID = blocToId.get(bloc);
                 ArrayList<HashSet<String>> ancien = LVtableau.get(blocID);
                 ArrayList<HashSet<String>> nouveau = remplirBloc(cfg, bloc, LVtableau);
@@ -159,7 +185,7 @@ public class CalculLV {
 
     public HashSet<String> kill(String bloc) {
         HashSet<String> res = new HashSet<>();
-        String[] mot = bloc.trim().split("\\s+");
+        String[] mot = this.cfg.getWords(bloc);
 
         if (mot.length == 0) return res;
 
@@ -186,7 +212,7 @@ public class CalculLV {
 
     public HashSet<String> gen(String bloc, ControlGraph cfg) {
         HashSet<String> res = new HashSet<>();
-        String[] mot = bloc.trim().split("\\s+");
+        String[] mot = this.cfg.getWords(bloc);
 
         if (mot.length == 0) return res;
 
@@ -1,6 +1,7 @@
 package allocReg;
 
 import Graph.UnorientedGraph;
+import Metrics.Metrics;
 import java.util.ArrayList;
 import java.util.HashSet;
 
@@ -27,7 +28,7 @@ public class ConflictGraph extends UnorientedGraph<String> {
         HashSet<String> varSet = new HashSet<>();
 
         for (String instruction : cfg.getVertices()) {
-            String[] words = instruction.trim().split("\\s+");
+            String[] words = cfg.getWords(instruction);
 
             for (String word : words) {
                 // Un registre commence par R suivi de chiffres
@@ -74,10 +75,20 @@ public class ConflictGraph extends UnorientedGraph<String> {
                 }
             }
         }
+        Metrics.add("conflict.edges", getNbEdges());
 
         return this;
     }
 
+    // Retourne le nombre d'arêtes du graphe
+    public int getNbEdges() {
+        int somme = 0;
+        for (ArrayList<String> neighbors : this.adjList.values()) {
+            somme += neighbors.size();
+        }
+        return somme / 2;
+    }
+
     // Retourne le degré (nombre de conflits) d'une variable
     public int getDegree(String var) {
         ArrayList<String> neighbors = this.getNeighbors(var);
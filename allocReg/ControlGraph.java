@@ -1,5 +1,7 @@
 package allocReg;
 
+import Asm.Instruction;
+import Asm.Program;
 import Graph.*;
 import java.io.BufferedReader;
 import java.io.FileReader;
@@ -13,11 +15,14 @@ public class ControlGraph extends OrientedGraph<String> {
     private ArrayList<String> instructions;
     private ArrayList<String> ops = new ArrayList<>(List.of("JMP","JINF","JEQU","JSUP","JNEQ","JIEQ","JSEQ"));
     private HashMap<String, String> labelMap;
+    // Découpage en mots de chaque instruction, calculé une seule fois
+    private HashMap<String, String[]> wordsMap;
 
     public ControlGraph(String fileName){
         this.fileName = fileName;
         this.instructions = new ArrayList<>();
         this.labelMap = new HashMap<>();
+        this.wordsMap = new HashMap<>();
 
         try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
             String line;
@@ -31,14 +36,43 @@ public class ControlGraph extends OrientedGraph<String> {
         }
     }
 
+    public ControlGraph(Program program){
+        this.instructions = new ArrayList<>();
+        this.labelMap = new HashMap<>();
+        this.wordsMap = new HashMap<>();
+
+        // Construction directe depuis les instructions, sans passer par un fichier
+        for (Instruction instr : program.getInstructions()) {
+            String line = instr.toString();
+            if (line.endsWith("\n")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            if (!line.trim().isEmpty() && !line.trim().startsWith("#")) {
+                this.instructions.add(line);
+                this.wordsMap.putIfAbsent(line.trim(), instr.getWords());
+            }
+        }
+    }
+
     public ArrayList<String> getInstructions(){
         return this.instructions;
     }
 
+    // Retourne les mots d'une instruction (label éventuel, opération, opérandes)
+    public String[] getWords(String instruction) {
+        String key = instruction.trim();
+        String[] words = wordsMap.get(key);
+        if (words == null) {
+            words = key.split("\\s+");
+            wordsMap.put(key, words);
+        }
+        return words;
+    }
+
     public OrientedGraph<String> getGraph() {
         // Premier passage : construire la map des labels
         for (String instruction : instructions) {
-            String[] words = instruction.trim().split("\\s+");
+            String[] words = getWords(instruction);
             if (words.length > 0 && words[0].endsWith(":")) {
                 String label = words[0].substring(0, words[0].length() - 1);
                 labelMap.put(label, instruction);
@@ -53,7 +87,7 @@ public class ControlGraph extends OrientedGraph<String> {
                 continue; // Pas de successeur
             }
 
-            String[] words = instruction.split("\\s+");
+            String[] words = getWords(instruction);
             int opIndex = 0;
 
             if (words[0].endsWith(":")) {
@@ -0,0 +1,13 @@
+package allocReg;
+
+/**
+ * Quantité de diagnostics affichés par l'allocation de registres
+ */
+public enum NiveauDiagnostic {
+    /** Rien n'est affiché ni construit (mode lot, serveur) */
+    SILENCIEUX,
+    /** Messages du déplacement de variables en mémoire */
+    INFO,
+    /** En plus : instructions du CFG lors de la réécriture */
+    DEBUG
+}
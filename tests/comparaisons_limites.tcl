@@ -0,0 +1,12 @@
+int main() {
+    int min = -2147483647 - 1;
+    int max = 2147483647;
+    int a = -2000000000;
+    int b = 2000000000;
+    bool[] t = {a < b, b < a, a > b, b > a, a <= b, b <= a, a >= b, b >= a,
+                min < max, max < min, min <= max, max >= min, min > max, max <= min,
+                min < min, min <= min, max > max, max >= max, min == max, min != max,
+                min < 0, 0 < min, max > -1, -1 > max, min + 1 > min, max - 1 < max};
+    print(t);
+    return 0;
+}
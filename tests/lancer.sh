@@ -0,0 +1,43 @@
+#!/bin/bash
+# Compile chaque programme de tests/, l'exécute avec simproc.py et compare la sortie à <nom>.sortie
+# Sans <nom>.sortie (sortie non déterministe, ex. appels), seule la compilation doit réussir.
+# La pile est réduite pour qu'une récursion sur la profondeur de l'AST se voie dès les tests *_imbriques.
+# usage: tests/lancer.sh [classpath du compilateur]
+racine=$(cd "$(dirname "$0")/.." && pwd)
+cp=${1:-$racine/out/production/projet_compil_etu}:$racine/antlr-4.13.0-complete.jar
+echecs=0
+for f in "$racine"/tests/*.tcl; do
+    nom=$(basename "$f" .tcl)
+    tmp=$(mktemp -d)
+    cp "$f" "$tmp/"
+    touch "$tmp/entrees.txt"
+    if [ -f "$racine/tests/$nom.sortie" ]; then
+        attendu="$racine/tests/$nom.sortie"
+    else
+        attendu=""
+    fi
+    if (cd "$tmp" && java -Xss256k -cp "$cp" Main "$nom.tcl" --silencieux > sortie_compil.txt 2>&1 \
+            && { [ -z "$attendu" ] || python3 "$racine/simproc.py" > /dev/null; }) \
+            && { [ -z "$attendu" ] || cmp -s "$tmp/sorties.txt" "$attendu"; }; then
+        echo "ok    $nom"
+    else
+        echo "ECHEC $nom"
+        echecs=$((echecs + 1))
+    fi
+    rm -rf "$tmp"
+done
+
+# Mode lot dont la sortie ne peut pas être écrite (x.asm est un dossier) : la compilation doit
+# échouer et rien ne doit entrer dans le cache
+tmp=$(mktemp -d)
+mkdir -p "$tmp/src/x.asm"
+cp "$racine/tests/comparaisons_limites.tcl" "$tmp/src/x.tcl"
+if ! (cd "$tmp" && java -cp "$cp" Main --batch --cache cache src > sortie_compil.txt 2>&1) \
+        && [ -z "$(ls "$tmp/cache" 2>/dev/null)" ]; then
+    echo "ok    lot_sortie_impossible"
+else
+    echo "ECHEC lot_sortie_impossible"
+    echecs=$((echecs + 1))
+fi
+rm -rf "$tmp"
+exit $echecs
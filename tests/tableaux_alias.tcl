@@ -0,0 +1,26 @@
+int remplir(int[] t) {
+    t[20] = 5;
+    return 0;
+}
+
+int main() {
+    int[] a = {1, 2};
+    int[] b = a;
+    a[10] = 3;
+    int[] c = {7, 7};
+    print(b);
+    print(c);
+    int[][] m = {{1}, {2}};
+    auto r = m[0];
+    m[0][5] = 6;
+    r[6] = 9;
+    auto s = m[0];
+    print(s);
+    int[] u = {1};
+    int z = remplir(u);
+    int[] v = {8, 8};
+    int y = u[20];
+    print(y);
+    print(v);
+    return 0;
+}
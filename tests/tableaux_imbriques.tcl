@@ -0,0 +1,23 @@
+int main() {
+    int[][] m;
+    m[2][3] = 9;
+    int x = m[2][3];
+    print(x);
+    auto r = m[2];
+    print(r);
+    m[0][1] = 4;
+    m[0][6] = 5;
+    auto q = m[0];
+    print(q);
+    m[9][0] = 7;
+    m[2][1] = 8;
+    r = m[2];
+    print(r);
+    auto s = m[9];
+    print(s);
+    int[][][] c;
+    c[1][2][3] = 6;
+    auto d = c[1][2];
+    print(d);
+    return 0;
+}